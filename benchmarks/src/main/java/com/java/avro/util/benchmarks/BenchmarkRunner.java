@@ -0,0 +1,30 @@
+package com.java.avro.util.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. <br>
+ * Accepts the usual JMH command line (e.g. a benchmark regexp or <code>-p scenario=FLAT_WIDE</code>) and always attaches the
+ * {@link GCProfiler}, so every result reports <code>gc.alloc.rate.norm</code>, the bytes allocated per operation, next to ops/s.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
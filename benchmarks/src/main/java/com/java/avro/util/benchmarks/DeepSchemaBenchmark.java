@@ -0,0 +1,93 @@
+package com.java.avro.util.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.java.avro.util.BigQuerySchemaConverter;
+
+/**
+ * Time of a cold Bigquery to avro translation of deep, generated table schemas: chains of <code>depth</code> nested records, alternately
+ * nullable and repeated, each holding ten scalar columns, as many chains as it takes to reach <code>leaves</code> columns. <br>
+ * The description of the first column changes before each call so that the schema cache always misses. The time per call should grow
+ * linearly with the number of leaves: compare the scores divided by <code>leaves</code>.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeepSchemaBenchmark {
+
+	private static final String[] TYPES = { "INTEGER", "FLOAT", "STRING", "BOOLEAN", "TIMESTAMP" };
+	private static final int WIDTH = 10;
+
+	@Param({ "1000", "10000", "50000" })
+	private int leaves;
+
+	@Param({ "15" })
+	private int depth;
+
+	private Table table;
+	private TableFieldSchema first;
+	private long version;
+
+	@Setup
+	public void setup() {
+		final List<TableFieldSchema> fields = new ArrayList<>();
+		for (int chain = 0; chain * depth * WIDTH < leaves; chain++) {
+			fields.add(chain(chain, 1));
+		}
+		first = fields.get(0).getFields().get(0);
+		table = new Table().setSchema(new TableSchema().setFields(fields));
+	}
+
+	@Setup(Level.Invocation)
+	public void invalidate() {
+		first.setDescription("v" + version++);
+	}
+
+	@Benchmark
+	public Schema toAvroSchema() throws Exception {
+		return BigQuerySchemaConverter.getInstance().toAvroSchema(table);
+	}
+
+	private TableFieldSchema chain(int chain, int level) {
+		final List<TableFieldSchema> fields = new ArrayList<>();
+		for (int i = 0; i < WIDTH; i++) {
+			fields.add(new TableFieldSchema()
+					.setName("c" + i)
+					.setType(TYPES[i % TYPES.length])
+					.setMode(i % 2 == 0 ? "REQUIRED" : "NULLABLE"));
+		}
+		if (level < depth)
+			fields.add(chain(chain, level + 1));
+		return new TableFieldSchema()
+				.setName("chain" + chain + "level" + level)
+				.setType("RECORD")
+				.setMode(level % 2 == 0 ? "REPEATED" : "NULLABLE")
+				.setFields(fields);
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.java.avro.util.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.java.avro.util.FieldProjection;
+import com.java.avro.util.JsonGenericRecordReader;
+
+/**
+ * Throughput of {@link JsonGenericRecordReader#read} from each supported input form: json string, utf-8 bytes and an already parsed map, of
+ * the streaming read of the bytes, whole, into a reused record and projected to the first field, and of the direct transcoding of the bytes to Avro binary.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonReaderBenchmark {
+
+	@Param
+	private Scenario scenario;
+
+	private JsonGenericRecordReader reader;
+	private Schema schema;
+	private FieldProjection firstField;
+	private GenericData.Record reused;
+	private Map<String, Object> map;
+	private String string;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws Exception {
+		reader = new JsonGenericRecordReader();
+		schema = scenario.avroSchema();
+		firstField = FieldProjection.keeping(schema.getFields().get(0).name());
+		map = scenario.sample();
+		string = new ObjectMapper().writeValueAsString(map);
+		bytes = string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public GenericData.Record readString() {
+		return reader.read(string, schema);
+	}
+
+	@Benchmark
+	public GenericData.Record readBytes() {
+		return reader.read(bytes, schema);
+	}
+
+	@Benchmark
+	public GenericData.Record readBytesStreaming() {
+		return reader.read(bytes, schema, FieldProjection.all());
+	}
+
+	@Benchmark
+	public GenericData.Record readBytesReused() {
+		return reused = reader.read(bytes, schema, reused);
+	}
+
+	@Benchmark
+	public GenericData.Record readBytesProjected() {
+		return reader.read(bytes, schema, firstField);
+	}
+
+	@Benchmark
+	public GenericData.Record readMap() {
+		return reader.read(map, schema);
+	}
+
+	@Benchmark
+	public byte[] toBinary() {
+		return reader.toBinary(bytes, schema);
+	}
+
+}
@@ -0,0 +1,237 @@
+package com.java.avro.util.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.java.avro.util.BigQuerySchemaConverter;
+
+/**
+ * Schema shapes the benchmarks run against, each with a deterministic sample message. <br>
+ * The Bigquery shaped scenarios are defined as a {@link TableSchema} and get their avro schema from {@link BigQuerySchemaConverter}; the
+ * union heavy one only exists as an avro schema since Bigquery has no multi-branch unions.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public enum Scenario {
+
+	/**
+	 * Ten scalar columns, half of them nullable.
+	 */
+	FLAT_NARROW {
+		@Override
+		public TableSchema tableSchema() {
+			return new TableSchema().setFields(Arrays.asList(
+					field("id", "INTEGER", "REQUIRED"),
+					field("name", "STRING", "REQUIRED"),
+					field("email", "STRING", "NULLABLE"),
+					field("score", "FLOAT", "NULLABLE"),
+					field("active", "BOOLEAN", "REQUIRED"),
+					field("country", "STRING", "NULLABLE"),
+					field("age", "INTEGER", "NULLABLE"),
+					field("balance", "FLOAT", "REQUIRED"),
+					field("city", "STRING", "NULLABLE"),
+					field("visits", "INTEGER", "NULLABLE")));
+		}
+	},
+
+	/**
+	 * 500 scalar columns cycling through the Bigquery types and modes.
+	 */
+	FLAT_WIDE {
+		private final String[] types = { "INTEGER", "FLOAT", "STRING", "BOOLEAN" };
+
+		@Override
+		public TableSchema tableSchema() {
+			final List<TableFieldSchema> fields = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				fields.add(field("col" + i, types[i % types.length], i % 3 == 0 ? "REQUIRED" : "NULLABLE"));
+			}
+			return new TableSchema().setFields(fields);
+		}
+	},
+
+	/**
+	 * Orders with repeated lines, each with repeated discounts holding repeated tags, and a nullable customer record.
+	 */
+	NESTED_REPEATED {
+		@Override
+		public TableSchema tableSchema() {
+			final TableFieldSchema tags = field("tags", "RECORD", "REPEATED").setFields(Arrays.asList(
+					field("key", "STRING", "REQUIRED"),
+					field("value", "STRING", "NULLABLE")));
+			final TableFieldSchema discounts = field("discounts", "RECORD", "REPEATED").setFields(Arrays.asList(
+					field("code", "STRING", "REQUIRED"),
+					field("amount", "FLOAT", "NULLABLE"),
+					tags));
+			final TableFieldSchema lines = field("lines", "RECORD", "REPEATED").setFields(Arrays.asList(
+					field("sku", "STRING", "REQUIRED"),
+					field("quantity", "INTEGER", "REQUIRED"),
+					field("price", "FLOAT", "REQUIRED"),
+					discounts));
+			final TableFieldSchema address = field("address", "RECORD", "NULLABLE").setFields(Arrays.asList(
+					field("line1", "STRING", "REQUIRED"),
+					field("zipcode", "STRING", "NULLABLE")));
+			final TableFieldSchema customer = field("customer", "RECORD", "NULLABLE").setFields(Arrays.asList(
+					field("id", "INTEGER", "REQUIRED"),
+					field("email", "STRING", "NULLABLE"),
+					address));
+			return new TableSchema().setFields(Arrays.asList(
+					field("orderId", "INTEGER", "REQUIRED"),
+					customer,
+					lines));
+		}
+
+		@Override
+		int repetitions(int depth) {
+			return depth == 0 ? 5 : 3;
+		}
+	},
+
+	/**
+	 * Events made of multi-branch scalar unions and unions of several record types.
+	 */
+	UNION_HEAVY {
+		private static final int VALUES = 20;
+		private static final int PAYLOADS = 10;
+
+		@Override
+		public Schema avroSchema() {
+			final StringBuilder fields = new StringBuilder();
+			for (int i = 0; i < VALUES; i++) {
+				fields.append("{\"name\": \"value").append(i).append("\", \"type\": [\"null\", \"long\", \"double\", \"string\", \"boolean\"]},");
+			}
+			fields.append("{\"name\": \"payload0\", \"type\": [\"null\", ")
+					.append("{\"type\": \"record\", \"name\": \"Click\", \"fields\": [{\"name\": \"x\", \"type\": \"long\"}, {\"name\": \"y\", \"type\": \"long\"}]}, ")
+					.append("{\"type\": \"record\", \"name\": \"View\", \"fields\": [{\"name\": \"url\", \"type\": \"string\"}, {\"name\": \"durationMs\", \"type\": \"long\"}]}, ")
+					.append("{\"type\": \"record\", \"name\": \"Purchase\", \"fields\": [{\"name\": \"sku\", \"type\": \"string\"}, {\"name\": \"amount\", \"type\": \"double\"}]}")
+					.append("]},");
+			for (int i = 1; i < PAYLOADS; i++) {
+				fields.append("{\"name\": \"payload").append(i).append("\", \"type\": [\"null\", \"Click\", \"View\", \"Purchase\"]},");
+			}
+			fields.append("{\"name\": \"tags\", \"type\": [\"null\", {\"type\": \"array\", \"items\": \"string\"}]}");
+			return new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"Event\", \"fields\": [" + fields + "]}");
+		}
+
+		@Override
+		public TableSchema tableSchema() {
+			throw new UnsupportedOperationException("Bigquery has no multi-branch unions");
+		}
+
+		@Override
+		public Map<String, Object> sample() {
+			final Map<String, Object> json = new LinkedHashMap<>();
+			for (int i = 0; i < VALUES; i++) {
+				switch (i % 5) {
+				case 0:
+					json.put("value" + i, 1000L + i);
+					break;
+				case 1:
+					json.put("value" + i, i + 0.5);
+					break;
+				case 2:
+					json.put("value" + i, "value-" + i);
+					break;
+				case 3:
+					json.put("value" + i, i % 2 == 0);
+					break;
+				default:
+					json.put("value" + i, null);
+				}
+			}
+			for (int i = 0; i < PAYLOADS; i++) {
+				final Map<String, Object> payload = new LinkedHashMap<>();
+				switch (i % 3) {
+				case 0:
+					payload.put("x", (long) i);
+					payload.put("y", (long) i * 2);
+					break;
+				case 1:
+					payload.put("url", "https://example.com/page/" + i);
+					payload.put("durationMs", 1500L + i);
+					break;
+				default:
+					payload.put("sku", "SKU-" + i);
+					payload.put("amount", 9.99 * i);
+				}
+				json.put("payload" + i, payload);
+			}
+			json.put("tags", Arrays.asList("mobile", "campaign", "returning"));
+			return json;
+		}
+	};
+
+	/**
+	 * Returns the Bigquery schema of the scenario.
+	 *
+	 * @throws UnsupportedOperationException when the scenario has no Bigquery equivalent
+	 */
+	public abstract TableSchema tableSchema();
+
+	public Schema avroSchema() {
+		try {
+			return BigQuerySchemaConverter.getInstance().toAvroSchema(new Table().setSchema(tableSchema()));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns a json message, as parsed by Jackson, filling every field of the schema.
+	 */
+	public Map<String, Object> sample() {
+		return sample(tableSchema().getFields(), 0);
+	}
+
+	/**
+	 * Number of elements of a REPEATED record at the given nesting depth.
+	 */
+	int repetitions(int depth) {
+		return 1;
+	}
+
+	private Map<String, Object> sample(List<TableFieldSchema> fields, int depth) {
+		final Map<String, Object> json = new LinkedHashMap<>();
+		for (int i = 0; i < fields.size(); i++) {
+			final TableFieldSchema field = fields.get(i);
+			if (!"RECORD".equals(field.getType())) {
+				json.put(field.getName(), value(field.getType(), i));
+			} else if ("REPEATED".equals(field.getMode())) {
+				final List<Object> elements = new ArrayList<>();
+				for (int e = 0; e < repetitions(depth); e++) {
+					elements.add(sample(field.getFields(), depth + 1));
+				}
+				json.put(field.getName(), elements);
+			} else {
+				json.put(field.getName(), sample(field.getFields(), depth + 1));
+			}
+		}
+		return json;
+	}
+
+	private static Object value(String type, int i) {
+		switch (type) {
+		case "INTEGER":
+			return 100000L + i;
+		case "FLOAT":
+			return i * 1.25;
+		case "BOOLEAN":
+			return i % 2 == 0;
+		default:
+			return "value-" + i;
+		}
+	}
+
+	private static TableFieldSchema field(String name, String type, String mode) {
+		return new TableFieldSchema().setName(name).setType(type).setMode(mode);
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.java.avro.util.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.services.bigquery.model.Table;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.java.avro.util.AvroSchemaConverter;
+import com.java.avro.util.BigQuerySchemaConverter;
+
+/**
+ * Throughput of the schema translations in both directions, with their caches warm as on long running workers. <br>
+ * The Bigquery to avro direction only runs on the Bigquery shaped scenarios, see {@link Scenario#tableSchema()}.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaConversionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class BigQuerySchema {
+
+		@Param({ "FLAT_NARROW", "FLAT_WIDE", "NESTED_REPEATED" })
+		private Scenario scenario;
+
+		private Table table;
+
+		@Setup
+		public void setup() {
+			table = new Table().setSchema(scenario.tableSchema());
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class AvroSchema {
+
+		@Param
+		private Scenario scenario;
+
+		private Schema schema;
+
+		@Setup
+		public void setup() {
+			schema = scenario.avroSchema();
+		}
+	}
+
+	@Benchmark
+	public Schema toAvroSchema(BigQuerySchema state) throws Exception {
+		return BigQuerySchemaConverter.getInstance().toAvroSchema(state.table);
+	}
+
+	@Benchmark
+	public TableSchema toTableSchema(AvroSchema state) {
+		return AvroSchemaConverter.toTableSchema(state.schema);
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.java.avro.util.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.java.avro.util.AvroUtils;
+import com.java.avro.util.JsonGenericRecordReader;
+import com.java.avro.util.TableRowBatchConverter;
+
+/**
+ * Throughput of {@link AvroUtils#convertGenericRecordToTableRow} on the Bigquery shaped scenarios, one record at a time and by batches of
+ * {@value #BATCH_SIZE} records with {@link TableRowBatchConverter} (one operation per batch), and of {@link AvroUtils#transcodeToTableRowJson}
+ * from the Avro binary of the same record to a discarding json generator.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableRowBenchmark {
+
+	static final int BATCH_SIZE = 4096;
+
+	@Param({ "FLAT_NARROW", "FLAT_WIDE", "NESTED_REPEATED" })
+	private Scenario scenario;
+
+	private GenericRecord record;
+	private List<GenericRecord> batch;
+	private TableRowBatchConverter batchConverter;
+	private TableSchema tableSchema;
+	private byte[] binary;
+	private BinaryDecoder decoder;
+	private JsonGenerator generator;
+
+	@Setup
+	public void setup() throws IOException {
+		tableSchema = scenario.tableSchema();
+		record = new JsonGenericRecordReader().read(scenario.sample(), scenario.avroSchema());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+		new GenericDatumWriter<GenericRecord>(record.getSchema()).write(record, encoder);
+		binary = out.toByteArray();
+		batch = Collections.nCopies(BATCH_SIZE, record);
+		batchConverter = TableRowBatchConverter.create();
+		generator = new JsonFactory().createGenerator(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+
+	@Benchmark
+	public TableRow convertGenericRecordToTableRow() {
+		return AvroUtils.convertGenericRecordToTableRow(record, tableSchema);
+	}
+
+	@Benchmark
+	public List<TableRow> convertBatch() {
+		return batchConverter.convert(batch, tableSchema);
+	}
+
+	@Benchmark
+	public void transcodeToTableRowJson() throws IOException {
+		decoder = DecoderFactory.get().binaryDecoder(binary, decoder);
+		AvroUtils.transcodeToTableRowJson(decoder, record.getSchema(), tableSchema, generator);
+	}
+
+}
@@ -1,11 +1,9 @@
 package com.java.avro.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
@@ -13,15 +11,28 @@ import org.apache.avro.Schema.Type;
 
 import com.google.api.services.bigquery.model.TableFieldSchema;
 import com.google.api.services.bigquery.model.TableSchema;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.java.avro.util.ConversionMetrics.Operation;
 
 /**
- * Avro schema convert utility.
+ * Avro schema convert utility. <br>
+ * Converted schemas are kept in a bounded, least recently used, cache keyed by the avro parsing fingerprint and the projection, safe to
+ * share across threads. Each call returns its own copy of the {@link TableSchema}.
  * 
  * @author giuseppe.adaldo
  *
  */
 public class AvroSchemaConverter {
 
+	private static final int TABLE_SCHEMA_CACHE_SIZE = 1024;
+
+	private static final Cache<TableSchemaKey, TableSchema> TABLE_SCHEMAS = CacheBuilder.newBuilder()
+			.maximumSize(TABLE_SCHEMA_CACHE_SIZE)
+			.recordStats()
+			.build();
+
 	/**
 	 * onvert Avro schema to bigquery schema.
 	 * 
@@ -44,30 +55,61 @@ public class AvroSchemaConverter {
 	}
 
 	/**
-	 * Convert Avro schema to bigquery schema skipping the fields specified into the given parameter list.
+	 * Convert Avro schema to bigquery schema skipping the fields specified into the given parameter list. A plain name is skipped at any
+	 * depth, a dotted path (<code>a.b.c</code>, <code>a.*.d</code>) from the root only, see {@link FieldProjection}.
 	 * 
 	 * @param schema source avro schema to convert
 	 * @param fieldsToSkip list of fields to skip converting
 	 * @return {@link TableSchema} object
 	 */
 	public static TableSchema toTableSchema(Schema schema, List<String> fieldsToSkip) {
-		return Optional.ofNullable(fieldsToSkip)
-				.map(toSkip -> new TableSchema().setFields(
-						getTableFieldSchemas(
-								schema.getFields(),
-								field -> !fieldsToSkip.contains(field.name()))))
-				.orElseGet(() -> toTableSchema(schema));
+		return toTableSchema(schema, FieldProjection.skipping(fieldsToSkip));
+	}
+
+	/**
+	 * Convert Avro schema to bigquery schema converting the projected fields only.
+	 * 
+	 * @param schema source avro schema to convert
+	 * @param projection fields to convert
+	 * @return {@link TableSchema} object
+	 */
+	public static TableSchema toTableSchema(Schema schema, FieldProjection projection) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		try {
+			final TableSchemaKey key = new TableSchemaKey(SchemaFingerprints.fingerprint(schema), projection);
+			TableSchema tableSchema = TABLE_SCHEMAS.getIfPresent(key);
+			if (tableSchema == null) {
+				tableSchema = new TableSchema().setFields(getTableFieldSchemas(schema.getFields(), projection.root()));
+				TABLE_SCHEMAS.put(key, tableSchema);
+			}
+			Metrics.succeeded(metrics, Operation.TABLE_SCHEMA, start, 0, 0);
+			// table schemas are mutable, the cached one is never handed out
+			return tableSchema.clone();
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.TABLE_SCHEMA, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the hit, miss and eviction counts of the table schema cache.
+	 */
+	public static CacheStats getCacheStats() {
+		return TABLE_SCHEMAS.stats();
 	}
 
-	private static List<TableFieldSchema> getTableFieldSchemas(List<Field> fields, Predicate<Field> isSkippableFn) {
-		final List<TableFieldSchema> tempList = fields.stream()
-				.filter(isSkippableFn)
-				.map(field -> getTableFieldSchema(field, isSkippableFn))
-				.collect(Collectors.toList());
+	private static List<TableFieldSchema> getTableFieldSchemas(List<Field> fields, FieldProjection.Scope scope) {
+		final List<TableFieldSchema> tempList = new ArrayList<>(fields.size());
+		for (Field field : fields) {
+			final FieldProjection.Scope fieldScope = scope.field(field.name());
+			if (fieldScope != null)
+				tempList.add(getTableFieldSchema(field, fieldScope));
+		}
 		return tempList.isEmpty() ? null : tempList;
 	}
 
-	private static TableFieldSchema getTableFieldSchema(Field field, Predicate<Field> isSkippableFn) {
+	private static TableFieldSchema getTableFieldSchema(Field field, FieldProjection.Scope scope) {
 		final TableFieldSchema tableFieldSchema = new TableFieldSchema();
 		tableFieldSchema.setMode("REQUIRED");
 		tableFieldSchema.setName(field.name());
@@ -78,38 +120,38 @@ public class AvroSchemaConverter {
 		switch (type) {
 		case ARRAY:
 			tableFieldSchema.setMode("REPEATED");
-			convertArray(tableFieldSchema, field, isSkippableFn);
+			convertArray(tableFieldSchema, field, scope);
 			return tableFieldSchema;
 		case RECORD:
-			tableFieldSchema.setFields(getTableFieldSchemas(field.schema().getFields(), isSkippableFn));
+			tableFieldSchema.setFields(getTableFieldSchemas(field.schema().getFields(), scope));
 			return tableFieldSchema;
 		case UNION:
-			convertUnion(tableFieldSchema, field, isSkippableFn);
+			convertUnion(tableFieldSchema, field, scope);
 			return tableFieldSchema;
 		default:
 			return tableFieldSchema;
 		}
 	}
 
-	private static final void convertUnion(TableFieldSchema tableFieldSchema, Schema.Field field, Predicate<Field> isSkippableFn) {
+	private static final void convertUnion(TableFieldSchema tableFieldSchema, Schema.Field field, FieldProjection.Scope scope) {
 		for (Schema unionSchema : field.schema().getTypes()) {
 			if (unionSchema.getType().equals(Type.NULL)) {
 				tableFieldSchema.setMode("NULLABLE");
 			} else if (unionSchema.getType() == Type.RECORD) {
 				tableFieldSchema.setType("RECORD");
-				tableFieldSchema.setFields(getTableFieldSchemas(unionSchema.getFields(), isSkippableFn));
+				tableFieldSchema.setFields(getTableFieldSchemas(unionSchema.getFields(), scope));
 			} else if (unionSchema.getType() == Type.ARRAY) {
 				tableFieldSchema.setType("RECORD");
-				tableFieldSchema.setFields(getTableFieldSchemas(unionSchema.getElementType().getFields(), isSkippableFn));
+				tableFieldSchema.setFields(getTableFieldSchemas(unionSchema.getElementType().getFields(), scope));
 			} else {
 				tableFieldSchema.setType(getTableSchemaType(unionSchema.getType()));
 			}
 		}
 	}
 
-	private static void convertArray(TableFieldSchema tableFieldSchema, Schema.Field field, Predicate<Field> isSkippableFn) {
+	private static void convertArray(TableFieldSchema tableFieldSchema, Schema.Field field, FieldProjection.Scope scope) {
 		if (field.schema().getElementType().getType() == Type.RECORD)
-			tableFieldSchema.setFields(getTableFieldSchemas(field.schema().getElementType().getFields(), isSkippableFn));
+			tableFieldSchema.setFields(getTableFieldSchemas(field.schema().getElementType().getFields(), scope));
 	}
 
 	private static String getTableSchemaType(Type type) {
@@ -135,4 +177,30 @@ public class AvroSchemaConverter {
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Cache key made of the avro schema fingerprint and of the projection.
+	 */
+	private static final class TableSchemaKey {
+		private final long fingerprint;
+		private final FieldProjection projection;
+
+		TableSchemaKey(long fingerprint, FieldProjection projection) {
+			this.fingerprint = fingerprint;
+			this.projection = projection;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Long.hashCode(fingerprint) + projection.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TableSchemaKey))
+				return false;
+			TableSchemaKey other = (TableSchemaKey) obj;
+			return fingerprint == other.fingerprint && projection.equals(other.projection);
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.java.avro.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+
+/**
+ * AvroSchema object being built from {@link BigQuerySchemaConverter#toAvroSchema(com.google.api.services.bigquery.model.Table)}. <br>
+ * It holds the Bigquery fields of the table and builds the {@link Schema} object when {@link #toSchema()} is called, in a single depth first
+ * pass over the fields with an explicit stack rather than recursion: a record schema is created once the last of its fields has been
+ * translated, so nothing is built twice and the depth of the table is only bounded by memory. The namespace of the records of a level is
+ * built once, from the already lowercased namespace of the level above, and shared by all of them. Subtrees are translated on their own
+ * by {@link LazyAvroSchema} and {@link SchemaEvolution}. <br>
+ * The temporal and NUMERIC types are strings, or avro logical types when asked for, see {@link #typeSchema(String, boolean)}. <br>
+ * Bigquery records can be 'nullable' or 'repeated' only, so no map support is needed: a nullable record becomes a union of the record and
+ * null, a repeated one an array of records. Check out this information here: {@link: https://cloud.google.com/bigquery/docs/data#nested}
+ * <br>
+ *
+ * <br>
+ * <strong>Note:</strong> this object is hidden from outside the package. <br>
+ * <strong>Note:</strong> this object only supports types from Bigquery schema source.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+class AvroSchemaObject {
+
+	static final String ROOT_NAMESPACE = "root";
+
+	private static final String TABLE_SCHEMA_REPEATED_RECORD = "REPEATED";
+	private static final String TABLE_SCHEMA_NULLABLE = "NULLABLE";
+
+	private final String name;
+	private final String doc;
+	private final List<TableFieldSchema> fields;
+	private final boolean logicalTypes;
+
+	private AvroSchemaObject(String name, String doc, List<TableFieldSchema> fields, boolean logicalTypes) {
+		this.name = name;
+		this.doc = doc;
+		this.fields = fields;
+		this.logicalTypes = logicalTypes;
+	}
+
+	static final AvroSchemaObject build(String name, String doc, List<TableFieldSchema> fields, boolean logicalTypes) {
+		return new AvroSchemaObject(name, doc != null && doc.trim().isEmpty() ? null : doc,
+				fields == null ? Collections.<TableFieldSchema>emptyList() : fields, logicalTypes);
+	}
+
+	public Schema toSchema() {
+		return Schema.createRecord(name, doc, ROOT_NAMESPACE, false, translate(fields, ROOT_NAMESPACE, logicalTypes));
+	}
+
+	/**
+	 * Translates the given fields of a record, the namespace being the one of the records declared among them.
+	 */
+	static List<Field> translate(List<TableFieldSchema> fields, String namespace, boolean logicalTypes) {
+		final Deque<Level> stack = new ArrayDeque<>();
+		Level level = new Level(null, namespace, fields);
+		while (true) {
+			if (level.next < level.fields.size()) {
+				final TableFieldSchema field = level.fields.get(level.next++);
+				final Type type = getType(field.getType());
+				if (type == Type.RECORD) {
+					stack.push(level);
+					level = new Level(field, namespace(level.namespace, field), field.getFields());
+				} else {
+					level.translated.add(toField(field, logicalTypes));
+				}
+				continue;
+			}
+			if (stack.isEmpty())
+				return level.translated;
+			final Level parent = stack.pop();
+			parent.translated.add(toField(level.record, parent.namespace, level.translated));
+			level = parent;
+		}
+	}
+
+	/**
+	 * Returns the namespace of the records declared in the given record field.
+	 */
+	static String namespace(String namespace, TableFieldSchema record) {
+		return namespace + '.' + record.getName().toLowerCase();
+	}
+
+	/**
+	 * A record being translated: its Bigquery fields, the next one to translate and the avro fields done so far.
+	 */
+	private static final class Level {
+		// null for the root
+		final TableFieldSchema record;
+		// namespace of the records declared at this level
+		final String namespace;
+		final List<TableFieldSchema> fields;
+		final List<Field> translated;
+		int next;
+
+		Level(TableFieldSchema record, String namespace, List<TableFieldSchema> fields) {
+			this.record = record;
+			this.namespace = namespace;
+			this.fields = fields == null ? Collections.<TableFieldSchema>emptyList() : fields;
+			this.translated = new ArrayList<>(this.fields.size());
+		}
+	}
+
+	/**
+	 * Translates a single field of a record, the namespace being the one of the records declared in that record.
+	 */
+	static Field toField(TableFieldSchema field, String namespace, boolean logicalTypes) {
+		if (getType(field.getType()) == Type.RECORD)
+			return toField(field, namespace, translate(field.getFields(), namespace(namespace, field), logicalTypes));
+		return toField(field, logicalTypes);
+	}
+
+	/**
+	 * Translates a record field, repeated records being a non-nullable array and nullable ones a union with null.
+	 */
+	static Field toField(TableFieldSchema record, String namespace, List<Field> fields) {
+		final String doc = TABLE_SCHEMA_REPEATED_RECORD.equalsIgnoreCase(record.getMode()) ? null : record.getDescription();
+		return new Schema.Field(record.getName(), toSchema(record, namespace, fields), doc, (Object) null);
+	}
+
+	/**
+	 * Returns the schema of a record field, given its translated fields.
+	 */
+	static Schema toSchema(TableFieldSchema record, String namespace, List<Field> fields) {
+		final String name = getCapitalString(record.getName());
+		if (TABLE_SCHEMA_REPEATED_RECORD.equalsIgnoreCase(record.getMode()))
+			return Schema.createArray(Schema.createRecord(name, null, namespace, false, fields));
+		final Schema recordSchema = Schema.createRecord(name, record.getDescription(), namespace, false, fields);
+		return Schema.createUnion(Arrays.asList(recordSchema, Schema.create(Type.NULL)));
+	}
+
+	/**
+	 * Translates a leaf field, nullable ones being a union with null.
+	 */
+	static Field toField(TableFieldSchema field, boolean logicalTypes) {
+		return new Schema.Field(field.getName(), toSchema(field, logicalTypes), null, (Object) null);
+	}
+
+	static Schema toSchema(TableFieldSchema field, boolean logicalTypes) {
+		final Schema schema = typeSchema(field.getType(), logicalTypes);
+		if (TABLE_SCHEMA_NULLABLE.equals(field.getMode()))
+			return Schema.createUnion(Arrays.asList(schema, Schema.create(Type.NULL)));
+		return schema;
+	}
+
+	/**
+	 * Returns the schema of a non-record Bigquery type. With logical types, the temporal types are numbers annotated with the matching avro
+	 * logical type and NUMERIC a <code>decimal</code>, see {@link LogicalTypeFormats}; without, they are strings.
+	 */
+	static Schema typeSchema(String type, boolean logicalTypes) {
+		if (logicalTypes) {
+			switch (type) {
+			case "TIMESTAMP":
+				return LogicalTypes.timestampMicros().addToSchema(Schema.create(Type.LONG));
+			case "DATETIME":
+				final Schema datetime = Schema.create(Type.LONG);
+				datetime.addProp(LogicalType.LOGICAL_TYPE_PROP, LogicalTypeFormats.LOCAL_TIMESTAMP_MICROS);
+				return datetime;
+			case "TIME":
+				return LogicalTypes.timeMicros().addToSchema(Schema.create(Type.LONG));
+			case "DATE":
+				return LogicalTypes.date().addToSchema(Schema.create(Type.INT));
+			case "NUMERIC":
+				return LogicalTypes.decimal(LogicalTypeFormats.NUMERIC_PRECISION, LogicalTypeFormats.NUMERIC_SCALE)
+						.addToSchema(Schema.create(Type.BYTES));
+			}
+		}
+		return Schema.create(getType(type));
+	}
+
+	/**
+	 * Returns the avro type for the relative Bigquery schema value. <br>
+	 * See also {@link https://cloud.google.com/bigquery/docs/reference/rest/v2/tables},
+	 * {@link https://cloud.google.com/bigquery/docs/reference/standard-sql/data-types}, {@link https://cloud.google.com/bigquery/data-types} and
+	 * {@link https://cloud.google.com/bigquery/data-formats} for more information about Bigquery types and SQL date/time representation. <br>
+	 *
+	 * @param type string type
+	 * @return the avro schema type
+	 */
+	static Type getType(String type) {
+		switch (type) {
+		case "INTEGER":
+		case "LONG":
+			return Type.LONG;
+		case "DOUBLE":
+			return Type.DOUBLE;
+		case "FLOAT":
+			return Type.FLOAT;
+		case "BOOLEAN":
+			return Type.BOOLEAN;
+		case "STRING":
+			return Type.STRING;
+		case "RECORD":
+			return Type.RECORD;
+		case "BYTES":
+			return Type.BYTES;
+		case "TIMESTAMP":
+		case "TIME":
+		case "DATETIME":
+		case "DATE":
+		case "NUMERIC":
+			return Type.STRING;
+		case "NULL":
+			return Type.NULL;
+		}
+		throw new AvroRuntimeException("Not valid avro type for the big query type: '" + type + "'");
+	}
+
+	private static final String getCapitalString(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+}
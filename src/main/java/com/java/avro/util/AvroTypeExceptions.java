@@ -1,47 +1,146 @@
 package com.java.avro.util;
 
-import static java.util.Spliterator.ORDERED;
-import static java.util.Spliterators.spliteratorUnknownSize;
-import static java.util.stream.Collectors.joining;
-
+import java.io.IOException;
 import java.util.Deque;
-import java.util.stream.StreamSupport;
 
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.AvroTypeException;
 
+import com.google.common.base.VerifyException;
+
+/**
+ * Conversion errors raised while reading json. <br>
+ * They are thrown, and mostly swallowed, while resolving unions, so the instances built here are {@link ConversionException}s: no stack trace
+ * is captured and the field path is only snapshotted, the message being formatted the first time it is read. Use {@link #toPublic} before
+ * letting one escape the package, callers then get a plain {@link AvroTypeException} with the same message.
+ */
 class AvroTypeExceptions {
+
+	enum Kind {
+		TYPE, ENUM, UNION
+	}
+
 	static AvroTypeException enumException(Deque<String> fieldPath, String expectedSymbols) {
-		return new AvroTypeException(new StringBuilder()
-				.append("Field ")
-				.append(path(fieldPath))
-				.append(" is expected to be of enum type and be one of ")
-				.append(expectedSymbols)
-				.toString());
+		return new ConversionException(Kind.ENUM, snapshot(fieldPath), null, expectedSymbols);
 	}
 
 	static AvroTypeException unionException(String fieldName, String expectedTypes, Deque<String> offendingPath) {
-		return new AvroTypeException(new StringBuilder()
-				.append("Could not evaluate union, field ")
-				.append(fieldName)
-				.append(" is expected to be one of these: ")
-				.append(expectedTypes)
-				.append(". If this is a complex type, check if offending field: ")
-				.append(path(offendingPath))
-				.append(" adheres to schema.")
-				.toString());
+		return new ConversionException(Kind.UNION, snapshot(offendingPath), fieldName, expectedTypes);
 	}
 
 	static AvroTypeException typeException(Deque<String> fieldPath, String expectedType) {
-		return new AvroTypeException(new StringBuilder()
-				.append("Field ")
-				.append(path(fieldPath))
-				.append(" is expected to be type: ")
-				.append(expectedType)
-				.toString());
+		return new ConversionException(Kind.TYPE, snapshot(fieldPath), null, expectedType);
+	}
+
+	/**
+	 * Replaces an internal {@link ConversionException} with a regular {@link AvroTypeException} carrying the same message, any other exception
+	 * is returned as is.
+	 */
+	static AvroRuntimeException toPublic(AvroRuntimeException ex) {
+		if (ex instanceof ConversionException)
+			return new AvroTypeException(ex.getMessage());
+		return ex;
+	}
+
+	/**
+	 * Classifies a failure for {@link ConversionMetrics#onError}, looking through its causes: conversion errors by their kind, any other
+	 * {@link AvroTypeException} or Guava verification failure as a type error, I/O and json errors as parse errors.
+	 */
+	static ConversionMetrics.ErrorKind errorKind(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof ConversionException)
+				return ConversionMetrics.ErrorKind.valueOf(((ConversionException) cause).getKind().name());
+			if (cause instanceof AvroTypeException || cause instanceof VerifyException)
+				return ConversionMetrics.ErrorKind.TYPE;
+			if (cause instanceof IOException)
+				return ConversionMetrics.ErrorKind.PARSE;
+		}
+		return ConversionMetrics.ErrorKind.OTHER;
+	}
+
+	/**
+	 * Returns the dotted form of the field path, from the root.
+	 */
+	static String path(Deque<String> path) {
+		return String.join(".", snapshot(path));
+	}
+
+	private static String[] snapshot(Deque<String> path) {
+		final String[] names = new String[path.size()];
+		int i = names.length;
+		for (String name : path) {
+			names[--i] = name;
+		}
+		return names;
 	}
 
-	private static String path(Deque<String> path) {
-		return StreamSupport.stream(spliteratorUnknownSize(path.descendingIterator(), ORDERED), false)
-				.map(Object::toString).collect(joining("."));
+	/**
+	 * Stackless {@link AvroTypeException} whose message is built lazily from a snapshot of the field path.
+	 */
+	static final class ConversionException extends AvroTypeException {
+		private static final long serialVersionUID = 1L;
+
+		private final Kind kind;
+		private final String[] path;
+		private final String fieldName;
+		private final String expected;
+		private String message;
+
+		private ConversionException(Kind kind, String[] path, String fieldName, String expected) {
+			super(null);
+			this.kind = kind;
+			this.path = path;
+			this.fieldName = fieldName;
+			this.expected = expected;
+		}
+
+		Kind getKind() {
+			return kind;
+		}
+
+		String getPath() {
+			return String.join(".", path);
+		}
+
+		@Override
+		public String getMessage() {
+			if (message == null)
+				message = format();
+			return message;
+		}
+
+		private String format() {
+			switch (kind) {
+			case ENUM:
+				return new StringBuilder()
+						.append("Field ")
+						.append(getPath())
+						.append(" is expected to be of enum type and be one of ")
+						.append(expected)
+						.toString();
+			case UNION:
+				return new StringBuilder()
+						.append("Could not evaluate union, field ")
+						.append(fieldName)
+						.append(" is expected to be one of these: ")
+						.append(expected)
+						.append(". If this is a complex type, check if offending field: ")
+						.append(getPath())
+						.append(" adheres to schema.")
+						.toString();
+			default:
+				return new StringBuilder()
+						.append("Field ")
+						.append(getPath())
+						.append(" is expected to be type: ")
+						.append(expected)
+						.toString();
+			}
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
 	}
 }
@@ -1,205 +1,124 @@
 package com.java.avro.util;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
-import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Verify.verify;
-import static com.google.common.base.Verify.verifyNotNull;
-
-import java.lang.reflect.Method;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.List;
-
-import javax.annotation.Nullable;
+import java.io.IOException;
 
 import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.Decoder;
 
-import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.api.services.bigquery.model.TableRow;
 import com.google.api.services.bigquery.model.TableSchema;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.io.BaseEncoding;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 // This class was developed to resolve the bugs encountered with using Google's AvroUtils class, which this class extends.
 public class AvroUtils extends com.google.cloud.dataflow.sdk.util.AvroUtils {
 
-	private static final ImmutableMap<String, List<Schema.Type>> BQ_TYPE_TO_AVRO_TYPE_MAP = ImmutableMap.<String, List<Schema.Type>>builder()
-			.put("BOOLEAN", Arrays.asList(Schema.Type.BOOLEAN))
-			.put("BYTES", Arrays.asList(Schema.Type.BYTES, Schema.Type.FIXED))
-			.put("DATE", Arrays.asList(Schema.Type.STRING))
-			.put("DATETIME", Arrays.asList(Schema.Type.STRING))
-			.put("FLOAT", Arrays.asList(Schema.Type.DOUBLE, Schema.Type.FLOAT))
-			.put("INTEGER", Arrays.asList(Schema.Type.INT, Schema.Type.LONG))
-			.put("RECORD", Arrays.asList(Schema.Type.RECORD))
-			.put("STRING", Arrays.asList(Schema.Type.ENUM, Schema.Type.STRING))
-			.put("TIME", Arrays.asList(Schema.Type.STRING))
-			.put("TIMESTAMP", Arrays.asList(Schema.Type.LONG))
+	private static final int CONVERTER_CACHE_SIZE = 1024;
+
+	private static final Cache<ConverterKey, TableRowConverter> CONVERTERS = CacheBuilder.newBuilder()
+			.maximumSize(CONVERTER_CACHE_SIZE)
+			.build();
+
+	private static final Cache<ConverterKey, TableRowJsonTranscoder> TRANSCODERS = CacheBuilder.newBuilder()
+			.maximumSize(CONVERTER_CACHE_SIZE)
 			.build();
 
 	/**
-	 * Reflection has been used to keep compatibility with google AvroUtils.
+	 * Converts the record to a {@link TableRow} following the Bigquery json export rules: null values are omitted, BYTES are base64 encoded,
+	 * TIMESTAMP values are formatted as strings, as are the DATE, TIME, DATETIME and NUMERIC avro logical types of {@link LogicalTypeFormats},
+	 * and INT values of INTEGER fields are widened to longs.
+	 * <br>
+	 * The conversion is compiled once per (record schema, table schema) pair into a {@link TableRowConverter} and kept in a bounded cache, keyed
+	 * by schema fingerprints: equal schemas share a converter whether or not they are the same objects.
 	 * 
-	 * @param timestamp
-	 * @return
+	 * @param record avro record to convert
+	 * @param schema Bigquery schema of the row
+	 * @return the converted row
 	 */
-	// Package private for BigQueryTableRowIterator to use.
-	private static String formatTimestamp(String timestamp) {
-		try {
-			final Method m = com.google.cloud.dataflow.sdk.util.AvroUtils.class.getDeclaredMethod("formatTimestamp", String.class);
-			m.setAccessible(true);
-			return (String) m.invoke(null, timestamp);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+	public static TableRow convertGenericRecordToTableRow(GenericRecord record, TableSchema schema) {
+		return getConverter(record.getSchema(), schema).convert(record);
 	}
 
-	public static TableRow convertGenericRecordToTableRow(GenericRecord record, TableSchema schema) {
-		return convertGenericRecordToTableRow(record, schema.getFields());
+	/**
+	 * Converts the projected fields of the record only, see {@link FieldProjection}. The fields projected out are not read from the record.
+	 * 
+	 * @param record avro record to convert
+	 * @param schema Bigquery schema of the row
+	 * @param projection fields to convert
+	 * @return the converted row
+	 */
+	public static TableRow convertGenericRecordToTableRow(GenericRecord record, TableSchema schema, FieldProjection projection) {
+		return getConverter(record.getSchema(), schema, projection).convert(record);
 	}
 
-	private static TableRow convertGenericRecordToTableRow(GenericRecord record, List<TableFieldSchema> fields) {
-		TableRow row = new TableRow();
-		for (TableFieldSchema subSchema : fields) {
-			// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the name field
-			// is required, so it may not be null.
-			Schema.Field field = record.getSchema().getField(subSchema.getName());
-			Object convertedValue = getTypedCellValue(field.schema(), subSchema, record.get(field.name()));
-			if (convertedValue != null) {
-				// To match the JSON files exported by BigQuery, do not include null values in the output.
-				row.set(field.name(), convertedValue);
-			}
-		}
-		return row;
+	/**
+	 * Returns the cached converter for the given schemas, compiling it on first use.
+	 */
+	public static TableRowConverter getConverter(Schema avroSchema, TableSchema schema) {
+		return getConverter(avroSchema, schema, FieldProjection.all());
 	}
 
-	@Nullable
-	private static Object getTypedCellValue(Schema schema, TableFieldSchema fieldSchema, Object v) {
-		// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the mode field
-		// is optional (and so it may be null), but defaults to "NULLABLE".
-		String mode = firstNonNull(fieldSchema.getMode(), "NULLABLE");
-		switch (mode) {
-		case "REQUIRED":
-			return convertRequiredField(schema.getType(), fieldSchema, v);
-		case "REPEATED":
-			return convertRepeatedField(schema, fieldSchema, v);
-		case "NULLABLE":
-			return convertNullableField(schema, fieldSchema, v);
-		default:
-			throw new UnsupportedOperationException(
-					"Parsing a field with BigQuery field schema mode " + fieldSchema.getMode());
-		}
+	/**
+	 * Returns the cached converter of the projected fields for the given schemas, compiling it on first use.
+	 */
+	public static TableRowConverter getConverter(Schema avroSchema, TableSchema schema, FieldProjection projection) {
+		return Caches.load(CONVERTERS, new ConverterKey(avroSchema, schema, projection),
+				() -> TableRowConverter.compile(avroSchema, schema, projection));
 	}
 
-	private static List<Object> convertRepeatedField(Schema schema, TableFieldSchema fieldSchema, Object v) {
-		Schema.Type arrayType = schema.getType();
-		verify(
-				arrayType == Schema.Type.ARRAY,
-				"BigQuery REPEATED field %s should be Avro ARRAY, not %s",
-				fieldSchema.getName(),
-				arrayType);
-		// REPEATED fields are represented as Avro arrays.
-		if (v == null) {
-			// Handle the case of an empty repeated field.
-			return ImmutableList.of();
-		}
-		@SuppressWarnings("unchecked")
-		List<Object> elements = (List<Object>) v;
-		ImmutableList.Builder<Object> values = ImmutableList.builder();
-		Schema.Type elementType = schema.getElementType().getType();
-		for (Object element : elements) {
-			values.add(convertRequiredField(elementType, fieldSchema, element));
-		}
-		return values.build();
+	/**
+	 * Reads the next Avro binary record from the decoder and writes it as the json of its {@link TableRow}, following the rules of
+	 * {@link #convertGenericRecordToTableRow(GenericRecord, TableSchema)} without building the record nor the row. <br>
+	 * The transcoding is compiled once per (record schema, table schema) pair into a {@link TableRowJsonTranscoder} and cached as the
+	 * converters are.
+	 * 
+	 * @param in decoder positioned on a record of the given avro schema
+	 * @param avroSchema schema the record was written with
+	 * @param schema Bigquery schema of the row
+	 * @param out json generator, not flushed
+	 * @throws IOException when the decoder or the generator fail
+	 */
+	public static void transcodeToTableRowJson(Decoder in, Schema avroSchema, TableSchema schema, JsonGenerator out) throws IOException {
+		getTranscoder(avroSchema, schema).transcode(in, out);
 	}
 
-	private static Object convertRequiredField(Schema.Type avroType, TableFieldSchema fieldSchema, Object v) {
-		// REQUIRED fields are represented as the corresponding Avro types. For example, a BigQuery
-		// INTEGER type maps to an Avro LONG type.
-		checkNotNull(v, "REQUIRED field %s should not be null", fieldSchema.getName());
-
-		// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the type field
-		// is required, so it may not be null.
-		String bqType = fieldSchema.getType();
-		List<Schema.Type> expectedAvroTypes = BQ_TYPE_TO_AVRO_TYPE_MAP.get(bqType);
-		verifyNotNull(expectedAvroTypes, "Unsupported BigQuery type: %s", bqType);
-		verify(
-				expectedAvroTypes.contains(avroType),
-				"Expected Avro schema type %s, not %s, for BigQuery %s field %s",
-				expectedAvroTypes,
-				avroType,
-				bqType,
-				fieldSchema.getName());
-		switch (fieldSchema.getType()) {
-		case "BOOLEAN":
-			verify(v instanceof Boolean, "Expected Boolean, got %s", v.getClass());
-			return v;
-		case "BYTES":
-			verify(v instanceof ByteBuffer, "Expected ByteBuffer, got %s", v.getClass());
-			ByteBuffer byteBuffer = (ByteBuffer) v;
-			byte[] bytes = new byte[byteBuffer.limit()];
-			byteBuffer.get(bytes);
-			return BaseEncoding.base64().encode(bytes);
-		case "DATE":
-		case "DATETIME":
-		case "STRING":
-		case "TIME":
-			// Avro will use a CharSequence to represent String objects, but it may not always use
-			// java.lang.String; for example, it may prefer org.apache.avro.util.Utf8.
-			verify(v instanceof CharSequence || v instanceof GenericData.EnumSymbol,
-					"Expected CharSequence (String) or GenericData.EnumSymbol, got %s", v.getClass());
-			return v.toString();
-		case "FLOAT":
-			verify(v instanceof Double || v instanceof Float, "Expected Double or Float, got %s", v.getClass());
-			return v;
-		case "INTEGER":
-			verify(v instanceof Integer || v instanceof Long, "Expected Integer or Long, got %s", v.getClass());
-			return v;
-		case "RECORD":
-			verify(v instanceof GenericRecord, "Expected GenericRecord, got %s", v.getClass());
-			return convertGenericRecordToTableRow((GenericRecord) v, fieldSchema.getFields());
-		case "TIMESTAMP":
-			// TIMESTAMP data types are represented as Avro LONG types. They are converted back to
-			// Strings with variable-precision (up to six digits) to match the JSON files export
-			// by BigQuery.
-			verify(v instanceof Long, "Expected Long, got %s", v.getClass());
-			Double doubleValue = ((Long) v) / 1000000.0;
-			return formatTimestamp(doubleValue.toString());
-		default:
-			throw new UnsupportedOperationException(
-					String.format(
-							"Unexpected BigQuery field schema type %s for field named %s",
-							fieldSchema.getType(),
-							fieldSchema.getName()));
-		}
+	/**
+	 * Returns the cached transcoder for the given schemas, compiling it on first use.
+	 */
+	public static TableRowJsonTranscoder getTranscoder(Schema avroSchema, TableSchema schema) {
+		return Caches.load(TRANSCODERS, new ConverterKey(avroSchema, schema, FieldProjection.all()),
+				() -> TableRowJsonTranscoder.compile(avroSchema, schema));
 	}
 
-	@Nullable
-	private static Object convertNullableField(Schema avroSchema, TableFieldSchema fieldSchema, Object v) {
-		// NULLABLE fields are represented as an Avro Union of the corresponding type and "null".
-		verify(
-				avroSchema.getType() == Schema.Type.UNION,
-				"Expected Avro schema type UNION, not %s, for BigQuery NULLABLE field %s",
-				avroSchema.getType(),
-				fieldSchema.getName());
-		List<Schema> unionTypes = avroSchema.getTypes();
-		verify(
-				unionTypes.size() == 2,
-				"BigQuery NULLABLE field %s should be an Avro UNION of NULL and another type, not %s",
-				fieldSchema.getName(),
-				unionTypes);
-
-		if (v == null) {
-			return null;
+	/**
+	 * Cache key comparing the schemas by fingerprint, see {@link SchemaFingerprints}, and the projection by value: an equal table schema
+	 * rebuilt or deserialized for each batch finds the converter compiled for the first one, and a table schema mutated in place does not.
+	 */
+	private static final class ConverterKey {
+		private final long avroFingerprint;
+		private final long fingerprint;
+		private final FieldProjection projection;
+
+		ConverterKey(Schema avroSchema, TableSchema schema, FieldProjection projection) {
+			this.avroFingerprint = SchemaFingerprints.conversionFingerprint(avroSchema);
+			this.fingerprint = SchemaFingerprints.fingerprint(schema);
+			this.projection = projection;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * Long.hashCode(avroFingerprint) + Long.hashCode(fingerprint)) + projection.hashCode();
 		}
 
-		Schema.Type firstType = unionTypes.get(0).getType();
-		if (!firstType.equals(Schema.Type.NULL)) {
-			return convertRequiredField(firstType, fieldSchema, v);
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ConverterKey))
+				return false;
+			ConverterKey other = (ConverterKey) obj;
+			return avroFingerprint == other.avroFingerprint && fingerprint == other.fingerprint && projection.equals(other.projection);
 		}
-		return convertRequiredField(unionTypes.get(1).getType(), fieldSchema, v);
 	}
 
-}
\ No newline at end of file
+}
@@ -6,12 +6,18 @@ import java.security.GeneralSecurityException;
 import org.apache.avro.Schema;
 
 import com.google.api.services.bigquery.model.Table;
-import com.google.api.services.bigquery.model.TableFieldSchema;
-import com.java.avro.util.AvroSchemaObject.AvroField;
-import com.java.avro.util.AvroSchemaObject.AvroRecord;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.java.avro.util.ConversionMetrics.Operation;
 
 /**
- * Utility to transform a BigQuery table schema to an AVRO schema.
+ * Utility to transform a BigQuery table schema to an AVRO schema. <br>
+ * Converted schemas are kept in a bounded, least recently used, cache keyed by a fingerprint of the table schema, safe to share across
+ * threads. The same {@link Schema} instance is returned for equal table schemas: do not add properties to it. <br>
+ * The temporal and NUMERIC Bigquery types are translated to strings, unless avro logical types are asked for: see
+ * {@link #toAvroSchema(Table, boolean)}.
  * 
  * @author giuseppe.adaldo
  *
@@ -20,6 +26,18 @@ public enum BigQuerySchemaConverter {
 
 	INSTANCE;
 
+	private static final int SCHEMA_CACHE_SIZE = 1024;
+
+	private final Cache<Long, Schema> schemas = CacheBuilder.newBuilder()
+			.maximumSize(SCHEMA_CACHE_SIZE)
+			.recordStats()
+			.build();
+
+	private final Cache<Long, Schema> logicalSchemas = CacheBuilder.newBuilder()
+			.maximumSize(SCHEMA_CACHE_SIZE)
+			.recordStats()
+			.build();
+
 	/**
 	 * Returns the {@link Schema} representation of the given Bigquery {@link Table} object.
 	 * 
@@ -29,29 +47,109 @@ public enum BigQuerySchemaConverter {
 	 * @throws GeneralSecurityException
 	 */
 	public Schema toAvroSchema(Table table) throws IOException, GeneralSecurityException {
-		final AvroSchemaObject schemaObject = AvroSchemaObject.build("Root", "");
-		table.getSchema().getFields()
-				.stream()
-				.forEach(f -> schemaObject.add(getNestedRecord(f, "root")));
-
-		return schemaObject.toSchema();
-	}
-
-	private AvroRecord getNestedRecord(TableFieldSchema field, String namespace) {
-		final Schema.Type type = AvroRecord.getType(field.getType());
-		if (AvroRecord.isRecord(type)) {
-			final AvroRecord record = AvroRecord.buildAvroRecordByMode(field.getMode(), field.getName(), namespace,
-					field.getDescription());
-			if (field.getFields() != null) {
-				field.getFields().stream()
-						.forEach(f -> record.add(getNestedRecord(f, AvroRecord.formatNamespace(namespace, field.getName()))));
+		return toAvroSchema(table, false);
+	}
+
+	/**
+	 * Returns the {@link Schema} representation of the given Bigquery {@link Table} object, with avro logical types when asked for: TIMESTAMP
+	 * as <code>timestamp-micros</code>, DATETIME as <code>local-timestamp-micros</code>, TIME as <code>time-micros</code>, DATE as
+	 * <code>date</code> and NUMERIC as a <code>decimal(38, 9)</code>, see {@link LogicalTypeFormats#NUMERIC_PRECISION} and
+	 * {@link LogicalTypeFormats#NUMERIC_SCALE}. The json reader and the TableRow conversion parse and format their values, see
+	 * {@link LogicalTypeFormats}.
+	 *
+	 * @param table
+	 * @param logicalTypes whether to translate to avro logical types
+	 * @return
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public Schema toAvroSchema(Table table, boolean logicalTypes) throws IOException, GeneralSecurityException {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		try {
+			final long fingerprint = SchemaFingerprints.fingerprint(table.getSchema());
+			final Cache<Long, Schema> cache = cache(logicalTypes);
+			Schema schema = cache.getIfPresent(fingerprint);
+			if (schema == null) {
+				schema = buildAvroSchema(table, logicalTypes);
+				cache.put(fingerprint, schema);
 			}
-			return record;
-		} else {
-			return AvroField.buildAvroField(field.getMode(), field.getName(), type, field.getDescription());
+			Metrics.succeeded(metrics, Operation.AVRO_SCHEMA, start, 0, 0);
+			return schema;
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.AVRO_SCHEMA, ex);
+			throw ex;
 		}
 	}
 
+	/**
+	 * Returns the changes from the previous version of a table to the new table schema, with the avro schema of the new table schema patched
+	 * from the previous one: only the changed fields are translated. The new avro schema is cached as if returned by
+	 * {@link #toAvroSchema(Table)}.
+	 *
+	 * @param previous previous version of the table
+	 * @param previousSchema avro schema of the previous version, as returned by {@link #toAvroSchema(Table)}
+	 * @param next new table schema
+	 * @return
+	 * @throws com.google.common.base.VerifyException when the previous avro schema does not match the previous table schema
+	 */
+	public SchemaEvolution evolve(Table previous, Schema previousSchema, TableSchema next) {
+		return evolve(previous, previousSchema, next, false);
+	}
+
+	/**
+	 * Same as {@link #evolve(Table, Schema, TableSchema)} for schemas translated with or without avro logical types.
+	 */
+	public SchemaEvolution evolve(Table previous, Schema previousSchema, TableSchema next, boolean logicalTypes) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		try {
+			final SchemaEvolution evolution = SchemaEvolution.diff(previous.getSchema().getFields(), previousSchema, next.getFields(),
+					logicalTypes);
+			if (!evolution.isUnchanged())
+				cache(logicalTypes).put(SchemaFingerprints.fingerprint(next), evolution.getSchema());
+			Metrics.succeeded(metrics, Operation.AVRO_SCHEMA, start, 0, 0);
+			return evolution;
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.AVRO_SCHEMA, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns a lazy avro view of the given Bigquery {@link Table} object, translating the fields on first lookup only: to be preferred to
+	 * {@link #toAvroSchema(Table)} when a few fields of a large table are needed. The view is not cached, keep it for as long as the table
+	 * schema does not change.
+	 *
+	 * @param table
+	 * @return
+	 */
+	public LazyAvroSchema toLazyAvroSchema(Table table) {
+		return toLazyAvroSchema(table, false);
+	}
+
+	/**
+	 * Same as {@link #toLazyAvroSchema(Table)}, with avro logical types when asked for: see {@link #toAvroSchema(Table, boolean)}.
+	 */
+	public LazyAvroSchema toLazyAvroSchema(Table table, boolean logicalTypes) {
+		return new LazyAvroSchema("Root", "", table.getSchema().getFields(), logicalTypes);
+	}
+
+	/**
+	 * Returns the hit, miss and eviction counts of the schema cache.
+	 */
+	public CacheStats getCacheStats() {
+		return schemas.stats().plus(logicalSchemas.stats());
+	}
+
+	private Cache<Long, Schema> cache(boolean logicalTypes) {
+		return logicalTypes ? logicalSchemas : schemas;
+	}
+
+	private Schema buildAvroSchema(Table table, boolean logicalTypes) {
+		return AvroSchemaObject.build("Root", "", table.getSchema().getFields(), logicalTypes).toSchema();
+	}
+
 	public static BigQuerySchemaConverter getInstance() {
 		return INSTANCE;
 	}
@@ -0,0 +1,192 @@
+package com.java.avro.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+
+/**
+ * Growable byte array writing the Avro binary encoding of primitive values, used to transcode json straight to Avro binary. <br>
+ * Unlike a {@link BinaryEncoder} it can go back over what has been written: array and map block counts are inserted once the items are
+ * known, and record fields are reordered in place when the json keys do not follow the schema order.
+ *
+ * <br>
+ * <strong>Note:</strong> not thread-safe.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+final class BinaryBuffer extends OutputStream {
+
+	private final byte[] scratch = new byte[10];
+	private byte[] buf;
+	private int count;
+	private BinaryEncoder encoder;
+
+	BinaryBuffer() {
+		this(256);
+	}
+
+	BinaryBuffer(int capacity) {
+		this.buf = new byte[capacity];
+	}
+
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Discards everything written after the given position.
+	 */
+	void reset(int position) {
+		count = position;
+	}
+
+	/**
+	 * Returns a direct encoder appending to this buffer, for values written through a {@link org.apache.avro.io.DatumWriter}.
+	 */
+	Encoder encoder() {
+		if (encoder == null)
+			encoder = EncoderFactory.get().directBinaryEncoder(this, null);
+		return encoder;
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(count + 1);
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensureCapacity(count + length);
+		System.arraycopy(bytes, offset, buf, count, length);
+		count += length;
+	}
+
+	void writeBoolean(boolean value) {
+		write(value ? 1 : 0);
+	}
+
+	void writeInt(int value) {
+		writeLong(value);
+	}
+
+	void writeLong(long value) {
+		ensureCapacity(count + 10);
+		count = encodeLong(value, buf, count);
+	}
+
+	void writeFloat(float value) {
+		ensureCapacity(count + 4);
+		int bits = Float.floatToRawIntBits(value);
+		buf[count++] = (byte) bits;
+		buf[count++] = (byte) (bits >>> 8);
+		buf[count++] = (byte) (bits >>> 16);
+		buf[count++] = (byte) (bits >>> 24);
+	}
+
+	void writeDouble(double value) {
+		ensureCapacity(count + 8);
+		long bits = Double.doubleToRawLongBits(value);
+		for (int i = 0; i < 8; i++) {
+			buf[count++] = (byte) (bits >>> (i * 8));
+		}
+	}
+
+	/**
+	 * Writes the utf-8 length and bytes of the string without going through an intermediate byte array. Unpaired surrogates are replaced by
+	 * <code>'?'</code>, as {@link String#getBytes(java.nio.charset.Charset)} does.
+	 */
+	void writeString(String value) {
+		int length = value.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (isPair(value, i)) {
+				utf8Length += 4;
+				i++;
+			} else {
+				utf8Length += Character.isSurrogate(c) ? 1 : 3;
+			}
+		}
+		writeLong(utf8Length);
+		ensureCapacity(count + utf8Length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buf[count++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[count++] = (byte) (0xC0 | c >> 6);
+				buf[count++] = (byte) (0x80 | c & 0x3F);
+			} else if (isPair(value, i)) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buf[count++] = (byte) (0xF0 | codePoint >> 18);
+				buf[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				buf[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				buf[count++] = (byte) (0x80 | codePoint & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				buf[count++] = '?';
+			} else {
+				buf[count++] = (byte) (0xE0 | c >> 12);
+				buf[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buf[count++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	/**
+	 * Inserts the encoding of the given long at <code>position</code>, shifting what follows.
+	 */
+	void insertLong(int position, long value) {
+		int length = encodeLong(value, scratch, 0);
+		ensureCapacity(count + length);
+		System.arraycopy(buf, position, buf, position + length, count - position);
+		System.arraycopy(scratch, 0, buf, position, length);
+		count += length;
+	}
+
+	byte[] copyOfRange(int from, int to) {
+		return Arrays.copyOfRange(buf, from, to);
+	}
+
+	byte[] toByteArray() {
+		return Arrays.copyOf(buf, count);
+	}
+
+	void writeTo(Encoder out) throws IOException {
+		out.writeFixed(buf, 0, count);
+	}
+
+	void writeTo(ByteBuffer target) {
+		target.put(buf, 0, count);
+	}
+
+	private static boolean isPair(String value, int i) {
+		return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1));
+	}
+
+	private static int encodeLong(long value, byte[] bytes, int position) {
+		long n = (value << 1) ^ (value >> 63);
+		while ((n & ~0x7FL) != 0) {
+			bytes[position++] = (byte) ((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		bytes[position++] = (byte) n;
+		return position;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.java.avro.util;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.generic.GenericData;
+
+/**
+ * Outcome of an error tolerant bulk read: the records of the documents that could be converted, in the input order, and a
+ * {@link ConversionError} for each one that could not.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class BulkReadResult {
+
+	private final List<GenericData.Record> records;
+	private final List<ConversionError> errors;
+
+	BulkReadResult(List<GenericData.Record> records, List<ConversionError> errors) {
+		this.records = Collections.unmodifiableList(records);
+		this.errors = Collections.unmodifiableList(errors);
+	}
+
+	public List<GenericData.Record> getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the documents that could not be converted, in the input order.
+	 */
+	public List<ConversionError> getErrors() {
+		return errors;
+	}
+
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+}
@@ -0,0 +1,37 @@
+package com.java.avro.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.avro.AvroRuntimeException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Loading of the compiled converters, readers and plans kept in Guava caches.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+final class Caches {
+
+	private Caches() {
+	}
+
+	/**
+	 * Returns the cached value, loading it once when concurrent lookups miss together, and rethrows what the loader threw as it is: a
+	 * {@link com.google.common.base.VerifyException} of a compilation reaches the caller unwrapped.
+	 */
+	static <K, V> V load(Cache<K, V> cache, K key, Callable<V> loader) {
+		try {
+			return cache.get(key, loader);
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			Throwables.propagateIfPossible(ex.getCause());
+			throw new AvroRuntimeException(ex.getCause());
+		}
+	}
+
+}
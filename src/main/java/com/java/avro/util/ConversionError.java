@@ -0,0 +1,54 @@
+package com.java.avro.util;
+
+import java.util.Deque;
+
+/**
+ * A json document that could not be converted, collected by the error tolerant reads such as {@link JsonReaderPlan#readLines} in place of
+ * the exception a single read throws. <br>
+ * Entries are compact: the field path is snapshotted as a string and the message, built from the conversion error the readers raise without a
+ * stack trace, is only formatted when asked for.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class ConversionError {
+
+	private final long offset;
+	private final String path;
+	private final ConversionMetrics.ErrorKind kind;
+	private final Throwable cause;
+
+	ConversionError(long offset, Deque<String> path, Throwable cause) {
+		this.offset = offset;
+		this.path = AvroTypeExceptions.path(path);
+		this.kind = AvroTypeExceptions.errorKind(cause);
+		this.cause = cause;
+	}
+
+	/**
+	 * Returns the position of the document in the input: a byte offset for newline-delimited json, an index for a list of documents.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the dotted path of the field the conversion failed on, empty when the document failed as a whole, as malformed json does.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public ConversionMetrics.ErrorKind getKind() {
+		return kind;
+	}
+
+	public String getMessage() {
+		return cause.getMessage();
+	}
+
+	@Override
+	public String toString() {
+		return kind + " error at offset " + offset + (path.isEmpty() ? "" : ", field " + path) + ": " + getMessage();
+	}
+}
@@ -0,0 +1,176 @@
+package com.java.avro.util;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams interfaces for the conversion pipelines built with {@link ConversionStage}. <br>
+ * They are the interfaces of <code>java.util.concurrent.Flow</code>, method for method, which this library cannot use while it targets Java
+ * 8: on a newer runtime, a <code>Flow</code> publisher or subscriber is adapted with method references (<code>publisher::subscribe</code>,
+ * <code>subscriber::onNext</code>, ...). The same rules apply: signals to a subscriber are serialized, nothing is sent beyond the requested
+ * demand and a non positive request is answered with an {@link IllegalArgumentException}.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class ConversionFlow {
+
+	private static final int DEFAULT_BUFFER_SIZE = 256;
+
+	private ConversionFlow() {
+	}
+
+	@FunctionalInterface
+	public interface Publisher<T> {
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	public interface Subscription {
+		void request(long n);
+
+		void cancel();
+	}
+
+	public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+	}
+
+	/**
+	 * Returns the number of items a stage requests ahead of the downstream demand, unless configured otherwise.
+	 */
+	public static int defaultBufferSize() {
+		return DEFAULT_BUFFER_SIZE;
+	}
+
+	/**
+	 * Returns a publisher emitting the items of the iterable on demand, then completing. Each subscriber gets its own iterator, items are
+	 * emitted on the thread requesting them.
+	 */
+	public static <T> Publisher<T> fromIterable(Iterable<? extends T> items) {
+		return subscriber -> {
+			final Iterator<? extends T> iterator;
+			try {
+				iterator = items.iterator();
+			} catch (RuntimeException ex) {
+				subscriber.onSubscribe(NoopSubscription.INSTANCE);
+				subscriber.onError(ex);
+				return;
+			}
+			new IteratorSubscription<T>(iterator, subscriber).start();
+		};
+	}
+
+	/**
+	 * Adds <code>n</code> to the demand, capping it at {@link Long#MAX_VALUE}.
+	 */
+	static void addDemand(AtomicLong requested, long n) {
+		requested.accumulateAndGet(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+	}
+
+	enum NoopSubscription implements Subscription {
+		INSTANCE;
+
+		@Override
+		public void request(long n) {
+		}
+
+		@Override
+		public void cancel() {
+		}
+	}
+
+	private static final class IteratorSubscription<T> implements Subscription {
+		private final Iterator<? extends T> iterator;
+		private final Subscriber<? super T> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable badRequest;
+
+		IteratorSubscription(Iterator<? extends T> iterator, Subscriber<? super T> subscriber) {
+			this.iterator = iterator;
+			this.subscriber = subscriber;
+		}
+
+		void start() {
+			subscriber.onSubscribe(this);
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0)
+				badRequest = new IllegalArgumentException("Non positive request: " + n);
+			else
+				addDemand(requested, n);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Emits while there is demand, from whichever thread gets here first; the others leave their work to it.
+		 */
+		private void drain() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			int missed = 1;
+			do {
+				emit();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void emit() {
+			long emitted = 0;
+			final long demand = requested.get();
+			try {
+				while (!cancelled) {
+					if (badRequest != null) {
+						terminate(badRequest);
+						return;
+					}
+					if (!iterator.hasNext()) {
+						terminate(null);
+						return;
+					}
+					if (emitted == demand)
+						break;
+					final T item = iterator.next();
+					if (item == null) {
+						terminate(new NullPointerException("Null item at position " + emitted));
+						return;
+					}
+					subscriber.onNext(item);
+					emitted++;
+				}
+			} catch (RuntimeException ex) {
+				terminate(ex);
+				return;
+			}
+			requested.addAndGet(-emitted);
+		}
+
+		private void terminate(Throwable error) {
+			cancelled = true;
+			if (error == null)
+				subscriber.onComplete();
+			else
+				subscriber.onError(error);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.java.avro.util;
+
+import org.apache.avro.Schema;
+
+/**
+ * Receives the measurements taken on the hot paths of the library: one call per record read, transcoded or converted by a public entry point,
+ * with its latency and the bytes it consumed and produced, one call per record field decoded, per union value that had to fall back on
+ * another branch and per failure, by {@link ErrorKind}. <br>
+ * Nothing is measured until an implementation is {@link ConversionMetricsRegistry#install(ConversionMetrics) installed}: with the default {@link #NOOP} an entry point
+ * costs a volatile read and a reference comparison, the clock is not even read. Methods are called on the converting threads, synchronously,
+ * so implementations must be thread-safe and cheap, {@link InMemoryConversionMetrics} is one. Every method does nothing by default.
+ *
+ * <pre>
+ * InMemoryConversionMetrics metrics = new InMemoryConversionMetrics();
+ * ConversionMetricsRegistry.install(metrics);
+ * ...
+ * metrics.count(ConversionMetrics.Operation.JSON_READ);
+ * </pre>
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public interface ConversionMetrics {
+
+	/**
+	 * The measured entry points.
+	 */
+	enum Operation {
+		/**
+		 * Json to {@link org.apache.avro.generic.GenericRecord}, by {@link JsonReaderPlan} and {@link JsonGenericRecordReader}.
+		 */
+		JSON_READ,
+		/**
+		 * Json to Avro binary, by the <code>toBinary</code> and <code>write</code> methods of {@link JsonReaderPlan}.
+		 */
+		JSON_TO_BINARY,
+		/**
+		 * {@link org.apache.avro.generic.GenericRecord} to {@link com.google.api.services.bigquery.model.TableRow}, by
+		 * {@link TableRowConverter} and all the callers sharing it.
+		 */
+		TABLE_ROW,
+		/**
+		 * Avro binary to Bigquery json, by {@link TableRowJsonTranscoder}.
+		 */
+		TABLE_ROW_JSON,
+		/**
+		 * Avro schema to Bigquery schema, by {@link AvroSchemaConverter}, cache hits included.
+		 */
+		TABLE_SCHEMA,
+		/**
+		 * Bigquery schema to Avro schema, by {@link BigQuerySchemaConverter}, cache hits included.
+		 */
+		AVRO_SCHEMA
+	}
+
+	/**
+	 * Why an operation failed.
+	 */
+	enum ErrorKind {
+		/**
+		 * A value of the wrong type for its field.
+		 */
+		TYPE,
+		/**
+		 * A string that is none of the enum symbols.
+		 */
+		ENUM,
+		/**
+		 * A value no branch of its union accepts.
+		 */
+		UNION,
+		/**
+		 * Malformed input, or input the decoder could not read.
+		 */
+		PARSE,
+		/**
+		 * Anything else: missing required values, mismatching schemas...
+		 */
+		OTHER
+	}
+
+	/**
+	 * Measures nothing, the default.
+	 */
+	ConversionMetrics NOOP = new ConversionMetrics() {
+	};
+
+	/**
+	 * A record went through an entry point.
+	 *
+	 * @param operation the entry point
+	 * @param nanos time spent in it
+	 * @param bytesIn input bytes consumed, 0 when the input is not bytes or their count is not known
+	 * @param bytesOut output bytes produced, 0 when the output is not bytes
+	 */
+	default void onRecord(Operation operation, long nanos, long bytesIn, long bytesOut) {
+	}
+
+	/**
+	 * A record failed to go through an entry point.
+	 */
+	default void onError(Operation operation, ErrorKind kind) {
+	}
+
+	/**
+	 * A record field was decoded into a value. Nullable unions count as their non-null type.
+	 */
+	default void onField(Schema.Type type) {
+	}
+
+	/**
+	 * A union value was rejected by at least one of the branches its json type allows before being resolved, or failing to.
+	 *
+	 * @param attempts number of branches that rejected the value
+	 */
+	default void onUnionFallback(int attempts) {
+	}
+}
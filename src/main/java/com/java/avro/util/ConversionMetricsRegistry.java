@@ -0,0 +1,33 @@
+package com.java.avro.util;
+
+/**
+ * Installs the {@link ConversionMetrics} the library reports to, the library wide switch of the measurements.
+ *
+ * <pre>
+ * InMemoryConversionMetrics metrics = new InMemoryConversionMetrics();
+ * ConversionMetricsRegistry.install(metrics);
+ * </pre>
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class ConversionMetricsRegistry {
+
+	private ConversionMetricsRegistry() {
+	}
+
+	/**
+	 * Makes the library report to the given metrics from now on, or to none when null.
+	 */
+	public static void install(ConversionMetrics metrics) {
+		Metrics.installed = metrics == null ? ConversionMetrics.NOOP : metrics;
+	}
+
+	/**
+	 * Returns the metrics the library reports to, {@link ConversionMetrics#NOOP} unless others were installed.
+	 */
+	public static ConversionMetrics installed() {
+		return Metrics.installed;
+	}
+
+}
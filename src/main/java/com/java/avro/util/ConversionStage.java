@@ -0,0 +1,344 @@
+package com.java.avro.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+
+/**
+ * One step of a streaming conversion pipeline: a {@link ConversionFlow.Processor} applying a conversion to each item, in batches, on an
+ * executor, and emitting the results in the input order. <br>
+ * Stages chain on the publishers they are applied to:
+ *
+ * <pre>
+ * ConversionFlow.Publisher&lt;TableRow&gt; rows = ConversionStage.recordToTableRow(tableSchema)
+ * 		.from(ConversionStage.jsonToRecord(reader.compile(schema)).from(messages));
+ * rows.subscribe(sink);
+ * </pre>
+ *
+ * Back-pressure is demand driven: a stage requests at most {@link #withBufferSize(int) bufferSize} items from upstream and only asks for more
+ * as its results are requested downstream, so a slow subscriber slows down the whole chain and memory stays bounded. Up to
+ * {@link #withParallelism(int) parallelism} batches are converted at once; a batch takes whatever has arrived, up to
+ * {@link #withBatchSize(int) batchSize} items, as soon as a slot is free, so batches only grow under load. <br>
+ * A conversion failure, an upstream error or an executor rejection cancels upstream and is signalled downstream right away, results not yet
+ * emitted are dropped.
+ *
+ * <br>
+ * <strong>Note:</strong> instances are immutable, the <code>with*</code> methods return a configured copy. Each {@link #processor()} is a new
+ * single-use processor accepting one upstream and one subscriber.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class ConversionStage<T, R> {
+
+	private static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final Function<? super List<T>, ? extends List<R>> conversion;
+	private final Executor executor;
+	private final int parallelism;
+	private final int batchSize;
+	private final int bufferSize;
+
+	private ConversionStage(Function<? super List<T>, ? extends List<R>> conversion, Executor executor, int parallelism, int batchSize,
+			int bufferSize) {
+		if (parallelism < 1 || batchSize < 1 || bufferSize < 1)
+			throw new IllegalArgumentException("parallelism, batchSize and bufferSize must be positive");
+		if (executor == null)
+			throw new NullPointerException("executor must not be null");
+		this.conversion = conversion;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.batchSize = batchSize;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Returns a stage applying the function to each item, on the common fork-join pool with as many batches at once as its threads, batches
+	 * of up to 64 items and {@link ConversionFlow#defaultBufferSize()} items buffered.
+	 */
+	public static <T, R> ConversionStage<T, R> of(Function<? super T, ? extends R> function) {
+		return ofBatches(items -> {
+			final List<R> results = new ArrayList<>(items.size());
+			for (T item : items) {
+				results.add(function.apply(item));
+			}
+			return results;
+		});
+	}
+
+	private static <T, R> ConversionStage<T, R> ofBatches(Function<? super List<T>, ? extends List<R>> conversion) {
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		return new ConversionStage<>(conversion, pool, pool.getParallelism(), DEFAULT_BATCH_SIZE, ConversionFlow.defaultBufferSize());
+	}
+
+	/**
+	 * Returns a stage reading json documents into records with the given plan.
+	 */
+	public static ConversionStage<byte[], GenericData.Record> jsonToRecord(JsonReaderPlan plan) {
+		return of(plan::read);
+	}
+
+	/**
+	 * Returns a stage transcoding json documents straight to the Avro binary encoding of their records with the given plan.
+	 */
+	public static ConversionStage<byte[], byte[]> jsonToBinary(JsonReaderPlan plan) {
+		return of(plan::toBinary);
+	}
+
+	/**
+	 * Returns a stage converting records to rows as {@link AvroUtils#convertGenericRecordToTableRow(GenericRecord, TableSchema)} does, the
+	 * compiled converter being looked up once per batch.
+	 */
+	public static ConversionStage<GenericRecord, TableRow> recordToTableRow(TableSchema schema) {
+		return recordToTableRow(schema, FieldProjection.all());
+	}
+
+	public static ConversionStage<GenericRecord, TableRow> recordToTableRow(TableSchema schema, FieldProjection projection) {
+		return ofBatches(records -> TableRowBatchConverter.convertSlice(records, schema, projection));
+	}
+
+	/**
+	 * Returns a copy running on the given executor, which is not shut down by the stage.
+	 */
+	public ConversionStage<T, R> withExecutor(Executor executor) {
+		return new ConversionStage<>(conversion, executor, parallelism, batchSize, bufferSize);
+	}
+
+	public ConversionStage<T, R> withParallelism(int parallelism) {
+		return new ConversionStage<>(conversion, executor, parallelism, batchSize, bufferSize);
+	}
+
+	public ConversionStage<T, R> withBatchSize(int batchSize) {
+		return new ConversionStage<>(conversion, executor, parallelism, batchSize, bufferSize);
+	}
+
+	public ConversionStage<T, R> withBufferSize(int bufferSize) {
+		return new ConversionStage<>(conversion, executor, parallelism, batchSize, bufferSize);
+	}
+
+	/**
+	 * Returns a new processor running this stage, to be subscribed to a publisher.
+	 */
+	public ConversionFlow.Processor<T, R> processor() {
+		return new StageProcessor<>(this);
+	}
+
+	/**
+	 * Subscribes a new processor running this stage to the given publisher and returns it.
+	 */
+	public ConversionFlow.Publisher<R> from(ConversionFlow.Publisher<? extends T> upstream) {
+		final ConversionFlow.Processor<T, R> processor = processor();
+		upstream.subscribe(processor);
+		return processor;
+	}
+
+	/**
+	 * Converted batch, completed by a worker and emitted by the drain loop.
+	 */
+	private static final class Batch<R> {
+		private volatile boolean done;
+		private List<R> results;
+		private Throwable error;
+		private int next;
+	}
+
+	/**
+	 * All the signals to the subscriber and the upstream requests go through {@link #drain()}, run by one thread at a time: the thread getting
+	 * there while another drains only leaves it one more pass to do.
+	 */
+	private static final class StageProcessor<T, R> implements ConversionFlow.Processor<T, R>, ConversionFlow.Subscription {
+		private final ConversionStage<T, R> stage;
+		private final ConcurrentLinkedQueue<T> inbox = new ConcurrentLinkedQueue<>();
+		private final AtomicReference<ConversionFlow.Subscriber<? super R>> downstream = new AtomicReference<>();
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile ConversionFlow.Subscription upstream;
+		private volatile boolean subscribed;
+		private volatile boolean upstreamDone;
+		private volatile Throwable error;
+		private volatile boolean cancelled;
+		// drain loop only
+		private final ArrayDeque<Batch<R>> batches = new ArrayDeque<>();
+		private boolean terminated;
+
+		StageProcessor(ConversionStage<T, R> stage) {
+			this.stage = stage;
+		}
+
+		@Override
+		public void onSubscribe(ConversionFlow.Subscription subscription) {
+			if (upstream != null || cancelled) {
+				subscription.cancel();
+				return;
+			}
+			upstream = subscription;
+			subscription.request(stage.bufferSize);
+		}
+
+		@Override
+		public void onNext(T item) {
+			if (item == null)
+				throw new NullPointerException("onNext called with a null item");
+			inbox.offer(item);
+			drain();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			upstreamDone = true;
+			drain();
+		}
+
+		@Override
+		public void onComplete() {
+			upstreamDone = true;
+			drain();
+		}
+
+		@Override
+		public void subscribe(ConversionFlow.Subscriber<? super R> subscriber) {
+			if (!downstream.compareAndSet(null, subscriber)) {
+				subscriber.onSubscribe(ConversionFlow.NoopSubscription.INSTANCE);
+				subscriber.onError(new IllegalStateException("A conversion stage accepts a single subscriber"));
+				return;
+			}
+			subscriber.onSubscribe(this);
+			subscribed = true;
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0)
+				error = new IllegalArgumentException("Non positive request: " + n);
+			else
+				ConversionFlow.addDemand(requested, n);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			int missed = 1;
+			do {
+				drainLoop();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drainLoop() {
+			if (terminated)
+				return;
+			if (cancelled) {
+				terminate();
+				return;
+			}
+			submitBatches();
+			if (!subscribed)
+				return;
+			final ConversionFlow.Subscriber<? super R> subscriber = downstream.get();
+			if (error != null) {
+				terminate();
+				subscriber.onError(error);
+				return;
+			}
+			final long demand = requested.get();
+			long emitted = 0;
+			Batch<R> head;
+			while ((head = batches.peek()) != null && head.done) {
+				if (head.error != null) {
+					terminate();
+					subscriber.onError(head.error);
+					return;
+				}
+				if (head.next == head.results.size()) {
+					batches.poll();
+					continue;
+				}
+				if (emitted == demand)
+					break;
+				subscriber.onNext(head.results.get(head.next++));
+				emitted++;
+				if (cancelled) {
+					terminate();
+					return;
+				}
+			}
+			if (emitted > 0) {
+				requested.addAndGet(-emitted);
+				// the emitted items leave the buffer, as many can come in
+				upstream.request(emitted);
+			}
+			if (upstreamDone && inbox.isEmpty() && batches.isEmpty()) {
+				terminated = true;
+				subscriber.onComplete();
+			}
+		}
+
+		private void submitBatches() {
+			while (!inbox.isEmpty() && running.get() < stage.parallelism) {
+				final List<T> items = new ArrayList<>(Math.min(stage.batchSize, inbox.size()));
+				T item;
+				while (items.size() < stage.batchSize && (item = inbox.poll()) != null) {
+					items.add(item);
+				}
+				final Batch<R> batch = new Batch<>();
+				batches.add(batch);
+				running.incrementAndGet();
+				try {
+					stage.executor.execute(() -> convert(batch, items));
+				} catch (RuntimeException ex) {
+					complete(batch, null, ex);
+				}
+			}
+		}
+
+		private void convert(Batch<R> batch, List<T> items) {
+			try {
+				complete(batch, stage.conversion.apply(items), null);
+			} catch (Throwable ex) {
+				// whatever the failure, the batch must complete for the stream to terminate
+				complete(batch, null, ex);
+			}
+		}
+
+		private void complete(Batch<R> batch, List<R> results, Throwable error) {
+			batch.results = results;
+			batch.error = error;
+			batch.done = true;
+			running.decrementAndGet();
+			drain();
+		}
+
+		private void terminate() {
+			terminated = true;
+			inbox.clear();
+			batches.clear();
+			final ConversionFlow.Subscription subscription = upstream;
+			if (subscription != null && !upstreamDone)
+				subscription.cancel();
+		}
+	}
+
+}
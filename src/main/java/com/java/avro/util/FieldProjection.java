@@ -0,0 +1,324 @@
+package com.java.avro.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+
+/**
+ * Selection of the fields to convert, given as dotted paths of field names compiled into a trie. <br>
+ * <ul>
+ * <li>a skip path (<code>a.b.c</code>) drops the field and its whole subtree;</li>
+ * <li>when keep paths are given, only the fields on a keep path are converted: keeping <code>a.b</code> converts <code>a</code> with its
+ * <code>b</code> field only, and the whole subtree of <code>b</code>. Skip paths apply to what is kept;</li>
+ * <li><code>*</code> matches any field name at its level (<code>a.*.d</code>);</li>
+ * <li>a skip path without dots is a field name dropped at any depth, the historical meaning of the skip lists.</li>
+ * </ul>
+ * Arrays, maps and unions are transparent: the path of a field of a repeated record goes through the array field name only. <br>
+ * A projection is resolved against a schema once, when compiling a conversion, so that excluded subtrees are never read nor converted: see
+ * {@link AvroSchemaConverter#toTableSchema(Schema, FieldProjection)}, {@link JsonGenericRecordReader#compile(Schema, FieldProjection)} and
+ * {@link AvroUtils#convertGenericRecordToTableRow(org.apache.avro.generic.GenericRecord, com.google.api.services.bigquery.model.TableSchema, FieldProjection)}.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> a projection is immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class FieldProjection {
+
+	private static final String WILDCARD = "*";
+
+	private static final FieldProjection ALL = new FieldProjection(null, Collections.emptySet());
+
+	// sorted, so that equal projections compare equal whatever the order of the paths
+	private final Set<String> keepPaths;
+	private final Set<String> skipPaths;
+	private final Set<String> skipAnywhere = new HashSet<>();
+	private final Node keep;
+	private final Node skip = new Node();
+
+	private FieldProjection(Collection<String> keepPaths, Collection<String> skipPaths) {
+		this.keepPaths = keepPaths == null ? null : Collections.unmodifiableSet(new TreeSet<>(keepPaths));
+		this.skipPaths = Collections.unmodifiableSet(new TreeSet<>(skipPaths));
+		if (this.keepPaths != null) {
+			this.keep = new Node();
+			for (String path : this.keepPaths) {
+				keep.add(split(path));
+			}
+		} else {
+			this.keep = null;
+		}
+		for (String path : this.skipPaths) {
+			final String[] segments = split(path);
+			if (segments.length == 1 && !WILDCARD.equals(path))
+				skipAnywhere.add(path);
+			else
+				skip.add(segments);
+		}
+	}
+
+	/**
+	 * Returns the projection converting every field.
+	 */
+	public static FieldProjection all() {
+		return ALL;
+	}
+
+	public static FieldProjection skipping(String... paths) {
+		return skipping(Arrays.asList(paths));
+	}
+
+	/**
+	 * Returns the projection converting every field but the ones on the given paths.
+	 */
+	public static FieldProjection skipping(Collection<String> paths) {
+		return paths == null || paths.isEmpty() ? ALL : new FieldProjection(null, paths);
+	}
+
+	public static FieldProjection keeping(String... paths) {
+		return keeping(Arrays.asList(paths));
+	}
+
+	/**
+	 * Returns the projection converting the fields on the given paths only.
+	 */
+	public static FieldProjection keeping(Collection<String> paths) {
+		return new FieldProjection(paths, Collections.emptySet());
+	}
+
+	/**
+	 * Returns a copy of this projection also skipping the given paths.
+	 */
+	public FieldProjection andSkipping(String... paths) {
+		final Set<String> skipped = new HashSet<>(skipPaths);
+		skipped.addAll(Arrays.asList(paths));
+		return new FieldProjection(keepPaths, skipped);
+	}
+
+	public boolean isAll() {
+		return keepPaths == null && skipPaths.isEmpty();
+	}
+
+	/**
+	 * Returns the record schema restricted to the projected fields. Records left untouched are reused as they are; a named record projected
+	 * differently at several places gets a numbered name suffix from its second variant on.
+	 *
+	 * @throws IllegalArgumentException when the schema is not a record
+	 */
+	public Schema apply(Schema schema) {
+		if (schema.getType() != Type.RECORD)
+			throw new IllegalArgumentException("Only record schemas can be projected, got: " + schema.getType());
+		return isAll() ? schema : new Projector().project(schema, root());
+	}
+
+	Scope root() {
+		return new Scope(Collections.singleton(skip), keep == null ? null : Collections.singleton(keep));
+	}
+
+	private static String[] split(String path) {
+		final String[] segments = path.split("\\.", -1);
+		for (String segment : segments) {
+			if (segment.isEmpty())
+				throw new IllegalArgumentException("Not a valid field path: '" + path + "'");
+		}
+		return segments;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(keepPaths, skipPaths);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FieldProjection))
+			return false;
+		FieldProjection other = (FieldProjection) obj;
+		return Objects.equals(keepPaths, other.keepPaths) && skipPaths.equals(other.skipPaths);
+	}
+
+	@Override
+	public String toString() {
+		return "FieldProjection[keep=" + (keepPaths == null ? "*" : keepPaths) + ", skip=" + skipPaths + "]";
+	}
+
+	private static final class Node {
+		private final Map<String, Node> children = new HashMap<>();
+		private boolean terminal;
+
+		void add(String[] segments) {
+			Node node = this;
+			for (String segment : segments) {
+				node = node.children.computeIfAbsent(segment, s -> new Node());
+			}
+			node.terminal = true;
+		}
+
+		/**
+		 * Adds to <code>matches</code> the children matching the field name, returning whether one of them ends a path.
+		 */
+		boolean match(String name, Set<Node> matches) {
+			boolean terminal = false;
+			final Node named = children.get(name);
+			if (named != null) {
+				terminal |= named.terminal;
+				matches.add(named);
+			}
+			final Node wildcard = children.get(WILDCARD);
+			if (wildcard != null) {
+				terminal |= wildcard.terminal;
+				matches.add(wildcard);
+			}
+			return terminal;
+		}
+	}
+
+	/**
+	 * Position in the trie for the fields of one record: the skip nodes reached so far, and the keep nodes reached so far, null once a keep
+	 * path has been fully matched.
+	 */
+	final class Scope {
+		private final Set<Node> skips;
+		private final Set<Node> keeps;
+
+		private Scope(Set<Node> skips, Set<Node> keeps) {
+			this.skips = skips;
+			this.keeps = keeps;
+		}
+
+		/**
+		 * Returns the scope of the fields of the given field, or null when the field is projected out.
+		 */
+		Scope field(String name) {
+			if (skipAnywhere.contains(name))
+				return null;
+			final Set<Node> nextSkips = new HashSet<>();
+			for (Node node : skips) {
+				if (node.match(name, nextSkips))
+					return null;
+			}
+			if (keeps == null)
+				return new Scope(nextSkips, null);
+			final Set<Node> nextKeeps = new HashSet<>();
+			boolean whole = false;
+			for (Node node : keeps) {
+				whole |= node.match(name, nextKeeps);
+			}
+			if (whole)
+				return new Scope(nextSkips, null);
+			return nextKeeps.isEmpty() ? null : new Scope(nextSkips, nextKeeps);
+		}
+
+		/**
+		 * Whether every field below is converted.
+		 */
+		boolean isAll() {
+			return skipAnywhere.isEmpty() && keeps == null && skips.stream().allMatch(node -> node.children.isEmpty());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(skips, keeps);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Scope))
+				return false;
+			Scope other = (Scope) obj;
+			return skips.equals(other.skips) && Objects.equals(keeps, other.keeps);
+		}
+	}
+
+	/**
+	 * Rebuilds the projected schemas. Records are memoized by (schema, scope), so that recursive schemas project to a cyclic graph.
+	 */
+	private static final class Projector {
+		private final Map<Schema, Map<Scope, Schema>> records = new IdentityHashMap<>();
+		private final Map<String, Integer> variants = new HashMap<>();
+
+		Schema project(Schema schema, Scope scope) {
+			switch (schema.getType()) {
+			case RECORD:
+				return record(schema, scope);
+			case ARRAY:
+				final Schema elements = project(schema.getElementType(), scope);
+				return elements == schema.getElementType() ? schema : withProps(Schema.createArray(elements), schema);
+			case MAP:
+				final Schema values = project(schema.getValueType(), scope);
+				return values == schema.getValueType() ? schema : withProps(Schema.createMap(values), schema);
+			case UNION:
+				final List<Schema> types = new ArrayList<>();
+				boolean changed = false;
+				for (Schema type : schema.getTypes()) {
+					final Schema projected = project(type, scope);
+					changed |= projected != type;
+					types.add(projected);
+				}
+				return changed ? Schema.createUnion(types) : schema;
+			default:
+				return schema;
+			}
+		}
+
+		private Schema record(Schema schema, Scope scope) {
+			if (scope.isAll())
+				return schema;
+			final Map<Scope, Schema> byScope = records.computeIfAbsent(schema, s -> new HashMap<>());
+			final Schema done = byScope.get(scope);
+			if (done != null)
+				return done;
+			// the name is chosen up front since the fields below may refer to the record
+			final String fullName = schema.getFullName();
+			final int variant = variants.merge(fullName, 1, Integer::sum);
+			final String name = variant == 1 ? schema.getName() : schema.getName() + "_" + variant;
+			final Schema record = Schema.createRecord(name, schema.getDoc(), schema.getNamespace(), schema.isError());
+			byScope.put(scope, record);
+
+			final List<Field> fields = new ArrayList<>();
+			boolean changed = false;
+			for (Field field : schema.getFields()) {
+				final Scope child = scope.field(field.name());
+				if (child == null) {
+					changed = true;
+					continue;
+				}
+				final Schema fieldSchema = project(field.schema(), child);
+				changed |= fieldSchema != field.schema();
+				final Field copy = new Field(field.name(), fieldSchema, field.doc(), field.defaultVal(), field.order());
+				field.aliases().forEach(copy::addAlias);
+				field.getObjectProps().forEach(copy::addProp);
+				fields.add(copy);
+			}
+			if (!changed) {
+				// nothing below refers to the new record, since nothing below was rebuilt
+				byScope.put(scope, schema);
+				if (variants.get(fullName) == variant)
+					variants.put(fullName, variant - 1);
+				return schema;
+			}
+			record.setFields(fields);
+			schema.getAliases().forEach(record::addAlias);
+			return withProps(record, schema);
+		}
+
+		private static Schema withProps(Schema projected, Schema schema) {
+			schema.getObjectProps().forEach(projected::addProp);
+			return projected;
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.java.avro.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.avro.Schema;
+
+/**
+ * {@link ConversionMetrics} kept in memory: counters per operation, error kind and field type, and a latency histogram per operation. <br>
+ * Latencies go to power of two buckets, so percentiles are upper bounds within a factor of two of the exact value: enough to compare runs or
+ * spot outliers, and cheap enough to leave installed. Rates are measured since the instance was created or last {@link #reset() reset}.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> thread-safe, counters are updated without locking. A read taken while records are being converted may mix
+ * counters from slightly different instants.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class InMemoryConversionMetrics implements ConversionMetrics {
+
+	private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+	private final Map<ErrorKind, LongAdder> errors = new EnumMap<>(ErrorKind.class);
+	private final Map<Schema.Type, LongAdder> fields = new EnumMap<>(Schema.Type.class);
+	private final LongAdder unionFallbacks = new LongAdder();
+	private final LongAdder unionFallbackAttempts = new LongAdder();
+	private volatile long since = System.nanoTime();
+
+	public InMemoryConversionMetrics() {
+		// all the keys are there from the start, the maps are only read afterwards
+		for (Operation operation : Operation.values()) {
+			operations.put(operation, new OperationStats());
+		}
+		for (ErrorKind kind : ErrorKind.values()) {
+			errors.put(kind, new LongAdder());
+		}
+		for (Schema.Type type : Schema.Type.values()) {
+			fields.put(type, new LongAdder());
+		}
+	}
+
+	@Override
+	public void onRecord(Operation operation, long nanos, long bytesIn, long bytesOut) {
+		final OperationStats stats = operations.get(operation);
+		stats.records.increment();
+		stats.bytesIn.add(bytesIn);
+		stats.bytesOut.add(bytesOut);
+		stats.nanos.add(nanos);
+		stats.latencies.incrementAndGet(bucket(nanos));
+	}
+
+	@Override
+	public void onError(Operation operation, ErrorKind kind) {
+		operations.get(operation).errors.increment();
+		errors.get(kind).increment();
+	}
+
+	@Override
+	public void onField(Schema.Type type) {
+		fields.get(type).increment();
+	}
+
+	@Override
+	public void onUnionFallback(int attempts) {
+		unionFallbacks.increment();
+		unionFallbackAttempts.add(attempts);
+	}
+
+	/**
+	 * Returns the number of records the operation went through successfully.
+	 */
+	public long count(Operation operation) {
+		return operations.get(operation).records.sum();
+	}
+
+	/**
+	 * Returns the successful records per second of the operation.
+	 */
+	public double recordsPerSecond(Operation operation) {
+		final long elapsed = System.nanoTime() - since;
+		return elapsed <= 0 ? 0d : count(operation) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	public long bytesIn(Operation operation) {
+		return operations.get(operation).bytesIn.sum();
+	}
+
+	public long bytesOut(Operation operation) {
+		return operations.get(operation).bytesOut.sum();
+	}
+
+	/**
+	 * Returns the number of records the operation failed on.
+	 */
+	public long errors(Operation operation) {
+		return operations.get(operation).errors.sum();
+	}
+
+	/**
+	 * Returns the number of failures of the given kind, all operations together.
+	 */
+	public long errors(ErrorKind kind) {
+		return errors.get(kind).sum();
+	}
+
+	/**
+	 * Returns the number of record fields of the given type decoded, see {@link ConversionMetrics#onField(Schema.Type)}.
+	 */
+	public long fields(Schema.Type type) {
+		return fields.get(type).sum();
+	}
+
+	/**
+	 * Returns the number of union values that had to fall back on another branch.
+	 */
+	public long unionFallbacks() {
+		return unionFallbacks.sum();
+	}
+
+	/**
+	 * Returns the number of branch rejections behind the fallbacks, all union values together.
+	 */
+	public long unionFallbackAttempts() {
+		return unionFallbackAttempts.sum();
+	}
+
+	/**
+	 * Returns the mean latency of the successful records of the operation, in nanoseconds, 0 when there is none.
+	 */
+	public double meanLatencyNanos(Operation operation) {
+		final OperationStats stats = operations.get(operation);
+		final long records = stats.records.sum();
+		return records == 0 ? 0d : stats.nanos.sum() / (double) records;
+	}
+
+	/**
+	 * Returns an upper bound of the given latency percentile of the operation, in nanoseconds, 0 when nothing was measured.
+	 *
+	 * @param percentile between 0 and 100
+	 */
+	public long latencyPercentileNanos(Operation operation, double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile must be between 0 and 100, got " + percentile);
+		final AtomicLongArray latencies = operations.get(operation).latencies;
+		long total = 0;
+		for (int i = 0; i < latencies.length(); i++) {
+			total += latencies.get(i);
+		}
+		if (total == 0)
+			return 0;
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < latencies.length(); i++) {
+			seen += latencies.get(i);
+			if (seen >= rank)
+				return upperBound(i);
+		}
+		return upperBound(latencies.length() - 1);
+	}
+
+	/**
+	 * Zeroes all the counters and restarts the rate measurement.
+	 */
+	public void reset() {
+		for (OperationStats stats : operations.values()) {
+			stats.reset();
+		}
+		errors.values().forEach(LongAdder::reset);
+		fields.values().forEach(LongAdder::reset);
+		unionFallbacks.reset();
+		unionFallbackAttempts.reset();
+		since = System.nanoTime();
+	}
+
+	/**
+	 * Bucket <code>i</code> holds the latencies of <code>i</code> significant bits, up to <code>2^i - 1</code> nanoseconds.
+	 */
+	private static int bucket(long nanos) {
+		return 64 - Long.numberOfLeadingZeros(Math.max(0, nanos));
+	}
+
+	private static long upperBound(int bucket) {
+		return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	private static final class OperationStats {
+		final LongAdder records = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder bytesIn = new LongAdder();
+		final LongAdder bytesOut = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final AtomicLongArray latencies = new AtomicLongArray(65);
+
+		void reset() {
+			records.reset();
+			errors.reset();
+			bytesIn.reset();
+			bytesOut.reset();
+			nanos.reset();
+			for (int i = 0; i < latencies.length(); i++) {
+				latencies.set(i, 0);
+			}
+		}
+	}
+}
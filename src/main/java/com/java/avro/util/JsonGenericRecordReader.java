@@ -1,6 +1,7 @@
 package com.java.avro.util;
 
 import static com.java.avro.util.AvroTypeExceptions.enumException;
+import static com.java.avro.util.AvroTypeExceptions.toPublic;
 import static com.java.avro.util.AvroTypeExceptions.typeException;
 import static com.java.avro.util.AvroTypeExceptions.unionException;
 import static java.util.Optional.ofNullable;
@@ -9,6 +10,8 @@ import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.Collections;
@@ -25,10 +28,14 @@ import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.io.Encoder;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.services.bigquery.model.TableRow;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.java.avro.util.ConversionMetrics.Operation;
 
 /**
  * Reads a json string or a map converting in a {@link GenericRecord}. <br>
@@ -40,34 +47,212 @@ import com.google.api.services.bigquery.model.TableRow;
  */
 public class JsonGenericRecordReader {
 
-	private static final Object INCOMPATIBLE = new Object();
+	static final Object INCOMPATIBLE = new Object();
+
+	private static final int PLAN_CACHE_SIZE = 1024;
+	private static final int UNION_CACHE_SIZE = 1024;
 
 	private final ObjectMapper mapper;
+	private final Cache<PlanKey, JsonReaderPlan> plans = CacheBuilder.newBuilder()
+			.maximumSize(PLAN_CACHE_SIZE)
+			.build();
+	private final Cache<Schema, UnionDispatch> unions = CacheBuilder.newBuilder()
+			.maximumSize(UNION_CACHE_SIZE)
+			.build();
 
 	public JsonGenericRecordReader() {
 		this.mapper = new ObjectMapper();
 		mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
 	}
 
+	/**
+	 * Compiles the given record schema into a reusable {@link JsonReaderPlan}. Prefer this over the <code>read(..., Schema)</code> methods when
+	 * many documents are read with the same schema.
+	 * 
+	 * @param schema record schema to compile
+	 * @return the compiled reader plan
+	 */
+	public JsonReaderPlan compile(Schema schema) {
+		return JsonReaderPlan.compile(schema, mapper);
+	}
+
+	/**
+	 * Compiles a reader of the projected fields only, see {@link FieldProjection}: the plan reads records of the projected schema, and the json
+	 * values of the fields projected out are skipped without being parsed into values.
+	 * 
+	 * @param schema record schema to compile
+	 * @param projection fields to read
+	 * @return the compiled reader plan
+	 */
+	public JsonReaderPlan compile(Schema schema, FieldProjection projection) {
+		return JsonReaderPlan.compile(projection.apply(schema), mapper);
+	}
+
 	public GenericData.Record read(String data, Schema schema) {
 		return read(data.getBytes(StandardCharsets.UTF_8), schema);
 	}
 
 	@SuppressWarnings("unchecked")
 	public GenericData.Record read(byte[] data, Schema schema) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		final Map<String, Object> json;
 		try {
-			return read(mapper.readValue(data, Map.class), schema);
+			json = mapper.readValue(data, Map.class);
 		} catch (IOException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
 			throw new AvroRuntimeException("Failed to parse json to map format.", ex);
 		}
+		return read(json, schema, metrics, start, data.length);
+	}
+
+	/**
+	 * Reads the json document overwriting the given record in place, reusing its nested records, arrays and maps where the shape allows, see
+	 * {@link JsonReaderPlan#read(String, GenericData.Record)}. The document is decoded straight from the token stream.
+	 * 
+	 * @param data json input
+	 * @param schema record schema
+	 * @param reuse record to overwrite, a new record is returned when null or of another schema
+	 * @return the converted record, <code>reuse</code> when it could be reused
+	 */
+	public GenericData.Record read(String data, Schema schema, GenericData.Record reuse) {
+		return plan(schema).read(data, reuse);
+	}
+
+	public GenericData.Record read(byte[] data, Schema schema, GenericData.Record reuse) {
+		return plan(schema).read(data, reuse);
+	}
+
+	public GenericData.Record read(InputStream data, Schema schema, GenericData.Record reuse) {
+		return plan(schema).read(data, reuse);
+	}
+
+	/**
+	 * Reads the projected fields of the json document only, see {@link FieldProjection}. The document is decoded straight from the token
+	 * stream: the values of the keys not in the projected schema are skipped without being decoded, so the cost follows the projected width
+	 * rather than the payload size. The record is of the projected schema, {@link JsonReaderPlan#getSchema()} of
+	 * {@link #compile(Schema, FieldProjection)}.
+	 * 
+	 * @param data json input
+	 * @param schema record schema
+	 * @param projection fields to read, {@link FieldProjection#all()} to stream the whole record
+	 * @return the converted record
+	 */
+	public GenericData.Record read(String data, Schema schema, FieldProjection projection) {
+		return plan(schema, projection).read(data);
+	}
+
+	public GenericData.Record read(byte[] data, Schema schema, FieldProjection projection) {
+		return plan(schema, projection).read(data);
+	}
+
+	public GenericData.Record read(InputStream data, Schema schema, FieldProjection projection) {
+		return plan(schema, projection).read(data);
+	}
+
+	/**
+	 * Reads a json document from the stream, decoding tokens straight into the record without building an intermediate map.
+	 * 
+	 * @param data json input, not closed
+	 * @param schema record schema
+	 * @return the converted record
+	 */
+	public GenericData.Record read(InputStream data, Schema schema) {
+		return plan(schema).read(data);
+	}
+
+	/**
+	 * Reads the json documents in bulk: the ones that cannot be converted do not throw, they come back as {@link ConversionError}s with their
+	 * index in the list, the path of the failing field and the kind of error, so that a few bad rows cost neither an exception each nor a
+	 * try/catch per record.
+	 *
+	 * @param documents json inputs
+	 * @param schema record schema
+	 * @return the records of the good documents and the errors of the others, both in the input order
+	 */
+	public BulkReadResult readAll(List<String> documents, Schema schema) {
+		return plan(schema).readAll(documents);
+	}
+
+	/**
+	 * Reads newline-delimited json in bulk, as {@link #readAll(List, Schema)} does, the offset of an error being the byte offset of its line.
+	 *
+	 * @param data ndjson input, not closed
+	 * @param schema record schema
+	 * @return the records of the good lines and the errors of the others, both in the input order
+	 * @throws IOException when the stream fails
+	 */
+	public BulkReadResult readLines(InputStream data, Schema schema) throws IOException {
+		return plan(schema).readLines(data);
+	}
+
+	/**
+	 * Reads the json document between the buffer position and its limit, decoding tokens straight into the record without building an
+	 * intermediate map.
+	 * 
+	 * @param data json input, its position is left untouched
+	 * @param schema record schema
+	 * @return the converted record
+	 */
+	public GenericData.Record read(ByteBuffer data, Schema schema) {
+		return plan(schema).read(data);
+	}
+
+	/**
+	 * Transcodes the json document straight to the Avro binary encoding of the record, without building a {@link GenericData.Record}. The
+	 * conversion rules are the same as {@link #read(String, Schema)}.
+	 * 
+	 * @param data json input
+	 * @param schema record schema
+	 * @return the bytes a {@link org.apache.avro.generic.GenericDatumWriter} would write for the converted record
+	 */
+	public byte[] toBinary(String data, Schema schema) {
+		return plan(schema).toBinary(data);
+	}
+
+	public byte[] toBinary(byte[] data, Schema schema) {
+		return plan(schema).toBinary(data);
+	}
+
+	/**
+	 * Transcodes the json document straight to the Avro binary encoding of the record and writes it to the given binary encoder, in place of
+	 * reading the record and handing it to a {@link org.apache.avro.io.DatumWriter}.
+	 * 
+	 * @param data json input
+	 * @param schema record schema
+	 * @param out binary encoder
+	 * @throws IOException when the encoder fails
+	 */
+	public void write(byte[] data, Schema schema, Encoder out) throws IOException {
+		plan(schema).write(data, 0, data.length, out);
+	}
+
+	private JsonReaderPlan plan(Schema schema) {
+		return plan(schema, FieldProjection.all());
+	}
+
+	private JsonReaderPlan plan(Schema schema, FieldProjection projection) {
+		return Caches.load(plans, new PlanKey(schema, projection),
+				() -> projection.isAll() ? compile(schema) : compile(schema, projection));
 	}
 
 	public GenericData.Record read(Map<String, Object> json, Schema schema) {
+		final ConversionMetrics metrics = Metrics.installed;
+		return read(json, schema, metrics, Metrics.start(metrics), 0);
+	}
+
+	private GenericData.Record read(Map<String, Object> json, Schema schema, ConversionMetrics metrics, long start, long bytesIn) {
 		Deque<String> path = new ArrayDeque<>();
 		try {
-			return readRecord(json, schema, path);
+			GenericData.Record record = readRecord(json, schema, path);
+			Metrics.succeeded(metrics, Operation.JSON_READ, start, bytesIn, 0);
+			return record;
 		} catch (AvroRuntimeException ex) {
-			throw new AvroRuntimeException("Failed to convert JSON to Avro", ex);
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw new AvroRuntimeException("Failed to convert JSON to Avro", toPublic(ex));
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw ex;
 		}
 	}
 
@@ -87,8 +272,13 @@ public class JsonGenericRecordReader {
 
 	private GenericData.Record readRecord(Map<String, Object> json, Schema schema, Deque<String> path) {
 		GenericRecordBuilder record = new GenericRecordBuilder(schema);
+		ConversionMetrics metrics = Metrics.installed;
 		json.entrySet().forEach(entry -> ofNullable(schema.getField(entry.getKey()))
-				.ifPresent(field -> record.set(field, read(field, field.schema(), entry.getValue(), path, false))));
+				.ifPresent(field -> {
+					record.set(field, read(field, field.schema(), entry.getValue(), path, false));
+					if (metrics != ConversionMetrics.NOOP)
+						metrics.onField(Metrics.fieldType(field.schema()));
+				}));
 		try {
 			return record.build();
 		} catch (AvroRuntimeException e) {
@@ -120,10 +310,12 @@ public class JsonGenericRecordReader {
 			result = readUnion(field, schema, value, path);
 			break;
 		case INT:
-			result = onValidNumber(value, path, silently, Number::intValue, Integer::parseInt);
+			result = LogicalTypeFormats.Kind.of(schema) != null ? JsonReaderPlan.readLogical(schema, value, path, silently)
+					: onValidNumber(value, path, silently, Number::intValue, Integer::parseInt);
 			break;
 		case LONG:
-			result = onValidNumber(value, path, silently, Number::longValue, Long::parseLong);
+			result = LogicalTypeFormats.Kind.of(schema) != null ? JsonReaderPlan.readLogical(schema, value, path, silently)
+					: onValidNumber(value, path, silently, Number::longValue, Long::parseLong);
 			break;
 		case FLOAT:
 			result = onValidNumber(value, path, silently, Number::floatValue, Float::parseFloat);
@@ -143,6 +335,12 @@ public class JsonGenericRecordReader {
 		case NULL:
 			result = value == null ? value : INCOMPATIBLE;
 			break;
+		case BYTES:
+			// only NUMERIC decimals, plain bytes have no json form here
+			if (LogicalTypeFormats.Kind.of(schema) == null)
+				throw new AvroTypeException("Unsupported type: " + schema.getType());
+			result = JsonReaderPlan.readLogical(schema, value, path, silently);
+			break;
 		default:
 			throw new AvroTypeException("Unsupported type: " + field.schema().getType());
 		}
@@ -165,24 +363,40 @@ public class JsonGenericRecordReader {
 	}
 
 	private Object readUnion(Schema.Field field, Schema schema, Object value, Deque<String> path) {
-		List<Schema> types = schema.getTypes();
-		for (Schema type : types) {
-			try {
-				Object nestedValue = read(field, type, value, path, true);
-				if (nestedValue == INCOMPATIBLE) {
-					continue;
-				} else {
+		UnionDispatch dispatch = Caches.load(unions, schema, () -> UnionDispatch.of(schema));
+		UnionDispatch.Kind kind = UnionDispatch.Kind.of(value);
+		int preferred = dispatch.preferred(kind, value);
+		// branches that rejected the value, reported when the union had to fall back on others
+		int rejected = 0;
+		if (preferred >= 0) {
+			Object nestedValue = readBranch(field, dispatch.type(preferred), value, path);
+			if (nestedValue != INCOMPATIBLE)
+				return nestedValue;
+			rejected++;
+		}
+		for (int branch : dispatch.candidates(kind)) {
+			if (branch != preferred && dispatch.accepts(branch, value)) {
+				Object nestedValue = readBranch(field, dispatch.type(branch), value, path);
+				if (nestedValue != INCOMPATIBLE) {
+					if (rejected > 0)
+						Metrics.installed.onUnionFallback(rejected);
 					return nestedValue;
 				}
-			} catch (AvroRuntimeException e) {
-				// thrown only for union of more complex types like records
-				continue;
+				rejected++;
 			}
 		}
-		throw unionException(
-				field.name(),
-				types.stream().map(Schema::getType).map(Object::toString).collect(joining(", ")),
-				path);
+		if (rejected > 0)
+			Metrics.installed.onUnionFallback(rejected);
+		throw unionException(field.name(), dispatch.expectedTypes(), path);
+	}
+
+	private Object readBranch(Schema.Field field, Schema type, Object value, Deque<String> path) {
+		try {
+			return read(field, type, value, path, true);
+		} catch (AvroRuntimeException | NumberFormatException e) {
+			// the value looked compatible but a nested field or the number format is not
+			return INCOMPATIBLE;
+		}
 	}
 
 	private Object ensureEnum(Schema schema, Object value, Deque<String> path) {
@@ -214,4 +428,30 @@ public class JsonGenericRecordReader {
 		return onValidType(value, Number.class, path, silently, function);
 	}
 
+	/**
+	 * Cache key of a compiled plan, the projection being {@link FieldProjection#all()} for the plans of whole records.
+	 */
+	private static final class PlanKey {
+		private final Schema schema;
+		private final FieldProjection projection;
+
+		PlanKey(Schema schema, FieldProjection projection) {
+			this.schema = schema;
+			this.projection = projection;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * schema.hashCode() + projection.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PlanKey))
+				return false;
+			PlanKey other = (PlanKey) obj;
+			return schema.equals(other.schema) && projection.equals(other.projection);
+		}
+	}
+
 }
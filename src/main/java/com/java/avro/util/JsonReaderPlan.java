@@ -0,0 +1,1558 @@
+package com.java.avro.util;
+
+import static com.java.avro.util.AvroTypeExceptions.enumException;
+import static com.java.avro.util.AvroTypeExceptions.toPublic;
+import static com.java.avro.util.AvroTypeExceptions.typeException;
+import static com.java.avro.util.AvroTypeExceptions.unionException;
+import static com.java.avro.util.JsonGenericRecordReader.INCOMPATIBLE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.java.avro.util.ConversionMetrics.Operation;
+
+/**
+ * Reusable, schema-specialized reader built by {@link JsonGenericRecordReader#compile(Schema)}. <br>
+ * The schema is walked once: field positions, enum symbols, union branches and number coercions are resolved up front, so reading a record
+ * only fills {@link GenericData.Record} slots by index. The conversion rules are the same as {@link JsonGenericRecordReader#read(Map, Schema)}.
+ * <br>
+ * Raw json input (<code>String</code>, <code>byte[]</code>, {@link InputStream}, {@link ByteBuffer}) is decoded straight from the Jackson token
+ * stream: no intermediate map is built and keys not in the schema are skipped. Only a union value that more than one branch could accept is
+ * materialized before being resolved.
+ * <br>
+ * Values of the avro logical types of {@link LogicalTypeFormats} are taken as numbers, or parsed from their Bigquery text: a DATE string
+ * becomes the <code>int</code> of a <code>date</code>, a NUMERIC the bytes of a <code>decimal</code>.
+ * <br>
+ * The <code>toBinary</code> and <code>write</code> methods go one step further and transcode the json straight to the Avro binary encoding of
+ * the record, the bytes a {@link GenericDatumWriter} would write for {@link #read(byte[])}, without building the record at all.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> a plan is immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class JsonReaderPlan {
+
+	private static final ThreadLocal<BinaryBuffer> BUFFERS = ThreadLocal.withInitial(BinaryBuffer::new);
+	private static final int LINES_CHUNK_SIZE = 1 << 16;
+
+	private final Schema schema;
+	private final RecordReader root;
+	private final ObjectMapper mapper;
+
+	private JsonReaderPlan(Schema schema, ObjectMapper mapper) {
+		this.schema = schema;
+		this.mapper = mapper;
+		this.root = new Compiler(mapper).record(schema);
+	}
+
+	static JsonReaderPlan compile(Schema schema, ObjectMapper mapper) {
+		if (schema.getType() != Type.RECORD)
+			throw new AvroTypeException("Only record schemas can be compiled, got: " + schema.getType());
+		return new JsonReaderPlan(schema, mapper);
+	}
+
+	public Schema getSchema() {
+		return schema;
+	}
+
+	public GenericData.Record read(String data) {
+		return read(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public GenericData.Record read(byte[] data) {
+		return read(data, 0, data.length);
+	}
+
+	public GenericData.Record read(byte[] data, int offset, int length) {
+		return read(data, offset, length, null);
+	}
+
+	/**
+	 * Reads the json document overwriting the given record in place, as {@link org.apache.avro.io.DatumReader#read(Object,
+	 * org.apache.avro.io.Decoder)} does: nested records and arrays of the same schema are reused down the graph and maps are cleared and
+	 * refilled, so a single-threaded loop reading into the same record allocates little more than the decoded values. The reused graph must not
+	 * be shared with records still in use.
+	 * 
+	 * @param reuse record to overwrite, a new record is returned when null or of another schema
+	 * @return the converted record, <code>reuse</code> when it could be reused
+	 */
+	public GenericData.Record read(String data, GenericData.Record reuse) {
+		return read(data.getBytes(StandardCharsets.UTF_8), reuse);
+	}
+
+	public GenericData.Record read(byte[] data, GenericData.Record reuse) {
+		return read(data, 0, data.length, reuse);
+	}
+
+	public GenericData.Record read(byte[] data, int offset, int length, GenericData.Record reuse) {
+		try (JsonParser parser = mapper.getFactory().createParser(data, offset, length)) {
+			return read(parser, reuse);
+		} catch (IOException ex) {
+			throw new AvroRuntimeException("Failed to parse json.", ex);
+		}
+	}
+
+	/**
+	 * Reads a single json document from the stream. The stream is not closed.
+	 */
+	public GenericData.Record read(InputStream data) {
+		return read(data, null);
+	}
+
+	public GenericData.Record read(InputStream data, GenericData.Record reuse) {
+		try (JsonParser parser = mapper.getFactory().createParser(data)) {
+			return read(parser, reuse);
+		} catch (IOException ex) {
+			throw new AvroRuntimeException("Failed to parse json.", ex);
+		}
+	}
+
+	/**
+	 * Reads the json document between the buffer position and its limit. The buffer position is left untouched.
+	 */
+	public GenericData.Record read(ByteBuffer data) {
+		if (data.hasArray())
+			return read(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		return read(new ByteBufferInputStream(data.duplicate()));
+	}
+
+	/**
+	 * Reads the next json object from the given parser, which is left on the closing token of the object.
+	 * 
+	 * @param parser parser positioned before or on the object start token
+	 * @return the converted record
+	 * @throws IOException on malformed json
+	 */
+	public GenericData.Record read(JsonParser parser) throws IOException {
+		return read(parser, null);
+	}
+
+	/**
+	 * Reads the next json object from the given parser overwriting the given record in place, see {@link #read(String, GenericData.Record)}.
+	 */
+	public GenericData.Record read(JsonParser parser, GenericData.Record reuse) throws IOException {
+		startObject(parser);
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		Deque<String> path = new ArrayDeque<>();
+		try {
+			return readRecord(parser, reuse, path, metrics, start);
+		} catch (AvroRuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw new AvroRuntimeException("Failed to convert JSON to Avro", toPublic(ex));
+		} catch (IOException | RuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads a json document with no other error handling than the metrics, failures escape with the path of the failing field left in
+	 * <code>path</code>.
+	 */
+	private GenericData.Record readRecord(JsonParser parser, GenericData.Record reuse, Deque<String> path, ConversionMetrics metrics, long start)
+			throws IOException {
+		final long offset = Metrics.tokenOffset(metrics, parser);
+		GenericData.Record record = root.readRecord(parser, reuse != null && schema.equals(reuse.getSchema()) ? reuse : null, path);
+		Metrics.succeeded(metrics, Operation.JSON_READ, start, Metrics.bytesRead(metrics, parser, offset), 0);
+		return record;
+	}
+
+	/**
+	 * Reads the json documents, collecting the failing ones as {@link ConversionError}s instead of throwing: the offset of an error is the
+	 * index of its document in the list.
+	 */
+	public BulkReadResult readAll(List<String> documents) {
+		final List<GenericData.Record> records = new ArrayList<>(documents.size());
+		final List<ConversionError> errors = new ArrayList<>();
+		for (int i = 0; i < documents.size(); i++) {
+			final byte[] data = documents.get(i).getBytes(StandardCharsets.UTF_8);
+			final GenericData.Record record = tryRead(data, 0, data.length, i, errors);
+			if (record != null)
+				records.add(record);
+		}
+		return new BulkReadResult(records, errors);
+	}
+
+	/**
+	 * Reads newline-delimited json, one document per line, collecting the failing lines as {@link ConversionError}s instead of throwing: the
+	 * offset of an error is the byte offset of its line. Blank lines are skipped. The stream is not closed.
+	 *
+	 * @throws IOException when the stream fails
+	 */
+	public BulkReadResult readLines(InputStream data) throws IOException {
+		final List<GenericData.Record> records = new ArrayList<>();
+		final List<ConversionError> errors = new ArrayList<>();
+		final NdJsonBulkReader.ChunkSplitter splitter = new NdJsonBulkReader.ChunkSplitter(data, LINES_CHUNK_SIZE);
+		NdJsonBulkReader.Chunk chunk;
+		while ((chunk = splitter.next()) != null) {
+			final BulkReadResult result = chunk.parseTolerant(this);
+			records.addAll(result.getRecords());
+			errors.addAll(result.getErrors());
+		}
+		return new BulkReadResult(records, errors);
+	}
+
+	/**
+	 * Reads a json document, returning null and adding an error instead of throwing when it fails.
+	 *
+	 * @param inputOffset offset of the document reported with its error
+	 */
+	GenericData.Record tryRead(byte[] data, int offset, int length, long inputOffset, List<ConversionError> errors) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		Deque<String> path = new ArrayDeque<>();
+		try (JsonParser parser = mapper.getFactory().createParser(data, offset, length)) {
+			startObject(parser);
+			return readRecord(parser, null, path, metrics, start);
+		} catch (IOException | RuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			errors.add(new ConversionError(inputOffset, path, ex));
+			return null;
+		}
+	}
+
+	public GenericData.Record read(Map<String, Object> json) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		Deque<String> path = new ArrayDeque<>();
+		try {
+			GenericData.Record record = root.readRecord(json, path);
+			Metrics.succeeded(metrics, Operation.JSON_READ, start, 0, 0);
+			return record;
+		} catch (AvroRuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw new AvroRuntimeException("Failed to convert JSON to Avro", toPublic(ex));
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_READ, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Transcodes the json document to the Avro binary encoding of the record, without building it.
+	 */
+	public byte[] toBinary(String data) {
+		return toBinary(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public byte[] toBinary(byte[] data) {
+		return toBinary(data, 0, data.length);
+	}
+
+	public byte[] toBinary(byte[] data, int offset, int length) {
+		return transcode(data, offset, length).toByteArray();
+	}
+
+	/**
+	 * Transcodes the json document to the Avro binary encoding of the record and writes it to the given binary encoder, as
+	 * {@link GenericDatumWriter#write(Object, Encoder)} would.
+	 */
+	public void write(byte[] data, int offset, int length, Encoder out) throws IOException {
+		transcode(data, offset, length).writeTo(out);
+	}
+
+	/**
+	 * Transcodes the json document to the Avro binary encoding of the record and puts it into the target buffer.
+	 * 
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException when the record does not fit the remaining space, nothing is written then
+	 */
+	public int write(byte[] data, int offset, int length, ByteBuffer target) {
+		BinaryBuffer buffer = transcode(data, offset, length);
+		if (buffer.size() > target.remaining())
+			throw new BufferOverflowException();
+		buffer.writeTo(target);
+		return buffer.size();
+	}
+
+	/**
+	 * Transcodes the next json object from the given parser, which is left on the closing token of the object, to the Avro binary encoding of
+	 * the record and writes it to the given binary encoder.
+	 * 
+	 * @param parser parser positioned before or on the object start token
+	 * @param out binary encoder
+	 * @throws IOException on malformed json or when the encoder fails
+	 */
+	public void write(JsonParser parser, Encoder out) throws IOException {
+		BinaryBuffer buffer = buffer();
+		write(parser, buffer);
+		buffer.writeTo(out);
+	}
+
+	private BinaryBuffer transcode(byte[] data, int offset, int length) {
+		BinaryBuffer buffer = buffer();
+		try (JsonParser parser = mapper.getFactory().createParser(data, offset, length)) {
+			write(parser, buffer);
+		} catch (IOException ex) {
+			throw new AvroRuntimeException("Failed to parse json.", ex);
+		}
+		return buffer;
+	}
+
+	private void write(JsonParser parser, BinaryBuffer out) throws IOException {
+		startObject(parser);
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		final long offset = Metrics.tokenOffset(metrics, parser);
+		final int written = out.size();
+		Deque<String> path = new ArrayDeque<>();
+		try {
+			root.write(parser, out, path);
+			Metrics.succeeded(metrics, Operation.JSON_TO_BINARY, start, Metrics.bytesRead(metrics, parser, offset), out.size() - written);
+		} catch (AvroRuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_TO_BINARY, ex);
+			throw new AvroRuntimeException("Failed to convert JSON to Avro", toPublic(ex));
+		} catch (IOException | RuntimeException ex) {
+			Metrics.failed(metrics, Operation.JSON_TO_BINARY, ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Moves the parser to the start of the next object if it is not there yet.
+	 */
+	private static void startObject(JsonParser parser) throws IOException {
+		JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+		if (token != JsonToken.START_OBJECT)
+			throw new AvroRuntimeException("Failed to parse json: expected an object, got " + token);
+	}
+
+	/**
+	 * Returns the emptied buffer of the calling thread, the binary encoding of a record is staged there before being copied out.
+	 */
+	private static BinaryBuffer buffer() {
+		BinaryBuffer buffer = BUFFERS.get();
+		buffer.reset(0);
+		return buffer;
+	}
+
+	/**
+	 * Builds the reader tree. Record readers are memoized by schema identity so that recursive schemas compile to a cyclic graph.
+	 */
+	private static final class Compiler {
+		private final Map<Schema, RecordReader> records = new IdentityHashMap<>();
+		private final ObjectMapper mapper;
+
+		Compiler(ObjectMapper mapper) {
+			this.mapper = mapper;
+		}
+
+		RecordReader record(Schema schema) {
+			RecordReader reader = records.get(schema);
+			if (reader == null) {
+				reader = new RecordReader(schema);
+				records.put(schema, reader);
+				reader.init(this);
+			}
+			return reader;
+		}
+
+		ValueReader value(Field field, Schema schema) {
+			final LogicalTypeFormats.Kind logical = LogicalTypeFormats.Kind.of(schema);
+			if (logical != null)
+				return logical(logical, schema);
+			switch (schema.getType()) {
+			case RECORD:
+				return new RecordValueReader(record(schema));
+			case ARRAY:
+				ValueReader element = value(field, schema.getElementType());
+				if (element instanceof NumberReader)
+					return new NumberArrayReader(schema, (NumberReader) element);
+				return new ArrayReader(schema, element);
+			case MAP:
+				return new MapReader(value(field, schema.getValueType()));
+			case UNION:
+				return new UnionReader(field, schema, this, mapper);
+			case INT:
+				return NumberReader.INT;
+			case LONG:
+				return NumberReader.LONG;
+			case FLOAT:
+				return NumberReader.FLOAT;
+			case DOUBLE:
+				return NumberReader.DOUBLE;
+			case BOOLEAN:
+				return TypedReader.BOOLEAN;
+			case ENUM:
+				return new EnumReader(schema);
+			case STRING:
+				return TypedReader.STRING;
+			case NULL:
+				return NullReader.INSTANCE;
+			default:
+				throw new AvroTypeException("Unsupported type: " + schema.getType());
+			}
+		}
+	}
+
+	/**
+	 * Converts a single json value, either already materialized or from the parser current token. Implementations return
+	 * {@link JsonGenericRecordReader#INCOMPATIBLE} instead of throwing when <code>silently</code> is set, which is how union branches are
+	 * rejected. The streaming variants leave the parser on the last token of the value.
+	 */
+	private interface ValueReader {
+		Object read(Object value, Deque<String> path, boolean silently);
+
+		Object read(JsonParser parser, Deque<String> path) throws IOException;
+
+		/**
+		 * Streaming read overwriting the previous value in place when its shape allows, see {@link JsonReaderPlan#read(JsonParser,
+		 * GenericData.Record)}. Immutable values are never reused.
+		 */
+		default Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			return read(parser, path);
+		}
+
+		/**
+		 * Writes the Avro binary encoding of the value at the parser current token, following the same rules as the streaming read.
+		 */
+		void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException;
+	}
+
+	/**
+	 * Reads an already parsed json value of a schema with a logical type, as the compiled plan does, see {@link LogicalTypeFormats.Kind#of(Schema)}.
+	 */
+	static Object readLogical(Schema schema, Object value, Deque<String> path, boolean silently) {
+		return logical(LogicalTypeFormats.Kind.of(schema), schema).read(value, path, silently);
+	}
+
+	private static ValueReader logical(LogicalTypeFormats.Kind logical, Schema schema) {
+		return logical == LogicalTypeFormats.Kind.DECIMAL ? new DecimalReader(LogicalTypeFormats.scale(schema)) : TemporalReader.valueOf(logical.name());
+	}
+
+	private static final class FieldSlot {
+		final Field field;
+		final String name;
+		final int pos;
+		final ValueReader reader;
+		final boolean hasDefault;
+		final boolean nullable;
+		final Type type;
+		// binary encoding of missing(), computed on first use: a benign race at worst encodes it twice
+		private volatile byte[] missingBinary;
+
+		FieldSlot(Field field, ValueReader reader) {
+			this.field = field;
+			this.name = field.name();
+			this.pos = field.pos();
+			this.reader = reader;
+			this.hasDefault = field.defaultVal() != null;
+			this.nullable = isNullableUnion(field.schema());
+			this.type = Metrics.fieldType(field.schema());
+		}
+
+		Object read(Object value, Deque<String> path) {
+			boolean pushed = !name.equals(path.peek());
+			if (pushed) {
+				path.push(name);
+			}
+			Object result = reader.read(value, path, false);
+			if (pushed) {
+				path.pop();
+			}
+			return result;
+		}
+
+		Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			boolean pushed = !name.equals(path.peek());
+			if (pushed) {
+				path.push(name);
+			}
+			Object result = reader.read(parser, reuse, path);
+			if (pushed) {
+				path.pop();
+			}
+			return result;
+		}
+
+		void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			boolean pushed = !name.equals(path.peek());
+			if (pushed) {
+				path.push(name);
+			}
+			reader.write(parser, out, path);
+			if (pushed) {
+				path.pop();
+			}
+		}
+
+		/**
+		 * Same fallback as the builder used by {@link JsonGenericRecordReader}: schema default first, then null for nullable unions.
+		 */
+		Object missing() {
+			if (hasDefault)
+				return GenericData.get().deepCopy(field.schema(), GenericData.get().getDefaultValue(field));
+			if (nullable)
+				return null;
+			throw new AvroRuntimeException("Field " + field + " not set and has no default value");
+		}
+
+		void writeMissing(BinaryBuffer out) {
+			byte[] binary = missingBinary;
+			if (binary == null) {
+				BinaryBuffer buffer = new BinaryBuffer(16);
+				try {
+					new GenericDatumWriter<Object>(field.schema()).write(missing(), buffer.encoder());
+				} catch (IOException e) {
+					throw new AvroRuntimeException(e);
+				}
+				binary = missingBinary = buffer.toByteArray();
+			}
+			out.write(binary, 0, binary.length);
+		}
+
+		private static boolean isNullableUnion(Schema schema) {
+			return schema.getType() == Type.UNION && schema.getTypes().stream().anyMatch(s -> s.getType() == Type.NULL);
+		}
+	}
+
+	private static final class RecordReader {
+		private final Schema schema;
+		private FieldSlot[] slots;
+		private Map<String, FieldSlot> byName;
+
+		RecordReader(Schema schema) {
+			this.schema = schema;
+		}
+
+		void init(Compiler compiler) {
+			List<Field> fields = schema.getFields();
+			slots = new FieldSlot[fields.size()];
+			byName = new HashMap<>(fields.size() * 2);
+			for (Field field : fields) {
+				FieldSlot slot = new FieldSlot(field, compiler.value(field, field.schema()));
+				slots[field.pos()] = slot;
+				byName.put(field.name(), slot);
+			}
+		}
+
+		GenericData.Record readRecord(Map<String, Object> json, Deque<String> path) {
+			GenericData.Record record = new GenericData.Record(schema);
+			boolean[] seen = new boolean[slots.length];
+			ConversionMetrics metrics = Metrics.installed;
+			for (Map.Entry<String, Object> entry : json.entrySet()) {
+				FieldSlot slot = byName.get(entry.getKey());
+				if (slot != null) {
+					record.put(slot.pos, slot.read(entry.getValue(), path));
+					seen[slot.pos] = true;
+					if (metrics != ConversionMetrics.NOOP)
+						metrics.onField(slot.type);
+				}
+			}
+			return complete(record, seen);
+		}
+
+		/**
+		 * @param reuse record of this schema to overwrite, or null
+		 */
+		GenericData.Record readRecord(JsonParser parser, GenericData.Record reuse, Deque<String> path) throws IOException {
+			GenericData.Record record = reuse != null ? reuse : new GenericData.Record(schema);
+			boolean[] seen = new boolean[slots.length];
+			ConversionMetrics metrics = Metrics.installed;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				FieldSlot slot = byName.get(parser.getCurrentName());
+				parser.nextToken();
+				if (slot != null) {
+					record.put(slot.pos, slot.read(parser, reuse == null ? null : record.get(slot.pos), path));
+					seen[slot.pos] = true;
+					if (metrics != ConversionMetrics.NOOP)
+						metrics.onField(slot.type);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return complete(record, seen);
+		}
+
+		/**
+		 * Writes the fields as they come while the json keys follow the schema order. From the first key out of order on, the remaining fields
+		 * are written as they come too, then moved in place once the object is over. A repeated key overwrites the earlier value, as
+		 * {@link #readRecord(JsonParser, GenericData.Record, Deque)} does: the bounds of the fields written in order are only recovered, by
+		 * skipping their binary, when one of them is repeated.
+		 */
+		void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			final int begin = out.size();
+			int next = 0;
+			int orderedEnd = -1;
+			int[] bounds = null;
+			boolean split = false;
+			ConversionMetrics metrics = Metrics.installed;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				FieldSlot slot = byName.get(parser.getCurrentName());
+				parser.nextToken();
+				if (slot == null) {
+					parser.skipChildren();
+					continue;
+				}
+				if (metrics != ConversionMetrics.NOOP)
+					metrics.onField(slot.type);
+				if (bounds == null && slot.pos == next) {
+					slot.write(parser, out, path);
+					next++;
+					continue;
+				}
+				if (bounds == null) {
+					bounds = new int[2 * slots.length];
+					Arrays.fill(bounds, -1);
+					orderedEnd = out.size();
+				}
+				if (slot.pos < next && !split) {
+					split(out, begin, orderedEnd, next, bounds);
+					split = true;
+				}
+				bounds[2 * slot.pos] = out.size();
+				slot.write(parser, out, path);
+				bounds[2 * slot.pos + 1] = out.size();
+			}
+			if (bounds == null) {
+				for (int pos = next; pos < slots.length; pos++) {
+					slots[pos].writeMissing(out);
+				}
+				return;
+			}
+			// the fields written in order stay where they are unless one of them was repeated
+			final int from = split ? begin : orderedEnd;
+			byte[] written = out.copyOfRange(from, out.size());
+			out.reset(from);
+			for (int pos = split ? 0 : next; pos < slots.length; pos++) {
+				int start = bounds[2 * pos];
+				if (start < 0)
+					slots[pos].writeMissing(out);
+				else
+					out.write(written, start - from, bounds[2 * pos + 1] - start);
+			}
+		}
+
+		/**
+		 * Recovers the bounds of the fields written in order, from <code>begin</code> to <code>end</code>, by skipping their binary.
+		 */
+		private void split(BinaryBuffer out, int begin, int end, int count, int[] bounds) throws IOException {
+			final BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(out.copyOfRange(begin, end), null);
+			final InputStream remaining = decoder.inputStream();
+			int start = begin;
+			for (int pos = 0; pos < count; pos++) {
+				GenericDatumReader.skip(slots[pos].field.schema(), decoder);
+				bounds[2 * pos] = start;
+				start = end - remaining.available();
+				bounds[2 * pos + 1] = start;
+			}
+		}
+
+		private GenericData.Record complete(GenericData.Record record, boolean[] seen) {
+			for (FieldSlot slot : slots) {
+				if (!seen[slot.pos])
+					record.put(slot.pos, slot.missing());
+			}
+			return record;
+		}
+	}
+
+	private static final class RecordValueReader implements ValueReader {
+		private final RecordReader record;
+
+		RecordValueReader(RecordReader record) {
+			this.record = record;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (value instanceof Map)
+				return record.readRecord((Map<String, Object>) value, path);
+			return mismatch(path, silently, Map.class);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			return read(parser, null, path);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+				throw typeException(path, Map.class.getTypeName());
+			// records from this plan share the schema instance
+			boolean reusable = reuse instanceof GenericData.Record && ((GenericData.Record) reuse).getSchema() == record.schema;
+			return record.readRecord(parser, reusable ? (GenericData.Record) reuse : null, path);
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+				throw typeException(path, Map.class.getTypeName());
+			record.write(parser, out, path);
+		}
+	}
+
+	private static class ArrayReader implements ValueReader {
+		final Schema schema;
+		private final ValueReader element;
+
+		ArrayReader(Schema schema, ValueReader element) {
+			this.schema = schema;
+			this.element = element;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (value == null)
+				value = Collections.emptyList();
+			if (!(value instanceof List))
+				return mismatch(path, silently, List.class);
+			List<?> items = (List<?>) value;
+			GenericData.Array<Object> array = new GenericData.Array<>(items.size(), schema);
+			for (Object item : items) {
+				array.add(element.read(item, path, false));
+			}
+			return array;
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			return read(parser, null, path);
+		}
+
+		/**
+		 * A reused array is cleared, its former elements are handed back through {@link GenericData.Array#peek()} as
+		 * {@link org.apache.avro.generic.GenericDatumReader} does.
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			JsonToken token = parser.getCurrentToken();
+			if (token != JsonToken.VALUE_NULL && token != JsonToken.START_ARRAY)
+				throw typeException(path, List.class.getTypeName());
+			GenericData.Array<Object> array;
+			if (reuse instanceof GenericData.Array && ((GenericData.Array<Object>) reuse).getSchema() == schema) {
+				array = (GenericData.Array<Object>) reuse;
+				array.clear();
+			} else {
+				array = new GenericData.Array<>(token == JsonToken.VALUE_NULL ? 0 : 10, schema);
+			}
+			if (token == JsonToken.VALUE_NULL)
+				return array;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				array.add(element.read(parser, array.peek(), path));
+			}
+			return array;
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			JsonToken token = parser.getCurrentToken();
+			if (token != JsonToken.VALUE_NULL) {
+				if (token != JsonToken.START_ARRAY)
+					throw typeException(path, List.class.getTypeName());
+				int start = out.size();
+				long items = 0;
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					element.write(parser, out, path);
+					items++;
+				}
+				// a single block, its count is only known now
+				if (items > 0)
+					out.insertLong(start, items);
+			}
+			out.writeLong(0);
+		}
+	}
+
+	/**
+	 * Arrays of numbers, decoded into a {@link PrimitiveArray} without boxing the elements. The conversion rules are the ones of
+	 * {@link NumberReader}, the binary transcoding is inherited.
+	 */
+	private static final class NumberArrayReader extends ArrayReader {
+		private final NumberReader number;
+
+		NumberArrayReader(Schema schema, NumberReader number) {
+			super(schema, number);
+			this.number = number;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (value == null)
+				value = Collections.emptyList();
+			if (!(value instanceof List))
+				return mismatch(path, silently, List.class);
+			List<?> items = (List<?>) value;
+			PrimitiveArray<?> array = PrimitiveArray.of(schema, items.size());
+			for (Object item : items) {
+				if (item instanceof Number)
+					array.addNumber((Number) item);
+				else if (item instanceof String)
+					array.addNumber(number.parse((String) item));
+				else
+					mismatch(path, false, Number.class);
+			}
+			return array;
+		}
+
+		@Override
+		public Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			JsonToken token = parser.getCurrentToken();
+			if (token != JsonToken.VALUE_NULL && token != JsonToken.START_ARRAY)
+				throw typeException(path, List.class.getTypeName());
+			PrimitiveArray<?> array;
+			if (reuse instanceof PrimitiveArray && ((PrimitiveArray<?>) reuse).getSchema() == schema) {
+				array = (PrimitiveArray<?>) reuse;
+				array.clear();
+			} else {
+				array = PrimitiveArray.of(schema, token == JsonToken.VALUE_NULL ? 0 : -1);
+			}
+			if (token == JsonToken.VALUE_NULL)
+				return array;
+			while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+				switch (token) {
+				case VALUE_NUMBER_INT:
+					if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER)
+						array.addNumber(parser.getNumberValue());
+					else
+						array.addLong(parser.getLongValue());
+					break;
+				case VALUE_NUMBER_FLOAT:
+					array.addDouble(parser.getDoubleValue());
+					break;
+				case VALUE_STRING:
+					array.addNumber(number.parse(parser.getText()));
+					break;
+				default:
+					throw typeException(path, Number.class.getTypeName());
+				}
+			}
+			return array;
+		}
+	}
+
+	private static final class MapReader implements ValueReader {
+		private final ValueReader values;
+
+		MapReader(ValueReader values) {
+			this.values = values;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (!(value instanceof Map))
+				return mismatch(path, silently, Map.class);
+			Map<?, ?> json = (Map<?, ?>) value;
+			Map<Object, Object> map = new HashMap<>(json.size() * 2);
+			for (Map.Entry<?, ?> entry : json.entrySet()) {
+				map.put(entry.getKey(), values.read(entry.getValue(), path, false));
+			}
+			return map;
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			return read(parser, null, path);
+		}
+
+		/**
+		 * A reused map is cleared and refilled, its former values are not reused.
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+				throw typeException(path, Map.class.getTypeName());
+			Map<Object, Object> map;
+			if (reuse instanceof HashMap) {
+				map = (Map<Object, Object>) reuse;
+				map.clear();
+			} else {
+				map = new HashMap<>();
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String key = parser.getCurrentName();
+				parser.nextToken();
+				map.put(key, values.read(parser, path));
+			}
+			return map;
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.START_OBJECT)
+				throw typeException(path, Map.class.getTypeName());
+			int start = out.size();
+			long entries = 0;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				out.writeString(parser.getCurrentName());
+				parser.nextToken();
+				values.write(parser, out, path);
+				entries++;
+			}
+			if (entries > 0)
+				out.insertLong(start, entries);
+			out.writeLong(0);
+		}
+	}
+
+	private static final class UnionReader implements ValueReader {
+		private final String fieldName;
+		private final UnionDispatch dispatch;
+		private final ValueReader[] branches;
+		private final ObjectMapper mapper;
+		private final GenericDatumWriter<Object> writer;
+		// index of the only branch able to take a json object or array, streamed without materializing the value, or -1
+		private final int objectBranch;
+		private final int arrayBranch;
+
+		UnionReader(Field field, Schema schema, Compiler compiler, ObjectMapper mapper) {
+			List<Schema> types = schema.getTypes();
+			this.fieldName = field.name();
+			this.dispatch = UnionDispatch.of(schema);
+			this.mapper = mapper;
+			this.writer = new GenericDatumWriter<>(schema);
+			this.branches = new ValueReader[types.size()];
+			int objectBranch = -1, arrayBranch = -1;
+			int objectBranches = 0, arrayBranches = 0;
+			for (int i = 0; i < branches.length; i++) {
+				Type type = types.get(i).getType();
+				branches[i] = compiler.value(field, types.get(i));
+				if (type == Type.RECORD || type == Type.MAP) {
+					objectBranch = i;
+					objectBranches++;
+				} else if (type == Type.ARRAY) {
+					arrayBranch = i;
+					arrayBranches++;
+				}
+			}
+			this.objectBranch = objectBranches == 1 ? objectBranch : -1;
+			this.arrayBranch = arrayBranches == 1 ? arrayBranch : -1;
+		}
+
+		private int streamedBranch(JsonToken token) {
+			return token == JsonToken.START_OBJECT ? objectBranch : token == JsonToken.START_ARRAY ? arrayBranch : -1;
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			return read(parser, null, path);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Object reuse, Deque<String> path) throws IOException {
+			int branch = streamedBranch(parser.getCurrentToken());
+			if (branch < 0)
+				return read(materialize(parser, mapper), path, false);
+			try {
+				return branches[branch].read(parser, reuse, path);
+			} catch (AvroRuntimeException e) {
+				// no other branch accepts this kind of value
+				throw unionException(fieldName, dispatch.expectedTypes(), path);
+			}
+		}
+
+		/**
+		 * Scalars and ambiguous values are resolved on their materialized form, then written with their branch index by a
+		 * {@link GenericDatumWriter}.
+		 */
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			int branch = streamedBranch(parser.getCurrentToken());
+			if (branch < 0) {
+				writer.write(read(materialize(parser, mapper), path, false), out.encoder());
+				return;
+			}
+			out.writeInt(branch);
+			try {
+				branches[branch].write(parser, out, path);
+			} catch (AvroRuntimeException e) {
+				// no other branch accepts this kind of value
+				throw unionException(fieldName, dispatch.expectedTypes(), path);
+			}
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			UnionDispatch.Kind kind = UnionDispatch.Kind.of(value);
+			int preferred = dispatch.preferred(kind, value);
+			// branches that rejected the value, reported when the union had to fall back on others
+			int rejected = 0;
+			if (preferred >= 0) {
+				Object nestedValue = readBranch(preferred, value, path);
+				if (nestedValue != INCOMPATIBLE)
+					return nestedValue;
+				rejected++;
+			}
+			for (int branch : dispatch.candidates(kind)) {
+				if (branch != preferred && dispatch.accepts(branch, value)) {
+					Object nestedValue = readBranch(branch, value, path);
+					if (nestedValue != INCOMPATIBLE) {
+						if (rejected > 0)
+							Metrics.installed.onUnionFallback(rejected);
+						return nestedValue;
+					}
+					rejected++;
+				}
+			}
+			if (rejected > 0)
+				Metrics.installed.onUnionFallback(rejected);
+			throw unionException(fieldName, dispatch.expectedTypes(), path);
+		}
+
+		private Object readBranch(int branch, Object value, Deque<String> path) {
+			try {
+				return branches[branch].read(value, path, true);
+			} catch (AvroRuntimeException | NumberFormatException e) {
+				// the value looked compatible but a nested field or the number format is not
+				return INCOMPATIBLE;
+			}
+		}
+	}
+
+	private enum NumberReader implements ValueReader {
+		INT {
+			@Override
+			Object convert(Number number) {
+				return number.intValue();
+			}
+
+			@Override
+			Number parse(String string) {
+				return Integer.parseInt(string);
+			}
+
+			@Override
+			Object fromLong(long value) {
+				return (int) value;
+			}
+
+			@Override
+			Object fromDouble(double value) {
+				return (int) value;
+			}
+
+			@Override
+			void writeNumber(Number number, BinaryBuffer out) {
+				out.writeInt(number.intValue());
+			}
+
+			@Override
+			void writeLong(long value, BinaryBuffer out) {
+				out.writeInt((int) value);
+			}
+
+			@Override
+			void writeDouble(double value, BinaryBuffer out) {
+				out.writeInt((int) value);
+			}
+		},
+		LONG {
+			@Override
+			Object convert(Number number) {
+				return number.longValue();
+			}
+
+			@Override
+			Number parse(String string) {
+				return Long.parseLong(string);
+			}
+
+			@Override
+			Object fromLong(long value) {
+				return value;
+			}
+
+			@Override
+			Object fromDouble(double value) {
+				return (long) value;
+			}
+
+			@Override
+			void writeNumber(Number number, BinaryBuffer out) {
+				out.writeLong(number.longValue());
+			}
+
+			@Override
+			void writeLong(long value, BinaryBuffer out) {
+				out.writeLong(value);
+			}
+
+			@Override
+			void writeDouble(double value, BinaryBuffer out) {
+				out.writeLong((long) value);
+			}
+		},
+		FLOAT {
+			@Override
+			Object convert(Number number) {
+				return number.floatValue();
+			}
+
+			@Override
+			Number parse(String string) {
+				return Float.parseFloat(string);
+			}
+
+			@Override
+			Object fromLong(long value) {
+				return (float) value;
+			}
+
+			@Override
+			Object fromDouble(double value) {
+				return (float) value;
+			}
+
+			@Override
+			void writeNumber(Number number, BinaryBuffer out) {
+				out.writeFloat(number.floatValue());
+			}
+
+			@Override
+			void writeLong(long value, BinaryBuffer out) {
+				out.writeFloat(value);
+			}
+
+			@Override
+			void writeDouble(double value, BinaryBuffer out) {
+				out.writeFloat((float) value);
+			}
+		},
+		DOUBLE {
+			@Override
+			Object convert(Number number) {
+				return number.doubleValue();
+			}
+
+			@Override
+			Number parse(String string) {
+				return Double.parseDouble(string);
+			}
+
+			@Override
+			Object fromLong(long value) {
+				return (double) value;
+			}
+
+			@Override
+			Object fromDouble(double value) {
+				return value;
+			}
+
+			@Override
+			void writeNumber(Number number, BinaryBuffer out) {
+				out.writeDouble(number.doubleValue());
+			}
+
+			@Override
+			void writeLong(long value, BinaryBuffer out) {
+				out.writeDouble(value);
+			}
+
+			@Override
+			void writeDouble(double value, BinaryBuffer out) {
+				out.writeDouble(value);
+			}
+		};
+
+		abstract Object convert(Number number);
+
+		abstract Number parse(String string);
+
+		abstract Object fromLong(long value);
+
+		abstract Object fromDouble(double value);
+
+		abstract void writeNumber(Number number, BinaryBuffer out);
+
+		abstract void writeLong(long value, BinaryBuffer out);
+
+		abstract void writeDouble(double value, BinaryBuffer out);
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (value instanceof Number)
+				return convert((Number) value);
+			if (value instanceof String)
+				return convert(parse((String) value));
+			return mismatch(path, silently, Number.class);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			switch (parser.getCurrentToken()) {
+			case VALUE_NUMBER_INT:
+				if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER)
+					return convert(parser.getNumberValue());
+				return fromLong(parser.getLongValue());
+			case VALUE_NUMBER_FLOAT:
+				return fromDouble(parser.getDoubleValue());
+			case VALUE_STRING:
+				return convert(parse(parser.getText()));
+			default:
+				throw typeException(path, Number.class.getTypeName());
+			}
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			switch (parser.getCurrentToken()) {
+			case VALUE_NUMBER_INT:
+				if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER)
+					writeNumber(parser.getNumberValue(), out);
+				else
+					writeLong(parser.getLongValue(), out);
+				break;
+			case VALUE_NUMBER_FLOAT:
+				writeDouble(parser.getDoubleValue(), out);
+				break;
+			case VALUE_STRING:
+				writeNumber(parse(parser.getText()), out);
+				break;
+			default:
+				throw typeException(path, Number.class.getTypeName());
+			}
+		}
+	}
+
+	private enum TypedReader implements ValueReader {
+		BOOLEAN(Boolean.class), STRING(String.class);
+
+		private final Class<?> type;
+
+		private TypedReader(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (type.isInstance(value))
+				return value;
+			return mismatch(path, silently, type);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			JsonToken token = parser.getCurrentToken();
+			if (this == STRING && token == JsonToken.VALUE_STRING)
+				return parser.getText();
+			if (this == BOOLEAN && token.isBoolean())
+				return token == JsonToken.VALUE_TRUE ? Boolean.TRUE : Boolean.FALSE;
+			throw typeException(path, type.getTypeName());
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			JsonToken token = parser.getCurrentToken();
+			if (this == STRING && token == JsonToken.VALUE_STRING)
+				out.writeString(parser.getText());
+			else if (this == BOOLEAN && token.isBoolean())
+				out.writeBoolean(token == JsonToken.VALUE_TRUE);
+			else
+				throw typeException(path, type.getTypeName());
+		}
+	}
+
+	private enum NullReader implements ValueReader {
+		INSTANCE;
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			return value == null ? null : INCOMPATIBLE;
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() == JsonToken.VALUE_NULL)
+				return null;
+			parser.skipChildren();
+			return INCOMPATIBLE;
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			// null is encoded as zero bytes
+			if (parser.getCurrentToken() != JsonToken.VALUE_NULL)
+				throw typeException(path, "null");
+		}
+	}
+
+	/**
+	 * Temporal logical types: the days or microseconds are taken as they are from an integral json number in the range of the type, or parsed
+	 * from the Bigquery text.
+	 */
+	private enum TemporalReader implements ValueReader {
+		DATE("DATE") {
+			@Override
+			long parse(char[] chars, int offset, int length) {
+				return LogicalTypeFormats.parseDate(chars, offset, length);
+			}
+
+			@Override
+			boolean inRange(long value) {
+				return LogicalTypeFormats.isDate(value);
+			}
+
+			@Override
+			Object box(long value) {
+				return (int) value;
+			}
+		},
+		TIME_MICROS("TIME") {
+			@Override
+			long parse(char[] chars, int offset, int length) {
+				return LogicalTypeFormats.parseTime(chars, offset, length);
+			}
+
+			@Override
+			boolean inRange(long value) {
+				return LogicalTypeFormats.isTime(value);
+			}
+		},
+		LOCAL_TIMESTAMP_MICROS("DATETIME") {
+			@Override
+			long parse(char[] chars, int offset, int length) {
+				return LogicalTypeFormats.parseDatetime(chars, offset, length);
+			}
+
+			@Override
+			boolean inRange(long value) {
+				return LogicalTypeFormats.isDatetime(value);
+			}
+		},
+		TIMESTAMP_MICROS("TIMESTAMP") {
+			@Override
+			long parse(char[] chars, int offset, int length) {
+				return LogicalTypeFormats.parseTimestamp(chars, offset, length);
+			}
+		};
+
+		private final String expected;
+
+		private TemporalReader(String type) {
+			this.expected = type + " string or number";
+		}
+
+		abstract long parse(char[] chars, int offset, int length);
+
+		/**
+		 * Whether a json number is a value of the type, the formats of {@link LogicalTypeFormats} rejecting the others.
+		 */
+		boolean inRange(long value) {
+			return true;
+		}
+
+		Object box(long value) {
+			return value;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			// integral numbers only, as the streaming read, a fraction is not truncated
+			if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				final long number = ((Number) value).longValue();
+				if (inRange(number))
+					return box(number);
+			} else if (value instanceof String) {
+				final char[] chars = ((String) value).toCharArray();
+				try {
+					return box(parse(chars, 0, chars.length));
+				} catch (IllegalArgumentException e) {
+					// not a valid text, rejected below
+				}
+			}
+			if (silently)
+				return INCOMPATIBLE;
+			throw typeException(path, expected);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			return box(value(parser, path));
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			// ints and longs share the same variable length encoding
+			out.writeLong(value(parser, path));
+		}
+
+		private long value(JsonParser parser, Deque<String> path) throws IOException {
+			switch (parser.getCurrentToken()) {
+			case VALUE_NUMBER_INT:
+				if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER || !inRange(parser.getLongValue()))
+					throw typeException(path, expected);
+				return parser.getLongValue();
+			case VALUE_STRING:
+				try {
+					return parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+				} catch (IllegalArgumentException e) {
+					throw typeException(path, expected);
+				}
+			default:
+				throw typeException(path, expected);
+			}
+		}
+	}
+
+	/**
+	 * NUMERIC <code>decimal</code>: a json number or string, read as a {@link BigDecimal} without going through a double, to the unscaled bytes.
+	 */
+	private static final class DecimalReader implements ValueReader {
+		private static final String EXPECTED = "NUMERIC string or number";
+
+		private final int scale;
+
+		DecimalReader(int scale) {
+			this.scale = scale;
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			try {
+				if (value instanceof BigDecimal)
+					return LogicalTypeFormats.toDecimal((BigDecimal) value, scale);
+				if (value instanceof BigInteger)
+					return LogicalTypeFormats.toDecimal(new BigDecimal((BigInteger) value), scale);
+				if (value instanceof Long || value instanceof Integer)
+					return LogicalTypeFormats.toDecimal(BigDecimal.valueOf(((Number) value).longValue()), scale);
+				// the shortest text of a double, not its binary expansion
+				if (value instanceof Number || value instanceof String)
+					return LogicalTypeFormats.toDecimal(new BigDecimal(value.toString()), scale);
+			} catch (IllegalArgumentException e) {
+				// not a valid number, rejected below
+			}
+			if (silently)
+				return INCOMPATIBLE;
+			throw typeException(path, EXPECTED);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			try {
+				switch (parser.getCurrentToken()) {
+				case VALUE_NUMBER_INT:
+				case VALUE_NUMBER_FLOAT:
+					return LogicalTypeFormats.toDecimal(parser.getDecimalValue(), scale);
+				case VALUE_STRING:
+					return LogicalTypeFormats.toDecimal(new BigDecimal(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()),
+							scale);
+				default:
+					break;
+				}
+			} catch (IllegalArgumentException e) {
+				// not a valid number, rejected below
+			}
+			throw typeException(path, EXPECTED);
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			final ByteBuffer bytes = (ByteBuffer) read(parser, path);
+			out.writeLong(bytes.remaining());
+			out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+		}
+	}
+
+	private static final class EnumReader implements ValueReader {
+		private final Map<String, GenericData.EnumSymbol> symbols;
+		private final Map<String, Integer> ordinals;
+		private final String expectedSymbols;
+
+		EnumReader(Schema schema) {
+			this.symbols = new HashMap<>();
+			this.ordinals = new HashMap<>();
+			for (String symbol : schema.getEnumSymbols()) {
+				symbols.put(symbol, new GenericData.EnumSymbol(schema, symbol));
+				ordinals.put(symbol, schema.getEnumOrdinal(symbol));
+			}
+			this.expectedSymbols = String.join(", ", schema.getEnumSymbols());
+		}
+
+		@Override
+		public Object read(Object value, Deque<String> path, boolean silently) {
+			if (!(value instanceof String))
+				return mismatch(path, silently, String.class);
+			return symbol(value, path);
+		}
+
+		@Override
+		public Object read(JsonParser parser, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.VALUE_STRING)
+				throw typeException(path, String.class.getTypeName());
+			return symbol(parser.getText(), path);
+		}
+
+		@Override
+		public void write(JsonParser parser, BinaryBuffer out, Deque<String> path) throws IOException {
+			if (parser.getCurrentToken() != JsonToken.VALUE_STRING)
+				throw typeException(path, String.class.getTypeName());
+			Integer ordinal = ordinals.get(parser.getText());
+			if (ordinal == null)
+				throw enumException(path, expectedSymbols);
+			out.writeInt(ordinal);
+		}
+
+		private GenericData.EnumSymbol symbol(Object value, Deque<String> path) {
+			GenericData.EnumSymbol symbol = symbols.get(value);
+			if (symbol == null)
+				throw enumException(path, expectedSymbols);
+			return symbol;
+		}
+	}
+
+	/**
+	 * Materializes the value at the parser current token the same way {@link ObjectMapper} does when reading a {@link Map}.
+	 */
+	private static Object materialize(JsonParser parser, ObjectMapper mapper) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case VALUE_NULL:
+			return null;
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+			return parser.getNumberValue();
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		default:
+			return mapper.readValue(parser, Object.class);
+		}
+	}
+
+	private static Object mismatch(Deque<String> path, boolean silently, Class<?> expected) {
+		if (silently)
+			return INCOMPATIBLE;
+		throw typeException(path, expected.getTypeName());
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.java.avro.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+
+/**
+ * Avro view of a Bigquery table schema translating only what is asked for, see
+ * {@link BigQuerySchemaConverter#toLazyAvroSchema(com.google.api.services.bigquery.model.Table)}. <br>
+ * Fields are looked up by dotted path of field names (<code>address.zipcode</code>), repeated records being transparent as in
+ * {@link FieldProjection}. A lookup only indexes the fields of the records on its path and translates the subtree of the field it returns;
+ * every result is memoized, so asking twice for the same path returns the same instance. The schemas returned are equal to the ones found
+ * at the same place in {@link #getSchema()}, namespaces included. <br>
+ * <br>
+ * <strong>Note:</strong> the view is safe to share across threads, the table schema it was created from must not change while it is in
+ * use.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class LazyAvroSchema {
+
+	private static final String PATH_SEPARATOR = "\\.";
+
+	private final AvroSchemaObject object;
+	private final Node root;
+	private volatile Schema schema;
+
+	LazyAvroSchema(String name, String doc, List<TableFieldSchema> fields, boolean logicalTypes) {
+		this.object = AvroSchemaObject.build(name, doc, fields, logicalTypes);
+		this.root = new Node(null, AvroSchemaObject.ROOT_NAMESPACE, fields, logicalTypes);
+	}
+
+	/**
+	 * Returns the schema of the whole table, translated on first call.
+	 */
+	public Schema getSchema() {
+		Schema result = schema;
+		if (result != null)
+			return result;
+		synchronized (this) {
+			if (schema == null)
+				schema = object.toSchema();
+			return schema;
+		}
+	}
+
+	/**
+	 * Returns the schema of the field at the given path as declared in its record: a union with null for nullable fields, an array for
+	 * repeated records.
+	 *
+	 * @param path dotted path of field names
+	 * @return the field schema, null when there is no such field
+	 */
+	public Schema getFieldSchema(String path) {
+		final Node node = resolve(path);
+		return node == null ? null : node.schema();
+	}
+
+	/**
+	 * Returns the record schema of the record field at the given path, without the union or array around it.
+	 *
+	 * @param path dotted path of field names
+	 * @return the record schema, null when there is no such field
+	 * @throws IllegalArgumentException when the field is not a record
+	 */
+	public Schema getRecordSchema(String path) {
+		final Node node = resolve(path);
+		if (node == null)
+			return null;
+		if (!node.isRecord())
+			throw new IllegalArgumentException("Not a record field: '" + path + "'");
+		final Schema fieldSchema = node.schema();
+		return fieldSchema.getType() == Type.ARRAY ? fieldSchema.getElementType() : fieldSchema.getTypes().get(0);
+	}
+
+	private Node resolve(String path) {
+		Node node = root;
+		for (String name : path.split(PATH_SEPARATOR)) {
+			if (!node.isRecord())
+				return null;
+			node = node.children().get(name);
+			if (node == null)
+				return null;
+		}
+		return node;
+	}
+
+	/**
+	 * A Bigquery field and what has been translated of it so far.
+	 */
+	private static final class Node {
+		// null for the root
+		final TableFieldSchema field;
+		// namespace of the record the field is declared in
+		final String namespace;
+		final List<TableFieldSchema> fields;
+		final boolean logicalTypes;
+		private volatile Map<String, Node> children;
+		private volatile Schema schema;
+
+		Node(TableFieldSchema field, String namespace, List<TableFieldSchema> fields, boolean logicalTypes) {
+			this.field = field;
+			this.namespace = namespace;
+			this.fields = fields == null ? Collections.<TableFieldSchema>emptyList() : fields;
+			this.logicalTypes = logicalTypes;
+		}
+
+		boolean isRecord() {
+			return field == null || AvroSchemaObject.getType(field.getType()) == Type.RECORD;
+		}
+
+		/**
+		 * Returns the fields of this record by name, indexed on first call.
+		 */
+		Map<String, Node> children() {
+			Map<String, Node> result = children;
+			if (result != null)
+				return result;
+			synchronized (this) {
+				if (children != null)
+					return children;
+				final String childNamespace = field == null ? namespace : AvroSchemaObject.namespace(namespace, field);
+				result = new HashMap<>();
+				for (TableFieldSchema child : fields) {
+					result.put(child.getName(), new Node(child, childNamespace, child.getFields(), logicalTypes));
+				}
+				children = result;
+				return result;
+			}
+		}
+
+		/**
+		 * Returns the schema of this field, translated on first call.
+		 */
+		Schema schema() {
+			Schema result = schema;
+			if (result != null)
+				return result;
+			synchronized (this) {
+				if (schema != null)
+					return schema;
+				if (isRecord())
+					result = AvroSchemaObject.toSchema(field, namespace,
+							AvroSchemaObject.translate(fields, AvroSchemaObject.namespace(namespace, field), logicalTypes));
+				else
+					result = AvroSchemaObject.toSchema(field, logicalTypes);
+				schema = result;
+				return result;
+			}
+		}
+	}
+
+}
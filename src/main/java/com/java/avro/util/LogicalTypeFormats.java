@@ -0,0 +1,446 @@
+package com.java.avro.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+
+/**
+ * Parses and formats the Bigquery DATE, TIME, DATETIME, TIMESTAMP and NUMERIC text representations to and from the values of their avro
+ * logical types: <code>date</code> days since the epoch, <code>time-micros</code> microseconds of the day,
+ * <code>local-timestamp-micros</code> and <code>timestamp-micros</code> microseconds since the epoch, <code>decimal</code> unscaled
+ * two's complement bytes. <br>
+ * Values are read and written straight from and into <code>char[]</code>, the dates being computed arithmetically as in
+ * {@link TimestampFormatter}, which formats the TIMESTAMP values. The formats are the canonical Bigquery ones:
+ * <ul>
+ * <li>DATE <code>yyyy-MM-dd</code>;</li>
+ * <li>TIME <code>HH:mm:ss[.ffffff]</code>;</li>
+ * <li>DATETIME <code>yyyy-MM-dd[T| ]HH:mm:ss[.ffffff]</code>, formatted with a <code>T</code>;</li>
+ * <li>TIMESTAMP a DATETIME followed by an optional <code>[ ]UTC</code>, <code>Z</code> or <code>[ ]&plusmn;HH[:mm]</code> zone;</li>
+ * <li>NUMERIC a decimal number, of at most {@link #NUMERIC_SCALE} fractional digits.</li>
+ * </ul>
+ * Fractions of a second have up to six digits, trailing zeros being dropped when formatting. Invalid values are rejected with an
+ * {@link IllegalArgumentException}.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class LogicalTypeFormats {
+
+	public static final int NUMERIC_PRECISION = 38;
+	public static final int NUMERIC_SCALE = 9;
+
+	/**
+	 * Longest output of the temporal formatters: <code>yyyy-MM-ddTHH:mm:ss.ffffff</code>.
+	 */
+	public static final int MAX_LENGTH = 26;
+
+	/**
+	 * Not known to this avro version, set as a plain <code>logicalType</code> property.
+	 */
+	static final String LOCAL_TIMESTAMP_MICROS = "local-timestamp-micros";
+
+	private static final long MICROS_PER_SECOND = 1000000L;
+	private static final long MICROS_PER_DAY = 86400L * MICROS_PER_SECOND;
+	// 0001-01-01 and 9999-12-31
+	private static final long MIN_DAYS = -719162;
+	private static final long MAX_DAYS = 2932896;
+	private static final long INVALID = Long.MIN_VALUE;
+	private static final int[] POWERS = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+	private LogicalTypeFormats() {
+	}
+
+	/**
+	 * The logical types handled here, by their avro schema.
+	 */
+	enum Kind {
+		DATE, TIME_MICROS, LOCAL_TIMESTAMP_MICROS, TIMESTAMP_MICROS, DECIMAL;
+
+		/**
+		 * Returns the logical type of the schema, or null when it has none of these on the right avro type.
+		 */
+		static Kind of(Schema schema) {
+			final String logicalType = schema.getProp(LogicalType.LOGICAL_TYPE_PROP);
+			if (logicalType == null)
+				return null;
+			switch (logicalType) {
+			case "date":
+				return schema.getType() == Type.INT ? DATE : null;
+			case "time-micros":
+				return schema.getType() == Type.LONG ? TIME_MICROS : null;
+			case LogicalTypeFormats.LOCAL_TIMESTAMP_MICROS:
+				return schema.getType() == Type.LONG ? LOCAL_TIMESTAMP_MICROS : null;
+			case "timestamp-micros":
+				return schema.getType() == Type.LONG ? TIMESTAMP_MICROS : null;
+			case "decimal":
+				return schema.getType() == Type.BYTES ? DECIMAL : null;
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Returns the logical type of a Bigquery type translated to one, TIMESTAMP aside: its values were already microseconds.
+		 */
+		static Kind forBigQueryType(String type) {
+			switch (type) {
+			case "DATE":
+				return DATE;
+			case "TIME":
+				return TIME_MICROS;
+			case "DATETIME":
+				return LOCAL_TIMESTAMP_MICROS;
+			case "NUMERIC":
+				return DECIMAL;
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the scale of a <code>decimal</code> schema.
+	 */
+	static int scale(Schema schema) {
+		return ((LogicalTypes.Decimal) LogicalTypes.fromSchema(schema)).getScale();
+	}
+
+	public static int parseDate(String value) {
+		final char[] chars = value.toCharArray();
+		return parseDate(chars, 0, chars.length);
+	}
+
+	/**
+	 * @return the days since the epoch
+	 */
+	public static int parseDate(char[] chars, int offset, int length) {
+		final long days = length == 10 ? days(chars, offset) : INVALID;
+		if (days == INVALID)
+			throw invalid("DATE", chars, offset, length);
+		return (int) days;
+	}
+
+	public static long parseTime(String value) {
+		final char[] chars = value.toCharArray();
+		return parseTime(chars, 0, chars.length);
+	}
+
+	/**
+	 * @return the microseconds of the day
+	 */
+	public static long parseTime(char[] chars, int offset, int length) {
+		final long micros = timeOfDay(chars, offset, offset + length);
+		if (micros == INVALID)
+			throw invalid("TIME", chars, offset, length);
+		return micros;
+	}
+
+	public static long parseDatetime(String value) {
+		final char[] chars = value.toCharArray();
+		return parseDatetime(chars, 0, chars.length);
+	}
+
+	/**
+	 * @return the microseconds since the epoch, the date and time being taken as UTC
+	 */
+	public static long parseDatetime(char[] chars, int offset, int length) {
+		final long micros = datetime(chars, offset, offset + length);
+		if (micros == INVALID)
+			throw invalid("DATETIME", chars, offset, length);
+		return micros;
+	}
+
+	public static long parseTimestamp(String value) {
+		final char[] chars = value.toCharArray();
+		return parseTimestamp(chars, 0, chars.length);
+	}
+
+	/**
+	 * @return the microseconds since the epoch
+	 */
+	public static long parseTimestamp(char[] chars, int offset, int length) {
+		int end = offset + length;
+		long zoneMicros = 0;
+		if (length > 3 && chars[end - 3] == 'U' && chars[end - 2] == 'T' && chars[end - 1] == 'C') {
+			end -= 3;
+		} else if (length > 1 && (chars[end - 1] == 'Z' || chars[end - 1] == 'z')) {
+			end--;
+		} else {
+			// a zone offset can only follow the seconds
+			for (int i = end - 1; i >= offset + 19; i--) {
+				if (chars[i] == '+' || chars[i] == '-') {
+					zoneMicros = zoneOffset(chars, i + 1, end);
+					if (zoneMicros == INVALID)
+						throw invalid("TIMESTAMP", chars, offset, length);
+					if (chars[i] == '-')
+						zoneMicros = -zoneMicros;
+					end = i;
+					break;
+				}
+			}
+		}
+		if (end > offset && chars[end - 1] == ' ')
+			end--;
+		final long micros = datetime(chars, offset, end);
+		if (micros == INVALID)
+			throw invalid("TIMESTAMP", chars, offset, length);
+		return micros - zoneMicros;
+	}
+
+	/**
+	 * Returns the decimal as the unscaled bytes of a NUMERIC <code>decimal</code>.
+	 *
+	 * @throws IllegalArgumentException when the value has more than <code>scale</code> fractional digits or is too large
+	 */
+	public static ByteBuffer toDecimal(BigDecimal value, int scale) {
+		final BigDecimal scaled;
+		try {
+			scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Not a valid NUMERIC, too many fractional digits: '" + value + "'");
+		}
+		if (scaled.precision() > NUMERIC_PRECISION)
+			throw new IllegalArgumentException("Not a valid NUMERIC, too many digits: '" + value + "'");
+		return ByteBuffer.wrap(scaled.unscaledValue().toByteArray());
+	}
+
+	/**
+	 * Formats the unscaled bytes of a <code>decimal</code> without trailing zeros, leaving the buffer position untouched.
+	 */
+	public static String formatDecimal(ByteBuffer unscaled, int scale) {
+		final ByteBuffer bytes = unscaled.duplicate();
+		final byte[] array = new byte[bytes.remaining()];
+		bytes.get(array);
+		if (array.length == 0)
+			return "0";
+		return new BigDecimal(new BigInteger(array), scale).stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * Whether the days since the epoch are a DATE, from 0001-01-01 to 9999-12-31, as {@link #formatDate(int)} requires.
+	 */
+	static boolean isDate(long days) {
+		return days >= MIN_DAYS && days <= MAX_DAYS;
+	}
+
+	/**
+	 * Whether the microseconds are a TIME, within one day, as {@link #formatTime(long)} requires.
+	 */
+	static boolean isTime(long micros) {
+		return micros >= 0 && micros < MICROS_PER_DAY;
+	}
+
+	/**
+	 * Whether the microseconds since the epoch are a DATETIME of a valid DATE, as {@link #formatDatetime(long)} requires.
+	 */
+	static boolean isDatetime(long micros) {
+		return isDate(Math.floorDiv(micros, MICROS_PER_DAY));
+	}
+
+	public static String formatDate(int days) {
+		final char[] buffer = new char[MAX_LENGTH];
+		return new String(buffer, 0, formatDate(days, buffer, 0));
+	}
+
+	/**
+	 * @return the number of chars written
+	 */
+	public static int formatDate(int days, char[] buffer, int offset) {
+		if (!isDate(days))
+			throw new IllegalArgumentException("DATE out of range: " + days + " days since the epoch");
+		return civil(days, buffer, offset) - offset;
+	}
+
+	public static String formatTime(long micros) {
+		final char[] buffer = new char[MAX_LENGTH];
+		return new String(buffer, 0, formatTime(micros, buffer, 0));
+	}
+
+	/**
+	 * @return the number of chars written
+	 */
+	public static int formatTime(long micros, char[] buffer, int offset) {
+		if (!isTime(micros))
+			throw new IllegalArgumentException("TIME out of range: " + micros + " microseconds of the day");
+		return time(micros, buffer, offset) - offset;
+	}
+
+	public static String formatDatetime(long micros) {
+		final char[] buffer = new char[MAX_LENGTH];
+		return new String(buffer, 0, formatDatetime(micros, buffer, 0));
+	}
+
+	/**
+	 * @return the number of chars written
+	 */
+	public static int formatDatetime(long micros, char[] buffer, int offset) {
+		final long days = Math.floorDiv(micros, MICROS_PER_DAY);
+		if (!isDate(days))
+			throw new IllegalArgumentException("DATETIME out of range: " + micros + " microseconds since the epoch");
+		int i = civil(days, buffer, offset);
+		buffer[i++] = 'T';
+		return time(Math.floorMod(micros, MICROS_PER_DAY), buffer, i) - offset;
+	}
+
+	/**
+	 * Parses <code>yyyy-MM-dd</code> at the given offset, the caller having checked there are ten chars.
+	 */
+	private static long days(char[] chars, int i) {
+		final int year = digits(chars, i, 4);
+		final int month = digits(chars, i + 5, 2);
+		final int day = digits(chars, i + 8, 2);
+		if (year < 1 || chars[i + 4] != '-' || chars[i + 7] != '-' || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+			return INVALID;
+		// days from civil date, see http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = y / 400;
+		final int yearOfEra = y - era * 400;
+		final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/**
+	 * Parses <code>HH:mm:ss[.ffffff]</code> from the offset to the end.
+	 */
+	private static long timeOfDay(char[] chars, int i, int end) {
+		if (end - i < 8)
+			return INVALID;
+		final int hour = digits(chars, i, 2);
+		final int minute = digits(chars, i + 3, 2);
+		final int second = digits(chars, i + 6, 2);
+		if (hour < 0 || hour > 23 || chars[i + 2] != ':' || minute < 0 || minute > 59 || chars[i + 5] != ':' || second < 0 || second > 59)
+			return INVALID;
+		final long micros = (hour * 3600L + minute * 60 + second) * MICROS_PER_SECOND;
+		i += 8;
+		if (i == end)
+			return micros;
+		final int width = end - i - 1;
+		if (chars[i] != '.' || width < 1 || width > 6)
+			return INVALID;
+		final int fraction = digits(chars, i + 1, width);
+		return fraction < 0 ? INVALID : micros + fraction * POWERS[6 - width];
+	}
+
+	private static long datetime(char[] chars, int i, int end) {
+		if (end - i < 19 || chars[i + 10] != 'T' && chars[i + 10] != ' ')
+			return INVALID;
+		final long days = days(chars, i);
+		final long micros = timeOfDay(chars, i + 11, end);
+		return days == INVALID || micros == INVALID ? INVALID : days * MICROS_PER_DAY + micros;
+	}
+
+	/**
+	 * Parses <code>HH[:mm]</code> or <code>HHmm</code> from the offset to the end.
+	 */
+	private static long zoneOffset(char[] chars, int i, int end) {
+		final int hour = end - i >= 2 ? digits(chars, i, 2) : -1;
+		int minute = 0;
+		if (end - i == 5 && chars[i + 2] == ':')
+			minute = digits(chars, i + 3, 2);
+		else if (end - i == 4)
+			minute = digits(chars, i + 2, 2);
+		else if (end - i != 2)
+			return INVALID;
+		if (hour < 0 || hour > 23 || minute < 0 || minute > 59)
+			return INVALID;
+		return (hour * 60L + minute) * 60 * MICROS_PER_SECOND;
+	}
+
+	/**
+	 * Returns the value of the digits, or -1 when one of the chars is not a digit.
+	 */
+	private static int digits(char[] chars, int offset, int width) {
+		int value = 0;
+		for (int i = offset; i < offset + width; i++) {
+			final int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Writes <code>yyyy-MM-dd</code>, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+	 *
+	 * @return the offset after the date
+	 */
+	private static int civil(long days, char[] buffer, int i) {
+		final long z = days + 719468;
+		final long era = Math.floorDiv(z, 146097);
+		final int dayOfEra = (int) (z - era * 146097);
+		final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final int mp = (5 * dayOfYear + 2) / 153;
+		final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		final int month = mp < 10 ? mp + 3 : mp - 9;
+		final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+		i = write(buffer, i, year, 4);
+		buffer[i++] = '-';
+		i = write(buffer, i, month, 2);
+		buffer[i++] = '-';
+		return write(buffer, i, day, 2);
+	}
+
+	/**
+	 * Writes <code>HH:mm:ss[.ffffff]</code> of the microseconds of the day.
+	 *
+	 * @return the offset after the time
+	 */
+	private static int time(long micros, char[] buffer, int i) {
+		final int secondOfDay = (int) (micros / MICROS_PER_SECOND);
+		int fraction = (int) (micros % MICROS_PER_SECOND);
+		i = write(buffer, i, secondOfDay / 3600, 2);
+		buffer[i++] = ':';
+		i = write(buffer, i, secondOfDay / 60 % 60, 2);
+		buffer[i++] = ':';
+		i = write(buffer, i, secondOfDay % 60, 2);
+		if (fraction != 0) {
+			int width = 6;
+			while (fraction % 10 == 0) {
+				width--;
+				fraction /= 10;
+			}
+			buffer[i++] = '.';
+			i = write(buffer, i, fraction, width);
+		}
+		return i;
+	}
+
+	/**
+	 * Writes a non-negative value zero-padded to the given width.
+	 */
+	private static int write(char[] buffer, int offset, int value, int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + width;
+	}
+
+	private static IllegalArgumentException invalid(String type, char[] chars, int offset, int length) {
+		return new IllegalArgumentException("Not a valid " + type + ": '" + new String(chars, offset, length) + "'");
+	}
+
+}
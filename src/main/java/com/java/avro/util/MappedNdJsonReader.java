@@ -0,0 +1,134 @@
+package com.java.avro.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.generic.GenericData;
+
+/**
+ * Reads a newline-delimited json file through {@link FileChannel#map(MapMode, long, long) memory mapping}. <br>
+ * The file is streamed without a read buffer of its own: newlines are searched directly in the mapped region and each line is handed to the
+ * {@link JsonReaderPlan} as a view over the mapping, never as a <code>byte[]</code> or a <code>String</code> of the line. This is not zero-copy:
+ * the parser still copies the bytes it decodes into its own input buffer. Files larger than a single mapping (2GB) are mapped in windows of
+ * {@link #withWindowSize(int) windowSize} bytes, each window starting at the first line not completed by the previous one. <br>
+ * Blank lines are skipped. <br>
+ * Java offers no way to unmap a region explicitly: the windows are released when garbage collected, so more than one window may stay mapped
+ * while a large file is read.
+ *
+ * <br>
+ * <strong>Note:</strong> instances are immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class MappedNdJsonReader {
+
+	private static final int DEFAULT_WINDOW_SIZE = 256 << 20;
+
+	private final JsonReaderPlan plan;
+	private final int windowSize;
+
+	private MappedNdJsonReader(JsonReaderPlan plan, int windowSize) {
+		if (windowSize < 1)
+			throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+		this.plan = plan;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Returns a reader mapping the file in windows of 256MB.
+	 */
+	public static MappedNdJsonReader create(JsonReaderPlan plan) {
+		return new MappedNdJsonReader(plan, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedNdJsonReader withWindowSize(int windowSize) {
+		return new MappedNdJsonReader(plan, windowSize);
+	}
+
+	/**
+	 * Converts every line of the file in order, handing each record to the consumer.
+	 *
+	 * @param ndjson file to read
+	 * @param consumer receives the records in file order
+	 * @return the number of records read
+	 * @throws IOException when the file cannot be mapped
+	 */
+	public long read(Path ndjson, Consumer<? super GenericData.Record> consumer) throws IOException {
+		final long[] count = { 0 };
+		try (FileChannel channel = FileChannel.open(ndjson, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			long position = 0;
+			int window = windowSize;
+			while (position < size) {
+				final int length = (int) Math.min(window, size - position);
+				final MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, position, length);
+				final boolean last = position + length == size;
+				final int consumed = readLines(mapped, length, last, position, consumer, count);
+				if (consumed == 0) {
+					// a single line does not fit in the window: map a larger one from the same line start
+					window = (int) Math.min((long) window * 2, Integer.MAX_VALUE);
+					if (window == length)
+						throw new AvroRuntimeException("Line at byte offset " + position + " does not fit in a single mapping");
+					continue;
+				}
+				position += consumed;
+				window = windowSize;
+			}
+		}
+		return count[0];
+	}
+
+	/**
+	 * Converts the complete lines of the window.
+	 *
+	 * @return the number of bytes consumed, which ends after the last newline unless the window reaches the end of the file
+	 */
+	private int readLines(MappedByteBuffer mapped, int length, boolean last, long offset, Consumer<? super GenericData.Record> consumer,
+			long[] count) {
+		final ByteBuffer line = mapped.duplicate();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			if (mapped.get(i) == '\n') {
+				readLine(line, start, i, offset, consumer, count);
+				start = i + 1;
+			}
+		}
+		if (last && start < length) {
+			readLine(line, start, length, offset, consumer, count);
+			start = length;
+		}
+		return start;
+	}
+
+	private void readLine(ByteBuffer line, int start, int end, long offset, Consumer<? super GenericData.Record> consumer, long[] count) {
+		line.clear();
+		if (isBlank(line, start, end))
+			return;
+		line.position(start);
+		line.limit(end);
+		try {
+			consumer.accept(plan.read(line));
+		} catch (AvroRuntimeException ex) {
+			throw new AvroRuntimeException("Failed to read ndjson line at byte offset " + (offset + start), ex);
+		}
+		count[0]++;
+	}
+
+	private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b != ' ' && b != '\t' && b != '\r')
+				return false;
+		}
+		return true;
+	}
+
+}
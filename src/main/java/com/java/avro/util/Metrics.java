@@ -0,0 +1,64 @@
+package com.java.avro.util;
+
+import java.util.List;
+
+import org.apache.avro.Schema;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Holds the installed {@link ConversionMetrics} and the helpers the entry points measure with. <br>
+ * An entry point reads {@link #installed} once and hands it to the helpers, which do nothing, not even reading the clock, for
+ * {@link ConversionMetrics#NOOP}.
+ */
+final class Metrics {
+
+	static volatile ConversionMetrics installed = ConversionMetrics.NOOP;
+
+	private Metrics() {
+	}
+
+	static long start(ConversionMetrics metrics) {
+		return metrics == ConversionMetrics.NOOP ? 0L : System.nanoTime();
+	}
+
+	static void succeeded(ConversionMetrics metrics, ConversionMetrics.Operation operation, long start, long bytesIn, long bytesOut) {
+		if (metrics != ConversionMetrics.NOOP)
+			metrics.onRecord(operation, System.nanoTime() - start, bytesIn, bytesOut);
+	}
+
+	static void failed(ConversionMetrics metrics, ConversionMetrics.Operation operation, Throwable ex) {
+		if (metrics != ConversionMetrics.NOOP)
+			metrics.onError(operation, AvroTypeExceptions.errorKind(ex));
+	}
+
+	/**
+	 * Returns the byte offset of the parser current token, -1 when the parser reads characters or when not measuring.
+	 */
+	static long tokenOffset(ConversionMetrics metrics, JsonParser parser) {
+		return metrics == ConversionMetrics.NOOP ? -1L : parser.getTokenLocation().getByteOffset();
+	}
+
+	/**
+	 * Returns the bytes the parser consumed since the given token offset, 0 when unknown.
+	 */
+	static long bytesRead(ConversionMetrics metrics, JsonParser parser, long from) {
+		if (metrics == ConversionMetrics.NOOP || from < 0)
+			return 0L;
+		return Math.max(0L, parser.getCurrentLocation().getByteOffset() - from);
+	}
+
+	/**
+	 * Returns the type a field of the given schema is counted as: the non-null branch of a nullable union, the schema type otherwise.
+	 */
+	static Schema.Type fieldType(Schema schema) {
+		if (schema.getType() != Schema.Type.UNION)
+			return schema.getType();
+		final List<Schema> types = schema.getTypes();
+		if (types.size() != 2)
+			return Schema.Type.UNION;
+		if (types.get(0).getType() == Schema.Type.NULL)
+			return types.get(1).getType();
+		return types.get(1).getType() == Schema.Type.NULL ? types.get(0).getType() : Schema.Type.UNION;
+	}
+}
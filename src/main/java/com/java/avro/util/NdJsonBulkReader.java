@@ -0,0 +1,296 @@
+package com.java.avro.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Converts newline-delimited json (one document per line, as in Bigquery json exports) into an Avro container file. <br>
+ * The input is cut on line boundaries into chunks of about {@link #withChunkSize(int) chunkSize} bytes. Chunks are parsed in parallel on a
+ * fork-join pool with a compiled {@link JsonReaderPlan} and appended to the {@link DataFileWriter} in the original order. At most
+ * {@link #withMaxChunksInFlight(int) maxChunksInFlight} chunks are buffered at any time, so memory stays flat whatever the file size. <br>
+ * Blank lines are skipped. The first line that cannot be converted fails the whole input, unless an {@link #withErrorSink(Consumer) error
+ * sink} collects it.
+ *
+ * <br>
+ * <strong>Note:</strong> instances are immutable, the <code>with*</code> methods return a configured copy.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class NdJsonBulkReader {
+
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	private final JsonGenericRecordReader reader;
+	private final int parallelism;
+	private final int chunkSize;
+	private final int maxChunksInFlight;
+	private final CodecFactory codec;
+	private final Consumer<? super ConversionError> errorSink;
+
+	private NdJsonBulkReader(JsonGenericRecordReader reader, int parallelism, int chunkSize, int maxChunksInFlight, CodecFactory codec,
+			Consumer<? super ConversionError> errorSink) {
+		if (parallelism < 1 || chunkSize < 1 || maxChunksInFlight < 1)
+			throw new IllegalArgumentException("parallelism, chunkSize and maxChunksInFlight must be positive");
+		this.reader = reader;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+		this.maxChunksInFlight = maxChunksInFlight;
+		this.codec = codec;
+		this.errorSink = errorSink;
+	}
+
+	/**
+	 * Returns a bulk reader using all available processors, 1MB chunks, twice as many chunks in flight as threads and no compression.
+	 */
+	public static NdJsonBulkReader create(JsonGenericRecordReader reader) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		return new NdJsonBulkReader(reader, processors, DEFAULT_CHUNK_SIZE, 2 * processors, CodecFactory.nullCodec(), null);
+	}
+
+	public NdJsonBulkReader withParallelism(int parallelism) {
+		return new NdJsonBulkReader(reader, parallelism, chunkSize, maxChunksInFlight, codec, errorSink);
+	}
+
+	public NdJsonBulkReader withChunkSize(int chunkSize) {
+		return new NdJsonBulkReader(reader, parallelism, chunkSize, maxChunksInFlight, codec, errorSink);
+	}
+
+	public NdJsonBulkReader withMaxChunksInFlight(int maxChunksInFlight) {
+		return new NdJsonBulkReader(reader, parallelism, chunkSize, maxChunksInFlight, codec, errorSink);
+	}
+
+	public NdJsonBulkReader withCodec(CodecFactory codec) {
+		return new NdJsonBulkReader(reader, parallelism, chunkSize, maxChunksInFlight, codec, errorSink);
+	}
+
+	/**
+	 * Returns a copy skipping the lines that cannot be converted instead of failing, each one being handed to the sink as a
+	 * {@link ConversionError} whose offset is the byte offset of the line. The sink is called in the input order, on the thread appending the
+	 * records.
+	 */
+	public NdJsonBulkReader withErrorSink(Consumer<? super ConversionError> errorSink) {
+		return new NdJsonBulkReader(reader, parallelism, chunkSize, maxChunksInFlight, codec, errorSink);
+	}
+
+	/**
+	 * Converts the ndjson file into an Avro container file.
+	 *
+	 * @return the number of records written
+	 */
+	public long write(Path ndjson, Schema schema, Path avro) throws IOException {
+		try (InputStream in = Files.newInputStream(ndjson); OutputStream out = Files.newOutputStream(avro)) {
+			return write(in, schema, out);
+		}
+	}
+
+	/**
+	 * Converts the ndjson stream into an Avro container written to <code>out</code>. Neither stream is closed.
+	 *
+	 * @return the number of records written
+	 */
+	public long write(InputStream ndjson, Schema schema, OutputStream out) throws IOException {
+		try (DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(new GenericDatumWriter<>(schema))) {
+			writer.setCodec(codec);
+			writer.create(schema, new NonClosingOutputStream(out));
+			return write(ndjson, schema, writer);
+		}
+	}
+
+	/**
+	 * Appends the records of the ndjson stream to an already open writer. Neither the stream nor the writer is closed.
+	 *
+	 * @return the number of records written
+	 */
+	public long write(InputStream ndjson, Schema schema, DataFileWriter<GenericRecord> writer) throws IOException {
+		final JsonReaderPlan plan = reader.compile(schema);
+		final long[] count = { 0 };
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		final OrderedTaskWindow<BulkReadResult> window = new OrderedTaskWindow<>(pool, maxChunksInFlight, result -> {
+			for (GenericData.Record record : result.getRecords()) {
+				writer.append(record);
+			}
+			count[0] += result.getRecords().size();
+			if (errorSink != null)
+				result.getErrors().forEach(errorSink);
+		});
+		try {
+			final ChunkSplitter splitter = new ChunkSplitter(ndjson, chunkSize);
+			Chunk chunk;
+			while ((chunk = splitter.next()) != null) {
+				final Chunk current = chunk;
+				window.submit(() -> errorSink == null ? new BulkReadResult(current.parse(plan), Collections.emptyList())
+						: current.parseTolerant(plan));
+			}
+			window.finish();
+			return count[0];
+		} catch (IOException | RuntimeException ex) {
+			window.cancel();
+			throw ex;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * A run of complete lines together with its byte offset in the input.
+	 */
+	static final class Chunk {
+		final byte[] bytes;
+		final int length;
+		final long offset;
+
+		Chunk(byte[] bytes, int length, long offset) {
+			this.bytes = bytes;
+			this.length = length;
+			this.offset = offset;
+		}
+
+		/**
+		 * Parses the lines, failing on the first one that cannot be converted.
+		 */
+		List<GenericData.Record> parse(JsonReaderPlan plan) {
+			return parse(plan, null);
+		}
+
+		/**
+		 * Parses the lines, collecting the ones that cannot be converted.
+		 */
+		BulkReadResult parseTolerant(JsonReaderPlan plan) {
+			final List<ConversionError> errors = new ArrayList<>();
+			return new BulkReadResult(parse(plan, errors), errors);
+		}
+
+		private List<GenericData.Record> parse(JsonReaderPlan plan, List<ConversionError> errors) {
+			final List<GenericData.Record> records = new ArrayList<>();
+			int start = 0;
+			while (start < length) {
+				int end = start;
+				while (end < length && bytes[end] != '\n') {
+					end++;
+				}
+				if (!isBlank(bytes, start, end)) {
+					if (errors == null) {
+						try {
+							records.add(plan.read(bytes, start, end - start));
+						} catch (AvroRuntimeException ex) {
+							throw new AvroRuntimeException("Failed to read ndjson line at byte offset " + (offset + start), ex);
+						}
+					} else {
+						final GenericData.Record record = plan.tryRead(bytes, start, end - start, offset + start, errors);
+						if (record != null)
+							records.add(record);
+					}
+				}
+				start = end + 1;
+			}
+			return records;
+		}
+
+		private static boolean isBlank(byte[] bytes, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r')
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the input in blocks and cuts each block after its last newline, carrying the partial line over to the next chunk. A line longer
+	 * than the chunk size grows the block until it fits.
+	 */
+	static final class ChunkSplitter {
+		private final InputStream in;
+		private final int chunkSize;
+		private byte[] carry = new byte[0];
+		private int carryLength;
+		private long offset;
+		private boolean eof;
+
+		ChunkSplitter(InputStream in, int chunkSize) {
+			this.in = in;
+			this.chunkSize = chunkSize;
+		}
+
+		Chunk next() throws IOException {
+			if (eof && carryLength == 0)
+				return null;
+			byte[] block = Arrays.copyOf(carry, Math.max(chunkSize, carryLength + 1));
+			int length = carryLength;
+			int scanFrom = carryLength;
+			while (true) {
+				while (!eof && length < block.length) {
+					int read = in.read(block, length, block.length - length);
+					if (read < 0)
+						eof = true;
+					else
+						length += read;
+				}
+				int cut = lastNewline(block, scanFrom, length);
+				if (cut >= 0) {
+					return emit(block, length, cut + 1);
+				}
+				if (eof) {
+					return length == 0 ? null : emit(block, length, length);
+				}
+				scanFrom = length;
+				block = Arrays.copyOf(block, block.length * 2);
+			}
+		}
+
+		private Chunk emit(byte[] block, int length, int cut) {
+			carryLength = length - cut;
+			carry = Arrays.copyOfRange(block, cut, length);
+			Chunk chunk = new Chunk(block, cut, offset);
+			offset += cut;
+			return chunk;
+		}
+
+		private static int lastNewline(byte[] block, int from, int to) {
+			for (int i = to - 1; i >= from; i--) {
+				if (block[i] == '\n')
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Keeps {@link DataFileWriter#close()} from closing the caller stream.
+	 */
+	private static final class NonClosingOutputStream extends FilterOutputStream {
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.java.avro.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks on an executor while handing their results to a sink in submission order. At most <code>maxInFlight</code> tasks are pending:
+ * submitting one more first waits for the oldest and drains it, which is the back-pressure that keeps memory flat whatever the input size.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> not thread-safe, it is meant to be driven by a single producer thread.
+ * 
+ * @author giuseppe.adaldo
+ *
+ */
+final class OrderedTaskWindow<T> {
+
+	/**
+	 * Receives results in submission order, on the producer thread.
+	 */
+	interface Sink<T> {
+		void accept(T result) throws IOException;
+	}
+
+	private final Executor executor;
+	private final int maxInFlight;
+	private final Sink<T> sink;
+	private final ArrayDeque<CompletableFuture<T>> pending;
+
+	OrderedTaskWindow(Executor executor, int maxInFlight, Sink<T> sink) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.sink = sink;
+		this.pending = new ArrayDeque<>(maxInFlight);
+	}
+
+	void submit(Supplier<T> task) throws IOException {
+		if (pending.size() == maxInFlight)
+			drainOldest();
+		pending.add(CompletableFuture.supplyAsync(task, executor));
+	}
+
+	void finish() throws IOException {
+		while (!pending.isEmpty()) {
+			drainOldest();
+		}
+	}
+
+	/**
+	 * Cancels whatever is still pending, used when the producer gives up on error.
+	 */
+	void cancel() {
+		pending.forEach(f -> f.cancel(false));
+		pending.clear();
+	}
+
+	private void drainOldest() throws IOException {
+		T result;
+		try {
+			result = pending.poll().join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw ex;
+		}
+		sink.accept(result);
+	}
+
+}
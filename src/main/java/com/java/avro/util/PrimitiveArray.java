@@ -0,0 +1,442 @@
+package com.java.avro.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Floats;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+/**
+ * {@link GenericData.Array} of an Avro numeric type backed by a primitive array. <br>
+ * The readers compiled by {@link JsonGenericRecordReader#compile(Schema)} build these for arrays of <code>int</code>, <code>long</code>,
+ * <code>float</code> and <code>double</code>, storing the decoded numbers without boxing them, and {@link TableRowConverter} turns them into
+ * REPEATED values with a single copy of the primitive array. <br>
+ * They behave as any other {@link GenericData.Array} through the {@link List} interface, elements being boxed on access; the typed accessors
+ * of the subclasses (<code>getLong(int)</code>, <code>addLong(long)</code>, ...) avoid it.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> not thread-safe, null elements are not supported.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public abstract class PrimitiveArray<T extends Number> extends GenericData.Array<T> {
+
+	private static final int DEFAULT_CAPACITY = 10;
+
+	int size;
+
+	private PrimitiveArray(Schema schema) {
+		// the boxed element storage of the superclass is left empty
+		super(0, schema);
+	}
+
+	/**
+	 * Returns an empty array of the given array schema backed by a primitive array, or null when its elements are not of a numeric type.
+	 */
+	public static PrimitiveArray<?> of(Schema schema, int capacity) {
+		switch (schema.getElementType().getType()) {
+		case INT:
+			return new IntArray(schema, capacity);
+		case LONG:
+			return new LongArray(schema, capacity);
+		case FLOAT:
+			return new FloatArray(schema, capacity);
+		case DOUBLE:
+			return new DoubleArray(schema, capacity);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Appends the number narrowed to the element type, as {@link Number#intValue()} and its siblings do.
+	 */
+	public abstract void addNumber(Number value);
+
+	/**
+	 * Appends the value cast to the element type.
+	 */
+	public abstract void addLong(long value);
+
+	/**
+	 * Appends the value cast to the element type.
+	 */
+	public abstract void addDouble(double value);
+
+	/**
+	 * Returns an unmodifiable copy of the elements, backed by a primitive array.
+	 */
+	public abstract List<T> toList();
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+	}
+
+	@Override
+	public boolean add(T value) {
+		addNumber(value);
+		return true;
+	}
+
+	/**
+	 * Numbers are immutable, there is no former element to hand back for reuse.
+	 */
+	@Override
+	public T peek() {
+		return null;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int position;
+
+			@Override
+			public boolean hasNext() {
+				return position < size;
+			}
+
+			@Override
+			public T next() {
+				if (position >= size)
+					throw new NoSuchElementException();
+				return get(position++);
+			}
+
+			@Override
+			public void remove() {
+				PrimitiveArray.this.remove(--position);
+			}
+		};
+	}
+
+	void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds.");
+	}
+
+	void checkPosition(int index) {
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds.");
+	}
+
+	static int grow(int length, int required) {
+		return Math.max(required, length + (length >> 1) + 1);
+	}
+
+	public static final class IntArray extends PrimitiveArray<Integer> {
+		private int[] values;
+
+		IntArray(Schema schema, int capacity) {
+			super(schema);
+			this.values = new int[capacity < 0 ? DEFAULT_CAPACITY : capacity];
+		}
+
+		public int getInt(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		public void addInt(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			values[size++] = value;
+		}
+
+		@Override
+		public void addNumber(Number value) {
+			addInt(value.intValue());
+		}
+
+		@Override
+		public void addLong(long value) {
+			addInt((int) value);
+		}
+
+		@Override
+		public void addDouble(double value) {
+			addInt((int) value);
+		}
+
+		@Override
+		public Integer get(int index) {
+			return getInt(index);
+		}
+
+		@Override
+		public Integer set(int index, Integer value) {
+			final int previous = getInt(index);
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public void add(int index, Integer value) {
+			checkPosition(index);
+			final int element = value;
+			addInt(element);
+			System.arraycopy(values, index, values, index + 1, size - index - 1);
+			values[index] = element;
+		}
+
+		@Override
+		public Integer remove(int index) {
+			final int previous = getInt(index);
+			System.arraycopy(values, index + 1, values, index, --size - index);
+			return previous;
+		}
+
+		@Override
+		public void reverse() {
+			for (int left = 0, right = size - 1; left < right; left++, right--) {
+				final int value = values[left];
+				values[left] = values[right];
+				values[right] = value;
+			}
+		}
+
+		@Override
+		public List<Integer> toList() {
+			return Collections.unmodifiableList(Ints.asList(Arrays.copyOf(values, size)));
+		}
+	}
+
+	public static final class LongArray extends PrimitiveArray<Long> {
+		private long[] values;
+
+		LongArray(Schema schema, int capacity) {
+			super(schema);
+			this.values = new long[capacity < 0 ? DEFAULT_CAPACITY : capacity];
+		}
+
+		public long getLong(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		@Override
+		public void addLong(long value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			values[size++] = value;
+		}
+
+		@Override
+		public void addNumber(Number value) {
+			addLong(value.longValue());
+		}
+
+		@Override
+		public void addDouble(double value) {
+			addLong((long) value);
+		}
+
+		@Override
+		public Long get(int index) {
+			return getLong(index);
+		}
+
+		@Override
+		public Long set(int index, Long value) {
+			final long previous = getLong(index);
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public void add(int index, Long value) {
+			checkPosition(index);
+			final long element = value;
+			addLong(element);
+			System.arraycopy(values, index, values, index + 1, size - index - 1);
+			values[index] = element;
+		}
+
+		@Override
+		public Long remove(int index) {
+			final long previous = getLong(index);
+			System.arraycopy(values, index + 1, values, index, --size - index);
+			return previous;
+		}
+
+		@Override
+		public void reverse() {
+			for (int left = 0, right = size - 1; left < right; left++, right--) {
+				final long value = values[left];
+				values[left] = values[right];
+				values[right] = value;
+			}
+		}
+
+		@Override
+		public List<Long> toList() {
+			return Collections.unmodifiableList(Longs.asList(Arrays.copyOf(values, size)));
+		}
+	}
+
+	public static final class FloatArray extends PrimitiveArray<Float> {
+		private float[] values;
+
+		FloatArray(Schema schema, int capacity) {
+			super(schema);
+			this.values = new float[capacity < 0 ? DEFAULT_CAPACITY : capacity];
+		}
+
+		public float getFloat(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		public void addFloat(float value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			values[size++] = value;
+		}
+
+		@Override
+		public void addNumber(Number value) {
+			addFloat(value.floatValue());
+		}
+
+		@Override
+		public void addLong(long value) {
+			addFloat(value);
+		}
+
+		@Override
+		public void addDouble(double value) {
+			addFloat((float) value);
+		}
+
+		@Override
+		public Float get(int index) {
+			return getFloat(index);
+		}
+
+		@Override
+		public Float set(int index, Float value) {
+			final float previous = getFloat(index);
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public void add(int index, Float value) {
+			checkPosition(index);
+			final float element = value;
+			addFloat(element);
+			System.arraycopy(values, index, values, index + 1, size - index - 1);
+			values[index] = element;
+		}
+
+		@Override
+		public Float remove(int index) {
+			final float previous = getFloat(index);
+			System.arraycopy(values, index + 1, values, index, --size - index);
+			return previous;
+		}
+
+		@Override
+		public void reverse() {
+			for (int left = 0, right = size - 1; left < right; left++, right--) {
+				final float value = values[left];
+				values[left] = values[right];
+				values[right] = value;
+			}
+		}
+
+		@Override
+		public List<Float> toList() {
+			return Collections.unmodifiableList(Floats.asList(Arrays.copyOf(values, size)));
+		}
+	}
+
+	public static final class DoubleArray extends PrimitiveArray<Double> {
+		private double[] values;
+
+		DoubleArray(Schema schema, int capacity) {
+			super(schema);
+			this.values = new double[capacity < 0 ? DEFAULT_CAPACITY : capacity];
+		}
+
+		public double getDouble(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		@Override
+		public void addDouble(double value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, grow(values.length, size + 1));
+			values[size++] = value;
+		}
+
+		@Override
+		public void addNumber(Number value) {
+			addDouble(value.doubleValue());
+		}
+
+		@Override
+		public void addLong(long value) {
+			addDouble(value);
+		}
+
+		@Override
+		public Double get(int index) {
+			return getDouble(index);
+		}
+
+		@Override
+		public Double set(int index, Double value) {
+			final double previous = getDouble(index);
+			values[index] = value;
+			return previous;
+		}
+
+		@Override
+		public void add(int index, Double value) {
+			checkPosition(index);
+			final double element = value;
+			addDouble(element);
+			System.arraycopy(values, index, values, index + 1, size - index - 1);
+			values[index] = element;
+		}
+
+		@Override
+		public Double remove(int index) {
+			final double previous = getDouble(index);
+			System.arraycopy(values, index + 1, values, index, --size - index);
+			return previous;
+		}
+
+		@Override
+		public void reverse() {
+			for (int left = 0, right = size - 1; left < right; left++, right--) {
+				final double value = values[left];
+				values[left] = values[right];
+				values[right] = value;
+			}
+		}
+
+		@Override
+		public List<Double> toList() {
+			return Collections.unmodifiableList(Doubles.asList(Arrays.copyOf(values, size)));
+		}
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.java.avro.util;
+
+import static com.google.common.base.Verify.verify;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableSchema;
+
+/**
+ * Structural difference between two versions of a Bigquery table schema, and the avro schema of the new version patched from the previous
+ * one, see {@link BigQuerySchemaConverter#evolve(com.google.api.services.bigquery.model.Table, Schema, TableSchema)}. <br>
+ * Fields are matched by name, level by level, in a single pass with an explicit stack. Only the changed fields are translated: the avro
+ * schema of an unchanged subtree is reused as it is, and the records holding a change are rebuilt around it. The patched schema is equal to
+ * the one {@link BigQuerySchemaConverter#toAvroSchema(com.google.api.services.bigquery.model.Table)} builds from the new table, and is
+ * the previous one when nothing changed. <br>
+ * The changes tell whether what was compiled for the previous schemas can be kept:
+ * <ul>
+ * <li>{@link #canKeepReaders()}: json readers compiled for the previous avro schema read the records of the new table without errors,
+ * skipping the added fields;</li>
+ * <li>{@link #canKeepConverters()}: {@link TableRowConverter}s compiled for the previous schemas still build valid rows of the new
+ * table.</li>
+ * </ul>
+ * <br>
+ * <strong>Note:</strong> an evolution is immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class SchemaEvolution {
+
+	private static final String REQUIRED = "REQUIRED";
+	private static final String NULLABLE = "NULLABLE";
+
+	private final List<Change> changes;
+	private final Schema schema;
+
+	private SchemaEvolution(List<Change> changes, Schema schema) {
+		this.changes = Collections.unmodifiableList(changes);
+		this.schema = schema;
+	}
+
+	/**
+	 * Computes the changes from the previous table schema to the next one and patches the previous avro schema accordingly.
+	 *
+	 * @param previous fields of the previous table schema
+	 * @param previousSchema avro schema translated from the previous table schema
+	 * @param next fields of the new table schema
+	 * @param logicalTypes whether the schemas use avro logical types, see {@link BigQuerySchemaConverter#toAvroSchema(com.google.api.services.bigquery.model.Table, boolean)}
+	 * @throws com.google.common.base.VerifyException when the previous avro schema does not match the previous table schema
+	 */
+	static SchemaEvolution diff(List<TableFieldSchema> previous, Schema previousSchema, List<TableFieldSchema> next, boolean logicalTypes) {
+		final List<Change> changes = new ArrayList<>();
+		final Deque<Level> stack = new ArrayDeque<>();
+		Level level = new Level(null, previousSchema, AvroSchemaObject.ROOT_NAMESPACE, null, previous, next);
+		while (true) {
+			if (level.next < level.fields.size()) {
+				final int i = level.next++;
+				final TableFieldSchema field = level.fields.get(i);
+				final String path = level.path(field.getName());
+				final TableFieldSchema before = level.previousFields.get(field.getName());
+				if (before == null) {
+					changes.add(new Change(Change.Kind.ADDED, path, null, field));
+					level.patch(i, AvroSchemaObject.toField(field, level.namespace, logicalTypes));
+					continue;
+				}
+				level.matched++;
+				final Field avroField = verifyNotNull(level.record.getField(field.getName()), "Avro schema %s has no field for BigQuery field %s",
+						level.record.getFullName(), path);
+				if (avroField.pos() != i)
+					level.changed = true;
+				final Type type = AvroSchemaObject.getType(field.getType());
+				final boolean record = type == Type.RECORD;
+				if (record != (AvroSchemaObject.getType(before.getType()) == Type.RECORD) || !record
+						&& !AvroSchemaObject.typeSchema(field.getType(), logicalTypes).equals(AvroSchemaObject.typeSchema(before.getType(), logicalTypes))) {
+					changes.add(new Change(Change.Kind.TYPE_CHANGED, path, before, field));
+					level.patch(i, AvroSchemaObject.toField(field, level.namespace, logicalTypes));
+					continue;
+				}
+				final boolean modeChanged = !Objects.equals(before.getMode(), field.getMode());
+				if (modeChanged && !mode(before).equals(mode(field)))
+					changes.add(new Change(REQUIRED.equals(mode(before)) && NULLABLE.equals(mode(field)) ? Change.Kind.RELAXED
+							: Change.Kind.MODE_CHANGED, path, before, field));
+				final boolean descriptionChanged = !Objects.equals(before.getDescription(), field.getDescription());
+				if (descriptionChanged)
+					changes.add(new Change(Change.Kind.DESCRIPTION_CHANGED, path, before, field));
+				if (record) {
+					stack.push(level);
+					level = new Level(field, record(avroField.schema()), AvroSchemaObject.namespace(level.namespace, field), path,
+							before.getFields(), field.getFields());
+					// the union or array around the record and the record doc come from the mode and the description
+					level.changed = modeChanged || descriptionChanged;
+				} else if (modeChanged) {
+					final Field patched = AvroSchemaObject.toField(field, logicalTypes);
+					// leaves are unions of an exact "NULLABLE" mode only, so a missing or lower case mode changes the avro field too
+					if (mode(before).equals(mode(field)) && !patched.schema().equals(avroField.schema()))
+						changes.add(new Change(Change.Kind.MODE_CHANGED, path, before, field));
+					level.patch(i, patched);
+				}
+				continue;
+			}
+			if (level.matched < level.previousFields.size())
+				removed(level, changes);
+			if (stack.isEmpty()) {
+				if (!level.changed)
+					return new SchemaEvolution(changes, previousSchema);
+				return new SchemaEvolution(changes, Schema.createRecord(previousSchema.getName(), previousSchema.getDoc(),
+						previousSchema.getNamespace(), false, level.patched()));
+			}
+			final Level parent = stack.pop();
+			if (level.changed)
+				parent.patch(parent.next - 1, AvroSchemaObject.toField(level.field, parent.namespace, level.patched()));
+			level = parent;
+		}
+	}
+
+	private static void removed(Level level, List<Change> changes) {
+		final Set<String> names = new HashSet<>();
+		for (TableFieldSchema field : level.fields) {
+			names.add(field.getName());
+		}
+		for (TableFieldSchema field : level.previousFields.values()) {
+			if (!names.contains(field.getName()))
+				changes.add(new Change(Change.Kind.REMOVED, level.path(field.getName()), field, null));
+		}
+		level.changed = true;
+	}
+
+	private static Schema record(Schema fieldSchema) {
+		final Schema record = fieldSchema.getType() == Type.ARRAY ? fieldSchema.getElementType()
+				: fieldSchema.getType() == Type.UNION ? fieldSchema.getTypes().get(0) : fieldSchema;
+		verify(record.getType() == Type.RECORD, "Avro schema %s is not a record", fieldSchema);
+		return record;
+	}
+
+	private static String mode(TableFieldSchema field) {
+		// the mode is optional, and defaults to "NULLABLE"
+		return field.getMode() == null ? NULLABLE : field.getMode().toUpperCase();
+	}
+
+	/**
+	 * A record being compared: its previous and new Bigquery fields, its previous avro record and the fields patched so far.
+	 */
+	private static final class Level {
+		// null for the root
+		final TableFieldSchema field;
+		final Schema record;
+		// namespace of the records declared at this level
+		final String namespace;
+		// null for the root
+		final String path;
+		final List<TableFieldSchema> fields;
+		final Map<String, TableFieldSchema> previousFields = new LinkedHashMap<>();
+		// null where the previous avro field is kept
+		final Field[] patched;
+		boolean changed;
+		int matched;
+		int next;
+
+		Level(TableFieldSchema field, Schema record, String namespace, String path,
+				List<TableFieldSchema> previousFields, List<TableFieldSchema> fields) {
+			this.field = field;
+			this.record = record;
+			this.namespace = namespace;
+			this.path = path;
+			this.fields = fields == null ? Collections.<TableFieldSchema>emptyList() : fields;
+			if (previousFields != null) {
+				for (TableFieldSchema previousField : previousFields) {
+					this.previousFields.put(previousField.getName(), previousField);
+				}
+			}
+			this.patched = new Field[this.fields.size()];
+		}
+
+		String path(String name) {
+			return path == null ? name : path + '.' + name;
+		}
+
+		void patch(int i, Field field) {
+			patched[i] = field;
+			changed = true;
+		}
+
+		/**
+		 * Returns the new fields of the record, copying the kept avro fields: a field belongs to a single record.
+		 */
+		List<Field> patched() {
+			final List<Field> result = new ArrayList<>(patched.length);
+			for (int i = 0; i < patched.length; i++) {
+				if (patched[i] != null) {
+					result.add(patched[i]);
+				} else {
+					final Field kept = record.getField(fields.get(i).getName());
+					result.add(new Schema.Field(kept.name(), kept.schema(), kept.doc(), kept.defaultVal()));
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the changes, in depth first order, the fields removed from a record coming after its other changes. The fields of an added or
+	 * removed record are not listed.
+	 */
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	public boolean isUnchanged() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Returns the avro schema of the new table schema.
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Returns true when json readers compiled for the previous avro schema read the records of the new table without errors.
+	 */
+	public boolean canKeepReaders() {
+		for (Change change : changes) {
+			if (!change.keepsReaders())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true when the converters compiled for the previous schemas build valid rows of the new table.
+	 */
+	public boolean canKeepConverters() {
+		for (Change change : changes) {
+			if (!change.keepsConverters())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "SchemaEvolution " + changes;
+	}
+
+	/**
+	 * A change of a field, given by its dotted path.
+	 */
+	public static final class Change {
+
+		public enum Kind {
+			ADDED, REMOVED,
+			// from REQUIRED to NULLABLE
+			RELAXED,
+			// any other change of mode
+			MODE_CHANGED, TYPE_CHANGED, DESCRIPTION_CHANGED
+		}
+
+		private final Kind kind;
+		private final String path;
+		private final TableFieldSchema previous;
+		private final TableFieldSchema next;
+
+		private Change(Kind kind, String path, TableFieldSchema previous, TableFieldSchema next) {
+			this.kind = kind;
+			this.path = path;
+			this.previous = previous;
+			this.next = next;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns the previous field, null when added.
+		 */
+		public TableFieldSchema getPrevious() {
+			return previous;
+		}
+
+		/**
+		 * Returns the new field, null when removed.
+		 */
+		public TableFieldSchema getNext() {
+			return next;
+		}
+
+		boolean keepsReaders() {
+			switch (kind) {
+			case ADDED:
+			case DESCRIPTION_CHANGED:
+				// unknown json fields are skipped
+				return true;
+			case REMOVED:
+				// missing json fields are read as null when nullable, which leaves are for an exact "NULLABLE" mode only
+				return AvroSchemaObject.getType(previous.getType()) == Type.RECORD ? NULLABLE.equals(mode(previous))
+						: NULLABLE.equals(previous.getMode());
+			case MODE_CHANGED:
+				return NULLABLE.equals(mode(previous)) && REQUIRED.equals(mode(next));
+			default:
+				return false;
+			}
+		}
+
+		boolean keepsConverters() {
+			switch (kind) {
+			case ADDED:
+				return !REQUIRED.equals(mode(next));
+			case RELAXED:
+			case DESCRIPTION_CHANGED:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + path;
+		}
+	}
+
+}
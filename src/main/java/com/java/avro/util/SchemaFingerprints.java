@@ -0,0 +1,98 @@
+package com.java.avro.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * 64-bit fingerprints keying the schema conversion caches. <br>
+ * All are the Avro CRC-64 ({@link SchemaNormalization#fingerprint64(byte[])}): of the parsing canonical form or of the whole json form for
+ * avro schemas, and of a canonical encoding of every attribute the conversion reads for Bigquery schemas.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+final class SchemaFingerprints {
+
+	// parsing forms are costly to build for wide schemas, a schema instance is only fingerprinted once
+	private static final Cache<Schema, Long> AVRO_FINGERPRINTS = CacheBuilder.newBuilder()
+			.weakKeys()
+			.maximumSize(1024)
+			.build();
+
+	private static final Cache<Schema, Long> CONVERSION_FINGERPRINTS = CacheBuilder.newBuilder()
+			.weakKeys()
+			.maximumSize(1024)
+			.build();
+
+	private SchemaFingerprints() {
+	}
+
+	/**
+	 * Fingerprint of the parsing canonical form: names, types, fields, symbols and sizes, but not docs, defaults nor properties.
+	 */
+	static long fingerprint(Schema schema) {
+		Long fingerprint = AVRO_FINGERPRINTS.getIfPresent(schema);
+		if (fingerprint == null) {
+			fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+			AVRO_FINGERPRINTS.put(schema, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Fingerprint of the whole json form, properties included: unlike the parsing canonical form it tells apart the logical types a value
+	 * conversion depends on, a <code>date</code> from a plain <code>int</code> or two decimal scales.
+	 */
+	static long conversionFingerprint(Schema schema) {
+		Long fingerprint = CONVERSION_FINGERPRINTS.getIfPresent(schema);
+		if (fingerprint == null) {
+			fingerprint = SchemaNormalization.fingerprint64(schema.toString().getBytes(StandardCharsets.UTF_8));
+			CONVERSION_FINGERPRINTS.put(schema, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Fingerprint of the names, types, modes and descriptions of the fields, recursively.
+	 */
+	static long fingerprint(TableSchema schema) {
+		final StringBuilder canonical = new StringBuilder();
+		append(canonical, schema.getFields());
+		return SchemaNormalization.fingerprint64(canonical.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void append(StringBuilder canonical, List<TableFieldSchema> fields) {
+		if (fields == null) {
+			canonical.append('-');
+			return;
+		}
+		canonical.append('[');
+		for (TableFieldSchema field : fields) {
+			append(canonical, field.getName());
+			append(canonical, field.getType());
+			append(canonical, field.getMode());
+			append(canonical, field.getDescription());
+			append(canonical, field.getFields());
+		}
+		canonical.append(']');
+	}
+
+	/**
+	 * Length-prefixed, so that no two sequences of values share an encoding.
+	 */
+	private static void append(StringBuilder canonical, String value) {
+		if (value == null)
+			canonical.append('-');
+		else
+			canonical.append(value.length()).append(':').append(value);
+	}
+
+}
@@ -0,0 +1,173 @@
+package com.java.avro.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+
+/**
+ * Converts batches of {@link GenericRecord} to {@link TableRow} in parallel, handing the rows back in the input order. <br>
+ * The input is cut into slices of {@link #withSliceSize(int) sliceSize} records, converted on the {@link #withExecutor(Executor) executor}
+ * (the common fork-join pool by default, or any other executor, such as a virtual thread one where the runtime has them). At most
+ * {@link #withMaxSlicesInFlight(int) maxSlicesInFlight} slices are pending at any time: the producer waits for the oldest one before
+ * submitting more, so an iterator input is consumed at the pace of the conversion. <br>
+ * Rows follow the rules of {@link AvroUtils#convertGenericRecordToTableRow(GenericRecord, TableSchema)} and the compiled
+ * {@link TableRowConverter} is looked up once per slice, not once per record. Inputs no larger than a slice are converted on the calling
+ * thread. The first failing record fails the whole batch, with its exception.
+ *
+ * <br>
+ * <strong>Note:</strong> instances are immutable, the <code>with*</code> methods return a configured copy.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class TableRowBatchConverter {
+
+	private static final int DEFAULT_SLICE_SIZE = 256;
+
+	private final Executor executor;
+	private final int sliceSize;
+	private final int maxSlicesInFlight;
+	private final FieldProjection projection;
+
+	private TableRowBatchConverter(Executor executor, int sliceSize, int maxSlicesInFlight, FieldProjection projection) {
+		if (sliceSize < 1 || maxSlicesInFlight < 1)
+			throw new IllegalArgumentException("sliceSize and maxSlicesInFlight must be positive");
+		if (executor == null || projection == null)
+			throw new NullPointerException("executor and projection must not be null");
+		this.executor = executor;
+		this.sliceSize = sliceSize;
+		this.maxSlicesInFlight = maxSlicesInFlight;
+		this.projection = projection;
+	}
+
+	/**
+	 * Returns a batch converter running on the common fork-join pool, with 256 records slices, twice as many slices in flight as pool threads
+	 * and no projection.
+	 */
+	public static TableRowBatchConverter create() {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		return new TableRowBatchConverter(pool, DEFAULT_SLICE_SIZE, 2 * pool.getParallelism(), FieldProjection.all());
+	}
+
+	/**
+	 * Returns a copy running on the given executor, which is not shut down by the converter.
+	 */
+	public TableRowBatchConverter withExecutor(Executor executor) {
+		return new TableRowBatchConverter(executor, sliceSize, maxSlicesInFlight, projection);
+	}
+
+	public TableRowBatchConverter withSliceSize(int sliceSize) {
+		return new TableRowBatchConverter(executor, sliceSize, maxSlicesInFlight, projection);
+	}
+
+	public TableRowBatchConverter withMaxSlicesInFlight(int maxSlicesInFlight) {
+		return new TableRowBatchConverter(executor, sliceSize, maxSlicesInFlight, projection);
+	}
+
+	/**
+	 * Returns a copy converting the projected fields only, see {@link AvroUtils#convertGenericRecordToTableRow(GenericRecord, TableSchema,
+	 * FieldProjection)}.
+	 */
+	public TableRowBatchConverter withProjection(FieldProjection projection) {
+		return new TableRowBatchConverter(executor, sliceSize, maxSlicesInFlight, projection);
+	}
+
+	/**
+	 * Converts the records, returning the rows in the same order.
+	 *
+	 * @param records records to convert, not modified
+	 * @param schema Bigquery schema of the rows
+	 * @return the converted rows
+	 */
+	public List<TableRow> convert(List<? extends GenericRecord> records, TableSchema schema) {
+		if (records.size() <= sliceSize)
+			return convertSlice(records, schema);
+		final List<TableRow> rows = new ArrayList<>(records.size());
+		final OrderedTaskWindow<List<TableRow>> window = new OrderedTaskWindow<>(executor, maxSlicesInFlight, rows::addAll);
+		run(window, () -> {
+			for (int start = 0; start < records.size(); start += sliceSize) {
+				final List<? extends GenericRecord> slice = records.subList(start, Math.min(start + sliceSize, records.size()));
+				window.submit(() -> convertSlice(slice, schema));
+			}
+		});
+		return rows;
+	}
+
+	/**
+	 * Converts the records as they come from the iterator, handing the rows to the sink in the same order, on the calling thread.
+	 *
+	 * @param records records to convert
+	 * @param schema Bigquery schema of the rows
+	 * @param sink receives the rows in the input order
+	 * @return the number of rows converted
+	 */
+	public long convert(Iterator<? extends GenericRecord> records, TableSchema schema, Consumer<? super TableRow> sink) {
+		final long[] count = { 0 };
+		final OrderedTaskWindow<List<TableRow>> window = new OrderedTaskWindow<>(executor, maxSlicesInFlight, rows -> {
+			rows.forEach(sink);
+			count[0] += rows.size();
+		});
+		run(window, () -> {
+			while (records.hasNext()) {
+				final List<GenericRecord> slice = new ArrayList<>(sliceSize);
+				while (slice.size() < sliceSize && records.hasNext()) {
+					slice.add(records.next());
+				}
+				window.submit(() -> convertSlice(slice, schema));
+			}
+		});
+		return count[0];
+	}
+
+	private List<TableRow> convertSlice(List<? extends GenericRecord> records, TableSchema schema) {
+		return convertSlice(records, schema, projection);
+	}
+
+	/**
+	 * Converts the records on the calling thread.
+	 */
+	static List<TableRow> convertSlice(List<? extends GenericRecord> records, TableSchema schema, FieldProjection projection) {
+		final List<TableRow> rows = new ArrayList<>(records.size());
+		Schema avroSchema = null;
+		TableRowConverter converter = null;
+		for (GenericRecord record : records) {
+			// batches are usually of a single schema, the cache is only asked again when it changes
+			if (record.getSchema() != avroSchema) {
+				avroSchema = record.getSchema();
+				converter = AvroUtils.getConverter(avroSchema, schema, projection);
+			}
+			rows.add(converter.convert(record));
+		}
+		return rows;
+	}
+
+	private interface Producer {
+		void run() throws IOException;
+	}
+
+	private static void run(OrderedTaskWindow<?> window, Producer producer) {
+		try {
+			producer.run();
+			window.finish();
+		} catch (IOException ex) {
+			// the sinks do not throw it
+			window.cancel();
+			throw new UncheckedIOException(ex);
+		} catch (RuntimeException ex) {
+			window.cancel();
+			throw ex;
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.java.avro.util;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.java.avro.util.ConversionMetrics.Operation;
+
+/**
+ * {@link GenericRecord} to {@link TableRow} conversion compiled for one (avro schema, {@link TableSchema}) pair. <br>
+ * The schemas are matched and validated once, when compiling: every Bigquery field is resolved to its avro field position and to a converter
+ * for its mode and type, kept in flat arrays walked for each row. The conversion rules are the ones of
+ * {@link AvroUtils#convertGenericRecordToTableRow(GenericRecord, TableSchema)}, which caches instances of this class.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> a converter is immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class TableRowConverter {
+
+	private final String[] names;
+	private final int[] positions;
+	private final Schema.Type[] types;
+	private final ValueConverter[] converters;
+
+	private TableRowConverter(Schema avroSchema, List<TableFieldSchema> fields, FieldProjection.Scope scope) {
+		final List<String> names = new ArrayList<>();
+		final List<Integer> positions = new ArrayList<>();
+		final List<Schema.Type> types = new ArrayList<>();
+		final List<ValueConverter> converters = new ArrayList<>();
+		if (fields != null) {
+			for (TableFieldSchema fieldSchema : fields) {
+				// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the name field
+				// is required, so it may not be null.
+				final FieldProjection.Scope fieldScope = scope.field(fieldSchema.getName());
+				if (fieldScope == null)
+					continue;
+				final Schema.Field field = verifyNotNull(avroSchema.getField(fieldSchema.getName()),
+						"Avro schema %s has no field for BigQuery field %s", avroSchema.getFullName(), fieldSchema.getName());
+				names.add(field.name());
+				positions.add(field.pos());
+				types.add(Metrics.fieldType(field.schema()));
+				converters.add(forMode(field.schema(), fieldSchema, fieldScope));
+			}
+		}
+		this.names = names.toArray(new String[names.size()]);
+		this.positions = positions.stream().mapToInt(Integer::intValue).toArray();
+		this.types = types.toArray(new Schema.Type[types.size()]);
+		this.converters = converters.toArray(new ValueConverter[converters.size()]);
+	}
+
+	/**
+	 * Compiles the conversion of records of the given avro schema to rows of the given table schema.
+	 *
+	 * @throws com.google.common.base.VerifyException when the schemas do not match
+	 * @throws UnsupportedOperationException on unknown Bigquery modes
+	 */
+	public static TableRowConverter compile(Schema avroSchema, TableSchema schema) {
+		return compile(avroSchema, schema, FieldProjection.all());
+	}
+
+	/**
+	 * Compiles the conversion of the projected fields only: the other Bigquery fields are neither read from the records nor set on the rows,
+	 * and need not be in the avro schema.
+	 *
+	 * @throws com.google.common.base.VerifyException when the schemas do not match
+	 * @throws UnsupportedOperationException on unknown Bigquery modes
+	 */
+	public static TableRowConverter compile(Schema avroSchema, TableSchema schema, FieldProjection projection) {
+		return new TableRowConverter(avroSchema, schema.getFields(), projection.root());
+	}
+
+	public TableRow convert(GenericRecord record) {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		try {
+			final TableRow row = fill(record, metrics);
+			Metrics.succeeded(metrics, Operation.TABLE_ROW, start, 0, 0);
+			return row;
+		} catch (RuntimeException ex) {
+			Metrics.failed(metrics, Operation.TABLE_ROW, ex);
+			throw ex;
+		}
+	}
+
+	private TableRow fill(GenericRecord record, ConversionMetrics metrics) {
+		final TableRow row = new TableRow();
+		for (int i = 0; i < converters.length; i++) {
+			if (metrics != ConversionMetrics.NOOP)
+				metrics.onField(types[i]);
+			final Object convertedValue = converters[i].convert(record.get(positions[i]));
+			if (convertedValue != null) {
+				// To match the JSON files exported by BigQuery, do not include null values in the output.
+				row.set(names[i], convertedValue);
+			}
+		}
+		return row;
+	}
+
+	private static ValueConverter forMode(Schema schema, TableFieldSchema fieldSchema, FieldProjection.Scope scope) {
+		// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the mode field
+		// is optional (and so it may be null), but defaults to "NULLABLE".
+		final String mode = firstNonNull(fieldSchema.getMode(), "NULLABLE");
+		switch (mode) {
+		case "REQUIRED":
+			return required(schema, fieldSchema, scope);
+		case "REPEATED":
+			return repeated(schema, fieldSchema, scope);
+		case "NULLABLE":
+			return nullable(schema, fieldSchema, scope);
+		default:
+			throw new UnsupportedOperationException(
+					"Parsing a field with BigQuery field schema mode " + fieldSchema.getMode());
+		}
+	}
+
+	private static ValueConverter repeated(Schema schema, TableFieldSchema fieldSchema, FieldProjection.Scope scope) {
+		verify(
+				schema.getType() == Schema.Type.ARRAY,
+				"BigQuery REPEATED field %s should be Avro ARRAY, not %s",
+				fieldSchema.getName(),
+				schema.getType());
+		// REPEATED fields are represented as Avro arrays.
+		final ValueConverter element = required(schema.getElementType(), fieldSchema, scope);
+		// a primitive array already holding the converted values is copied without boxing its elements one by one
+		final Class<?> converted = ValueConversion.resolve(schema.getElementType(), fieldSchema).primitiveArray();
+		return v -> {
+			if (v == null) {
+				// Handle the case of an empty repeated field.
+				return ImmutableList.of();
+			}
+			if (v.getClass() == converted)
+				return ((PrimitiveArray<?>) v).toList();
+			final ImmutableList.Builder<Object> values = ImmutableList.builder();
+			for (Object value : (List<?>) v) {
+				values.add(element.convert(value));
+			}
+			return values.build();
+		};
+	}
+
+	private static ValueConverter nullable(Schema schema, TableFieldSchema fieldSchema, FieldProjection.Scope scope) {
+		// NULLABLE fields are represented as an Avro Union of the corresponding type and "null".
+		verify(
+				schema.getType() == Schema.Type.UNION,
+				"Expected Avro schema type UNION, not %s, for BigQuery NULLABLE field %s",
+				schema.getType(),
+				fieldSchema.getName());
+		final List<Schema> unionTypes = schema.getTypes();
+		verify(
+				unionTypes.size() == 2,
+				"BigQuery NULLABLE field %s should be an Avro UNION of NULL and another type, not %s",
+				fieldSchema.getName(),
+				unionTypes);
+		final Schema valueSchema = unionTypes.get(0).getType() != Schema.Type.NULL ? unionTypes.get(0) : unionTypes.get(1);
+		final ValueConverter value = required(valueSchema, fieldSchema, scope);
+		return v -> v == null ? null : value.convert(v);
+	}
+
+	private static ValueConverter required(Schema schema, TableFieldSchema fieldSchema, FieldProjection.Scope scope) {
+		// REQUIRED fields are represented as the corresponding Avro types. For example, a BigQuery
+		// INTEGER type maps to an Avro LONG type.
+		final String name = fieldSchema.getName();
+		// resolved once per column, each pair gets its own lambda calling its conversion directly, not one shared by all the pairs
+		switch (ValueConversion.resolve(schema, fieldSchema)) {
+		case RECORD:
+			final TableRowConverter nested = new TableRowConverter(schema, fieldSchema.getFields(), scope);
+			return v -> {
+				checkRequired(v, name);
+				if (!(v instanceof GenericRecord))
+					throw new VerifyException("Expected GenericRecord, got " + v.getClass());
+				return nested.fill((GenericRecord) v, Metrics.installed);
+			};
+		case BOOLEAN:
+			return v -> ValueConversion.BOOLEAN.convert(checkRequired(v, name));
+		case BYTES:
+			return v -> ValueConversion.BYTES.convert(checkRequired(v, name));
+		case FIXED_TO_BYTES:
+			return v -> ValueConversion.FIXED_TO_BYTES.convert(checkRequired(v, name));
+		case ENUM_TO_STRING:
+			return v -> ValueConversion.ENUM_TO_STRING.convert(checkRequired(v, name));
+		case STRING:
+			return v -> ValueConversion.STRING.convert(checkRequired(v, name));
+		case DATE:
+			return v -> ValueConversion.DATE.convert(checkRequired(v, name));
+		case TIME_MICROS:
+			return v -> ValueConversion.TIME_MICROS.convert(checkRequired(v, name));
+		case LOCAL_TIMESTAMP_MICROS:
+			return v -> ValueConversion.LOCAL_TIMESTAMP_MICROS.convert(checkRequired(v, name));
+		case DECIMAL:
+			// the scale is taken from the schema
+			final ValueConverter decimal = ValueConversion.DECIMAL.converter(schema);
+			return v -> decimal.convert(checkRequired(v, name));
+		case DOUBLE_TO_FLOAT:
+			return v -> ValueConversion.DOUBLE_TO_FLOAT.convert(checkRequired(v, name));
+		case FLOAT:
+			return v -> ValueConversion.FLOAT.convert(checkRequired(v, name));
+		case INT_TO_INTEGER:
+			return v -> ValueConversion.INT_TO_INTEGER.convert(checkRequired(v, name));
+		case LONG_TO_INTEGER:
+			return v -> ValueConversion.LONG_TO_INTEGER.convert(checkRequired(v, name));
+		case LONG_TO_TIMESTAMP:
+			return v -> ValueConversion.LONG_TO_TIMESTAMP.convert(checkRequired(v, name));
+		default:
+			throw new UnsupportedOperationException("Converting a BigQuery " + fieldSchema.getType() + " field from Avro " + schema.getType());
+		}
+	}
+
+	private static Object checkRequired(Object v, String name) {
+		if (v == null)
+			throw new NullPointerException("REQUIRED field " + name + " should not be null");
+		return v;
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.java.avro.util;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.api.services.bigquery.model.TableRow;
+import com.google.api.services.bigquery.model.TableSchema;
+import com.java.avro.util.ConversionMetrics.Operation;
+
+/**
+ * Avro binary to Bigquery json transcoding compiled for one (avro schema, {@link TableSchema}) pair. <br>
+ * Each record is read from a {@link Decoder} and written straight to a {@link JsonGenerator} as the json object of its {@link TableRow},
+ * without materializing the record nor the row. The schemas are matched and validated when compiling, as {@link TableRowConverter} does, and
+ * the output follows the same rules: null values are omitted, BYTES are base64 encoded, TIMESTAMP values and avro logical types are
+ * formatted as strings. Avro fields that are not in the table schema are skipped. <br>
+ * Keys are written in the order of the avro schema, which is the Bigquery order when the avro schema comes from
+ * {@link BigQuerySchemaConverter}.
+ * <br>
+ * <br>
+ * <strong>Note:</strong> a transcoder is immutable and can be shared across threads.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class TableRowJsonTranscoder {
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	// one per avro field, in the avro schema order
+	private final ValueTranscoder[] fields;
+
+	private TableRowJsonTranscoder(Schema avroSchema, List<TableFieldSchema> fields) {
+		final Map<String, TableFieldSchema> byName = new HashMap<>();
+		if (fields != null) {
+			for (TableFieldSchema fieldSchema : fields) {
+				// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the name field
+				// is required, so it may not be null.
+				verifyNotNull(avroSchema.getField(fieldSchema.getName()),
+						"Avro schema %s has no field for BigQuery field %s", avroSchema.getFullName(), fieldSchema.getName());
+				byName.put(fieldSchema.getName(), fieldSchema);
+			}
+		}
+		final List<Schema.Field> avroFields = avroSchema.getFields();
+		this.fields = new ValueTranscoder[avroFields.size()];
+		for (Schema.Field field : avroFields) {
+			final TableFieldSchema fieldSchema = byName.get(field.name());
+			this.fields[field.pos()] = fieldSchema == null ? skip(field.schema()) : forMode(field.schema(), fieldSchema);
+		}
+	}
+
+	/**
+	 * Compiles the transcoding of records of the given avro schema to rows of the given table schema.
+	 *
+	 * @throws com.google.common.base.VerifyException when the schemas do not match
+	 * @throws UnsupportedOperationException on unknown Bigquery modes
+	 */
+	public static TableRowJsonTranscoder compile(Schema avroSchema, TableSchema schema) {
+		return new TableRowJsonTranscoder(avroSchema, schema.getFields());
+	}
+
+	/**
+	 * Reads the next record from the decoder and writes it as a json object.
+	 *
+	 * @param in decoder positioned on a record of the compiled avro schema
+	 * @param out generator, not flushed
+	 * @throws IOException when the decoder or the generator fail
+	 */
+	public void transcode(Decoder in, JsonGenerator out) throws IOException {
+		final ConversionMetrics metrics = Metrics.installed;
+		final long start = Metrics.start(metrics);
+		try {
+			out.writeStartObject();
+			transcodeFields(in, out, SCRATCH.get());
+			out.writeEndObject();
+			Metrics.succeeded(metrics, Operation.TABLE_ROW_JSON, start, 0, 0);
+		} catch (IOException | RuntimeException ex) {
+			Metrics.failed(metrics, Operation.TABLE_ROW_JSON, ex);
+			throw ex;
+		}
+	}
+
+	private void transcodeFields(Decoder in, JsonGenerator out, Scratch scratch) throws IOException {
+		for (ValueTranscoder field : fields) {
+			field.transcode(in, out, scratch);
+		}
+	}
+
+	/**
+	 * Buffers reused by the values of a record, one instance per thread.
+	 */
+	private static final class Scratch {
+		Utf8 string = new Utf8();
+		ByteBuffer bytes;
+		byte[] fixed = new byte[16];
+		// room for the slow path of the timestamp formatter too
+		final char[] timestamp = new char[2 * TimestampFormatter.MAX_LENGTH];
+
+		byte[] fixed(int size) {
+			if (fixed.length < size)
+				fixed = new byte[size];
+			return fixed;
+		}
+	}
+
+	private interface ValueTranscoder {
+		void transcode(Decoder in, JsonGenerator out, Scratch scratch) throws IOException;
+	}
+
+	private static ValueTranscoder skip(Schema schema) {
+		return (in, out, scratch) -> GenericDatumReader.skip(schema, in);
+	}
+
+	private static ValueTranscoder forMode(Schema schema, TableFieldSchema fieldSchema) {
+		final SerializableString name = new SerializedString(fieldSchema.getName());
+		// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the mode field
+		// is optional (and so it may be null), but defaults to "NULLABLE".
+		final String mode = firstNonNull(fieldSchema.getMode(), "NULLABLE");
+		switch (mode) {
+		case "REQUIRED":
+			final ValueTranscoder required = required(schema, fieldSchema);
+			return (in, out, scratch) -> {
+				out.writeFieldName(name);
+				required.transcode(in, out, scratch);
+			};
+		case "REPEATED":
+			return repeated(name, schema, fieldSchema);
+		case "NULLABLE":
+			return nullable(name, schema, fieldSchema);
+		default:
+			throw new UnsupportedOperationException(
+					"Parsing a field with BigQuery field schema mode " + fieldSchema.getMode());
+		}
+	}
+
+	private static ValueTranscoder repeated(SerializableString name, Schema schema, TableFieldSchema fieldSchema) {
+		verify(
+				schema.getType() == Schema.Type.ARRAY,
+				"BigQuery REPEATED field %s should be Avro ARRAY, not %s",
+				fieldSchema.getName(),
+				schema.getType());
+		// REPEATED fields are represented as Avro arrays, an empty one is still written.
+		final ValueTranscoder element = required(schema.getElementType(), fieldSchema);
+		return (in, out, scratch) -> {
+			out.writeFieldName(name);
+			out.writeStartArray();
+			for (long items = in.readArrayStart(); items != 0; items = in.arrayNext()) {
+				for (long i = 0; i < items; i++) {
+					element.transcode(in, out, scratch);
+				}
+			}
+			out.writeEndArray();
+		};
+	}
+
+	private static ValueTranscoder nullable(SerializableString name, Schema schema, TableFieldSchema fieldSchema) {
+		// NULLABLE fields are represented as an Avro Union of the corresponding type and "null".
+		verify(
+				schema.getType() == Schema.Type.UNION,
+				"Expected Avro schema type UNION, not %s, for BigQuery NULLABLE field %s",
+				schema.getType(),
+				fieldSchema.getName());
+		final List<Schema> unionTypes = schema.getTypes();
+		verify(
+				unionTypes.size() == 2,
+				"BigQuery NULLABLE field %s should be an Avro UNION of NULL and another type, not %s",
+				fieldSchema.getName(),
+				unionTypes);
+		final int valueIndex = unionTypes.get(0).getType() != Schema.Type.NULL ? 0 : 1;
+		final ValueTranscoder value = required(unionTypes.get(valueIndex), fieldSchema);
+		return (in, out, scratch) -> {
+			// To match the JSON files exported by BigQuery, do not include null values in the output.
+			if (in.readIndex() == valueIndex) {
+				out.writeFieldName(name);
+				value.transcode(in, out, scratch);
+			}
+		};
+	}
+
+	private static ValueTranscoder required(Schema schema, TableFieldSchema fieldSchema) {
+		// REQUIRED fields are represented as the corresponding Avro types. For example, a BigQuery
+		// INTEGER type maps to an Avro LONG type.
+		switch (ValueConversion.resolve(schema, fieldSchema)) {
+		case RECORD:
+			final TableRowJsonTranscoder nested = new TableRowJsonTranscoder(schema, fieldSchema.getFields());
+			return (in, out, scratch) -> {
+				out.writeStartObject();
+				nested.transcodeFields(in, out, scratch);
+				out.writeEndObject();
+			};
+		case BOOLEAN:
+			return (in, out, scratch) -> out.writeBoolean(in.readBoolean());
+		case BYTES:
+			return (in, out, scratch) -> {
+				final ByteBuffer bytes = scratch.bytes = in.readBytes(scratch.bytes);
+				out.writeBinary(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			};
+		case FIXED_TO_BYTES:
+			final int size = schema.getFixedSize();
+			return (in, out, scratch) -> {
+				final byte[] bytes = scratch.fixed(size);
+				in.readFixed(bytes, 0, size);
+				out.writeBinary(bytes, 0, size);
+			};
+		case ENUM_TO_STRING:
+			final List<String> symbols = schema.getEnumSymbols();
+			final SerializableString[] serialized = new SerializableString[symbols.size()];
+			for (int i = 0; i < serialized.length; i++) {
+				serialized[i] = new SerializedString(symbols.get(i));
+			}
+			return (in, out, scratch) -> out.writeString(serialized[in.readEnum()]);
+		case STRING:
+			return TableRowJsonTranscoder::string;
+		case DATE:
+			return (in, out, scratch) -> out.writeString(scratch.timestamp, 0, LogicalTypeFormats.formatDate(in.readInt(), scratch.timestamp, 0));
+		case TIME_MICROS:
+			return (in, out, scratch) -> out.writeString(scratch.timestamp, 0, LogicalTypeFormats.formatTime(in.readLong(), scratch.timestamp, 0));
+		case LOCAL_TIMESTAMP_MICROS:
+			return (in, out, scratch) -> out.writeString(scratch.timestamp, 0,
+					LogicalTypeFormats.formatDatetime(in.readLong(), scratch.timestamp, 0));
+		case DECIMAL:
+			final int scale = LogicalTypeFormats.scale(schema);
+			return (in, out, scratch) -> out.writeString(LogicalTypeFormats.formatDecimal(scratch.bytes = in.readBytes(scratch.bytes), scale));
+		case DOUBLE_TO_FLOAT:
+			return (in, out, scratch) -> out.writeNumber(in.readDouble());
+		case FLOAT:
+			return (in, out, scratch) -> out.writeNumber(in.readFloat());
+		case INT_TO_INTEGER:
+			return (in, out, scratch) -> out.writeNumber(in.readInt());
+		case LONG_TO_INTEGER:
+			return (in, out, scratch) -> out.writeNumber(in.readLong());
+		case LONG_TO_TIMESTAMP:
+			// TIMESTAMP data types are represented as Avro LONG types. They are converted back to
+			// Strings with variable-precision (up to six digits) to match the JSON files export
+			// by BigQuery.
+			return (in, out, scratch) -> out.writeString(scratch.timestamp, 0, TimestampFormatter.format(in.readLong(), scratch.timestamp, 0));
+		default:
+			throw new UnsupportedOperationException("Transcoding a BigQuery " + fieldSchema.getType() + " field from Avro " + schema.getType());
+		}
+	}
+
+	private static void string(Decoder in, JsonGenerator out, Scratch scratch) throws IOException {
+		final Utf8 string = scratch.string = in.readString(scratch.string);
+		// only the byte based generator takes the utf-8 bytes as they are
+		if (out instanceof UTF8JsonGenerator)
+			out.writeUTF8String(string.getBytes(), 0, string.getByteLength());
+		else
+			out.writeString(string.toString());
+	}
+
+}
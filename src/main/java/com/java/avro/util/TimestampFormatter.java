@@ -0,0 +1,140 @@
+package com.java.avro.util;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Formats Bigquery TIMESTAMP values, microseconds since the epoch, the way Bigquery json exports do: <code>yyyy-MM-dd HH:mm:ss[.ffffff] UTC</code>
+ * with trailing zeros dropped from the fraction. <br>
+ * The output is byte-identical to the Dataflow <code>AvroUtils.formatTimestamp</code>, including its double round trip on the microseconds,
+ * but the date is computed arithmetically into a <code>char[]</code> instead of going through reflection, an intermediate
+ * <code>Double</code>/<code>String</code> and <code>String.format</code>. Negative timestamps and years after 9999 fall back to the original
+ * algorithm.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+public final class TimestampFormatter {
+
+	/**
+	 * Longest output of the fast path: <code>yyyy-MM-dd HH:mm:ss.ffffff UTC</code>.
+	 */
+	public static final int MAX_LENGTH = 30;
+
+	private static final DateTimeFormatter DATE_AND_SECONDS_FORMATTER = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss").withZoneUTC();
+
+	private static final long MICROS_PER_SECOND = 1000000L;
+	private static final long SECONDS_PER_DAY = 86400L;
+	// 9999-12-31 23:59:59 UTC
+	private static final long MAX_FAST_SECONDS = 253402300799L;
+
+	private TimestampFormatter() {
+	}
+
+	public static String format(long timestampMicros) {
+		final long timestamp = roundTrip(timestampMicros);
+		if (!isFast(timestamp))
+			return formatSlow(timestamp);
+		final char[] buffer = new char[MAX_LENGTH];
+		return new String(buffer, 0, formatFast(timestamp, buffer, 0));
+	}
+
+	/**
+	 * Writes the formatted timestamp in the buffer, which must have room for {@link #MAX_LENGTH} chars or for the whole output of the slow
+	 * path.
+	 *
+	 * @return the number of chars written
+	 */
+	public static int format(long timestampMicros, char[] buffer, int offset) {
+		final long timestamp = roundTrip(timestampMicros);
+		if (isFast(timestamp))
+			return formatFast(timestamp, buffer, offset);
+		final String formatted = formatSlow(timestamp);
+		formatted.getChars(0, formatted.length(), buffer, offset);
+		return formatted.length();
+	}
+
+	/**
+	 * The Dataflow implementation divides the microseconds into a double of seconds, prints it and parses it back before multiplying again:
+	 * printing and parsing a double is lossless, the division and multiplication are reproduced as is.
+	 */
+	private static long roundTrip(long timestampMicros) {
+		final double seconds = timestampMicros / 1000000.0;
+		return (long) (seconds * 1000000.0);
+	}
+
+	private static boolean isFast(long timestamp) {
+		return timestamp >= 0 && timestamp / MICROS_PER_SECOND <= MAX_FAST_SECONDS;
+	}
+
+	private static int formatFast(long timestamp, char[] buffer, int offset) {
+		final long seconds = timestamp / MICROS_PER_SECOND;
+		int micros = (int) (timestamp % MICROS_PER_SECOND);
+		final long days = seconds / SECONDS_PER_DAY;
+		final int secondOfDay = (int) (seconds % SECONDS_PER_DAY);
+
+		// civil date from days since epoch, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+		final long z = days + 719468;
+		final long era = z / 146097;
+		final int dayOfEra = (int) (z - era * 146097);
+		final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final int mp = (5 * dayOfYear + 2) / 153;
+		final int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		final int month = mp < 10 ? mp + 3 : mp - 9;
+		final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+		int i = offset;
+		i = digits(buffer, i, year, 4);
+		buffer[i++] = '-';
+		i = digits(buffer, i, month, 2);
+		buffer[i++] = '-';
+		i = digits(buffer, i, day, 2);
+		buffer[i++] = ' ';
+		i = digits(buffer, i, secondOfDay / 3600, 2);
+		buffer[i++] = ':';
+		i = digits(buffer, i, secondOfDay / 60 % 60, 2);
+		buffer[i++] = ':';
+		i = digits(buffer, i, secondOfDay % 60, 2);
+		if (micros != 0) {
+			int width = 6;
+			while (micros % 10 == 0) {
+				width--;
+				micros /= 10;
+			}
+			buffer[i++] = '.';
+			i = digits(buffer, i, micros, width);
+		}
+		buffer[i++] = ' ';
+		buffer[i++] = 'U';
+		buffer[i++] = 'T';
+		buffer[i++] = 'C';
+		return i - offset;
+	}
+
+	/**
+	 * Writes a non-negative value zero-padded to the given width.
+	 */
+	private static int digits(char[] buffer, int offset, int value, int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + width;
+	}
+
+	private static String formatSlow(long timestamp) {
+		final long seconds = timestamp / MICROS_PER_SECOND;
+		int micros = (int) (timestamp % MICROS_PER_SECOND);
+		final String dayAndTime = DATE_AND_SECONDS_FORMATTER.print(seconds * 1000);
+		if (micros == 0)
+			return String.format("%s UTC", dayAndTime);
+		int width = 6;
+		while (micros % 10 == 0) {
+			width--;
+			micros /= 10;
+		}
+		return String.format("%s.%s UTC", dayAndTime, String.format(String.format("%%0%dd", width), micros));
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.java.avro.util;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+
+/**
+ * Precomputed branch lookup for a union schema. <br>
+ * Branches are grouped by the {@link Kind} of json value they can take, in declaration order, so resolving a value only tries branches that
+ * can actually accept it. When several record branches could take a json object, the one to try first is picked from the field names: a
+ * branch must find all its required fields in the object, and a branch knowing every key of the object is preferred. <br>
+ * Trying a branch only fails, through the <code>INCOMPATIBLE</code> sentinel or an exception, when the value really does not fit: that is
+ * the error path.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+final class UnionDispatch {
+
+	/**
+	 * Runtime kind of a materialized json value.
+	 */
+	enum Kind {
+		NULL, BOOLEAN, NUMBER, STRING, LIST, MAP, OTHER;
+
+		static Kind of(Object value) {
+			if (value == null)
+				return NULL;
+			if (value instanceof String)
+				return STRING;
+			if (value instanceof Number)
+				return NUMBER;
+			if (value instanceof Map)
+				return MAP;
+			if (value instanceof List)
+				return LIST;
+			if (value instanceof Boolean)
+				return BOOLEAN;
+			return OTHER;
+		}
+	}
+
+	private final List<Schema> types;
+	private final String expectedTypes;
+	private final int[][] candidates;
+	// per branch, only set for records and enums
+	private final String[][] requiredFields;
+	// by branch, null when not a record or an enum
+	private final List<Set<String>> fieldNames;
+	private final List<Set<String>> enumSymbols;
+	private final int recordBranches;
+
+	private UnionDispatch(Schema union) {
+		this.types = union.getTypes();
+		this.expectedTypes = types.stream().map(Schema::getType).map(Object::toString).collect(joining(", "));
+		this.requiredFields = new String[types.size()][];
+		this.fieldNames = new ArrayList<>(Collections.nCopies(types.size(), null));
+		this.enumSymbols = new ArrayList<>(Collections.nCopies(types.size(), null));
+
+		List<List<Integer>> byKind = new ArrayList<>();
+		for (int k = 0; k < Kind.values().length; k++) {
+			byKind.add(new ArrayList<>());
+		}
+		int records = 0;
+		for (int i = 0; i < types.size(); i++) {
+			Schema type = types.get(i);
+			for (Kind kind : accepted(type)) {
+				byKind.get(kind.ordinal()).add(i);
+			}
+			byKind.get(Kind.OTHER.ordinal()).add(i);
+			if (type.getType() == Type.RECORD) {
+				records++;
+				Set<String> names = new HashSet<>();
+				List<String> required = new ArrayList<>();
+				for (Field field : type.getFields()) {
+					names.add(field.name());
+					if (field.defaultVal() == null && !acceptsMissing(field.schema()))
+						required.add(field.name());
+				}
+				fieldNames.set(i, names);
+				requiredFields[i] = required.toArray(new String[required.size()]);
+			} else if (type.getType() == Type.ENUM) {
+				enumSymbols.set(i, new HashSet<>(type.getEnumSymbols()));
+			}
+		}
+		this.recordBranches = records;
+		this.candidates = new int[byKind.size()][];
+		for (int k = 0; k < candidates.length; k++) {
+			candidates[k] = byKind.get(k).stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+
+	static UnionDispatch of(Schema union) {
+		return new UnionDispatch(union);
+	}
+
+	/**
+	 * Json kinds a branch type can convert: numbers, temporal logical types included, are also parsed from strings and a null array is read as
+	 * an empty one.
+	 */
+	private static Kind[] accepted(Schema type) {
+		switch (type.getType()) {
+		case NULL:
+			return new Kind[] { Kind.NULL };
+		case BOOLEAN:
+			return new Kind[] { Kind.BOOLEAN };
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return new Kind[] { Kind.NUMBER, Kind.STRING };
+		case STRING:
+		case ENUM:
+			return new Kind[] { Kind.STRING };
+		case BYTES:
+			// only NUMERIC decimals are read from json
+			if (LogicalTypeFormats.Kind.of(type) == LogicalTypeFormats.Kind.DECIMAL)
+				return new Kind[] { Kind.NUMBER, Kind.STRING };
+			return new Kind[0];
+		case ARRAY:
+			return new Kind[] { Kind.LIST, Kind.NULL };
+		case RECORD:
+		case MAP:
+			return new Kind[] { Kind.MAP };
+		default:
+			return new Kind[0];
+		}
+	}
+
+	/**
+	 * A missing field is filled with null when nullable, which is what the readers do.
+	 */
+	private static boolean acceptsMissing(Schema schema) {
+		return schema.getType() == Type.UNION && schema.getTypes().stream().anyMatch(s -> s.getType() == Type.NULL);
+	}
+
+	Schema type(int branch) {
+		return types.get(branch);
+	}
+
+	String expectedTypes() {
+		return expectedTypes;
+	}
+
+	/**
+	 * Branches able to take a value of the given kind, in declaration order.
+	 */
+	int[] candidates(Kind kind) {
+		return candidates[kind.ordinal()];
+	}
+
+	/**
+	 * Returns the record branch to try first for a json object when the union has several, or -1 to follow declaration order.
+	 */
+	int preferred(Kind kind, Object value) {
+		if (kind != Kind.MAP || recordBranches < 2)
+			return -1;
+		Map<?, ?> map = (Map<?, ?>) value;
+		int firstComplete = -1;
+		for (int branch : candidates(kind)) {
+			if (requiredFields[branch] != null && hasRequired(branch, map)) {
+				if (fieldNames.get(branch).containsAll(map.keySet()))
+					return branch;
+				if (firstComplete < 0)
+					firstComplete = branch;
+			}
+		}
+		return firstComplete;
+	}
+
+	/**
+	 * Cheap check done before trying a branch: enum symbols and required record fields.
+	 */
+	boolean accepts(int branch, Object value) {
+		if (enumSymbols.get(branch) != null)
+			return enumSymbols.get(branch).contains(value);
+		if (requiredFields[branch] != null)
+			return value instanceof Map && hasRequired(branch, (Map<?, ?>) value);
+		return true;
+	}
+
+	private boolean hasRequired(int branch, Map<?, ?> map) {
+		for (String name : requiredFields[branch]) {
+			if (!map.containsKey(name))
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,274 @@
+package com.java.avro.util;
+
+import static com.google.common.base.Verify.verify;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericEnumSymbol;
+import org.apache.avro.generic.GenericFixed;
+
+import com.google.api.services.bigquery.model.TableFieldSchema;
+import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The (Bigquery type, avro type) pairs a value can be converted between, each with its own conversion of the non-null avro values to their
+ * {@link com.google.api.services.bigquery.model.TableRow} value. <br>
+ * The pair of a column is resolved once, when compiling, from a table precomputed by Bigquery type and indexed by avro type, so that a
+ * converter calls the conversion of its pair directly instead of switching on the Bigquery type of every value. The conversions follow the
+ * Bigquery json export rules: BYTES are base64 encoded, TIMESTAMP values and avro logical types are formatted as strings, and INT values of
+ * INTEGER columns are widened to longs as Bigquery integers are 64 bits. RECORD values are converted by the caller, field by field.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+enum ValueConversion implements ValueConverter {
+
+	RECORD(Schema.Type.RECORD, null, "RECORD") {
+		@Override
+		public Object convert(Object v) {
+			throw new UnsupportedOperationException("Records are converted field by field");
+		}
+	},
+	BOOLEAN(Schema.Type.BOOLEAN, null, "BOOLEAN") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Boolean))
+				throw unexpected("Boolean", v);
+			return v;
+		}
+	},
+	BYTES(Schema.Type.BYTES, null, "BYTES") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof ByteBuffer))
+				throw unexpected("ByteBuffer", v);
+			final ByteBuffer byteBuffer = (ByteBuffer) v;
+			final byte[] bytes = new byte[byteBuffer.limit()];
+			byteBuffer.get(bytes);
+			return BaseEncoding.base64().encode(bytes);
+		}
+	},
+	FIXED_TO_BYTES(Schema.Type.FIXED, null, "BYTES") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof GenericFixed))
+				throw unexpected("GenericFixed", v);
+			return BaseEncoding.base64().encode(((GenericFixed) v).bytes());
+		}
+	},
+	ENUM_TO_STRING(Schema.Type.ENUM, null, "STRING") {
+		@Override
+		public Object convert(Object v) {
+			// generic records hold symbols, specific records java enums
+			if (!(v instanceof GenericEnumSymbol || v instanceof Enum || v instanceof CharSequence))
+				throw unexpected("GenericEnumSymbol, Enum or CharSequence (String)", v);
+			return v.toString();
+		}
+	},
+	STRING(Schema.Type.STRING, null, "DATE", "DATETIME", "NUMERIC", "STRING", "TIME") {
+		@Override
+		public Object convert(Object v) {
+			// Avro will use a CharSequence to represent String objects, but it may not always use
+			// java.lang.String; for example, it may prefer org.apache.avro.util.Utf8.
+			if (!(v instanceof CharSequence || v instanceof GenericData.EnumSymbol))
+				throw unexpected("CharSequence (String) or GenericData.EnumSymbol", v);
+			return v.toString();
+		}
+	},
+	DATE(Schema.Type.INT, LogicalTypeFormats.Kind.DATE, "DATE") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Integer))
+				throw unexpected("Integer", v);
+			return LogicalTypeFormats.formatDate((Integer) v);
+		}
+	},
+	TIME_MICROS(Schema.Type.LONG, LogicalTypeFormats.Kind.TIME_MICROS, "TIME") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Long))
+				throw unexpected("Long", v);
+			return LogicalTypeFormats.formatTime((Long) v);
+		}
+	},
+	LOCAL_TIMESTAMP_MICROS(Schema.Type.LONG, LogicalTypeFormats.Kind.LOCAL_TIMESTAMP_MICROS, "DATETIME") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Long))
+				throw unexpected("Long", v);
+			return LogicalTypeFormats.formatDatetime((Long) v);
+		}
+	},
+	DECIMAL(Schema.Type.BYTES, LogicalTypeFormats.Kind.DECIMAL, "NUMERIC") {
+		@Override
+		public Object convert(Object v) {
+			return decimal(v, LogicalTypeFormats.NUMERIC_SCALE);
+		}
+
+		@Override
+		ValueConverter converter(Schema schema) {
+			final int scale = LogicalTypeFormats.scale(schema);
+			return scale == LogicalTypeFormats.NUMERIC_SCALE ? this : v -> decimal(v, scale);
+		}
+	},
+	DOUBLE_TO_FLOAT(Schema.Type.DOUBLE, null, "FLOAT") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Double || v instanceof Float))
+				throw unexpected("Double or Float", v);
+			return v;
+		}
+
+		@Override
+		Class<?> primitiveArray() {
+			return PrimitiveArray.DoubleArray.class;
+		}
+	},
+	FLOAT(Schema.Type.FLOAT, null, "FLOAT") {
+		@Override
+		public Object convert(Object v) {
+			if (!(v instanceof Double || v instanceof Float))
+				throw unexpected("Double or Float", v);
+			return v;
+		}
+
+		@Override
+		Class<?> primitiveArray() {
+			return PrimitiveArray.FloatArray.class;
+		}
+	},
+	INT_TO_INTEGER(Schema.Type.INT, null, "INTEGER") {
+		@Override
+		public Object convert(Object v) {
+			if (v instanceof Integer)
+				return ((Integer) v).longValue();
+			if (!(v instanceof Long))
+				throw unexpected("Integer or Long", v);
+			return v;
+		}
+	},
+	LONG_TO_INTEGER(Schema.Type.LONG, null, "INTEGER") {
+		@Override
+		public Object convert(Object v) {
+			if (v instanceof Long)
+				return v;
+			if (!(v instanceof Integer))
+				throw unexpected("Integer or Long", v);
+			return ((Integer) v).longValue();
+		}
+
+		@Override
+		Class<?> primitiveArray() {
+			return PrimitiveArray.LongArray.class;
+		}
+	},
+	LONG_TO_TIMESTAMP(Schema.Type.LONG, null, "TIMESTAMP") {
+		@Override
+		public Object convert(Object v) {
+			// TIMESTAMP data types are represented as Avro LONG types. They are converted back to
+			// Strings with variable-precision (up to six digits) to match the JSON files export
+			// by BigQuery.
+			if (!(v instanceof Long))
+				throw unexpected("Long", v);
+			return TimestampFormatter.format((Long) v);
+		}
+	};
+
+	// by Bigquery type, the pairs indexed by avro type ordinal
+	private static final ImmutableMap<String, ValueConversion[]> PAIRS;
+	// by Bigquery type, the accepted avro types in declaration order, for the error messages
+	private static final ImmutableMap<String, List<Schema.Type>> AVRO_TYPES;
+
+	static {
+		final Map<String, ValueConversion[]> pairs = new HashMap<>();
+		final Map<String, List<Schema.Type>> avroTypes = new HashMap<>();
+		for (ValueConversion conversion : values()) {
+			for (String bigQueryType : conversion.bigQueryTypes) {
+				pairs.computeIfAbsent(bigQueryType, t -> new ValueConversion[Schema.Type.values().length])[conversion.avroType.ordinal()] = conversion;
+				avroTypes.computeIfAbsent(bigQueryType, t -> new ArrayList<>()).add(conversion.avroType);
+			}
+		}
+		PAIRS = ImmutableMap.copyOf(pairs);
+		AVRO_TYPES = ImmutableMap.copyOf(avroTypes);
+	}
+
+	private final Schema.Type avroType;
+	// the logical type the avro schema must carry, null when any
+	private final LogicalTypeFormats.Kind logicalType;
+	private final String[] bigQueryTypes;
+
+	private ValueConversion(Schema.Type avroType, LogicalTypeFormats.Kind logicalType, String... bigQueryTypes) {
+		this.avroType = avroType;
+		this.logicalType = logicalType;
+		this.bigQueryTypes = bigQueryTypes;
+	}
+
+	/**
+	 * Converts a non-null value of the avro type of the pair.
+	 */
+	@Override
+	public abstract Object convert(Object v);
+
+	/**
+	 * Returns the conversion of the values of the given avro schema, which is the pair itself unless it depends on the schema.
+	 */
+	ValueConverter converter(Schema schema) {
+		return this;
+	}
+
+	/**
+	 * Returns the class of the {@link PrimitiveArray} whose elements are already the converted values, or null.
+	 */
+	Class<?> primitiveArray() {
+		return null;
+	}
+
+	/**
+	 * Returns the pair of the given avro schema and Bigquery field, checking that the avro type can hold the Bigquery type and carries the
+	 * logical type the Bigquery type is translated to, if any.
+	 *
+	 * @throws VerifyException when the avro schema does not match the field
+	 */
+	static ValueConversion resolve(Schema schema, TableFieldSchema fieldSchema) {
+		// Per https://cloud.google.com/bigquery/docs/reference/v2/tables#schema, the type field
+		// is required, so it may not be null.
+		final String bqType = fieldSchema.getType();
+		final ValueConversion[] pairs = verifyNotNull(bqType == null ? null : PAIRS.get(bqType), "Unsupported BigQuery type: %s", bqType);
+		final ValueConversion conversion = pairs[schema.getType().ordinal()];
+		verify(
+				conversion != null,
+				"Expected Avro schema type %s, not %s, for BigQuery %s field %s",
+				AVRO_TYPES.get(bqType),
+				schema.getType(),
+				bqType,
+				fieldSchema.getName());
+		verify(
+				conversion.logicalType == null || LogicalTypeFormats.Kind.of(schema) == conversion.logicalType,
+				"Expected Avro logical type %s, not %s, for BigQuery %s field %s",
+				conversion.logicalType,
+				schema,
+				bqType,
+				fieldSchema.getName());
+		return conversion;
+	}
+
+	private static String decimal(Object v, int scale) {
+		if (!(v instanceof ByteBuffer))
+			throw unexpected("ByteBuffer", v);
+		return LogicalTypeFormats.formatDecimal((ByteBuffer) v, scale);
+	}
+
+	private static VerifyException unexpected(String expected, Object v) {
+		return new VerifyException(String.format("Expected %s, got %s", expected, v.getClass()));
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.java.avro.util;
+
+/**
+ * Conversion of the avro values of a column to their {@link com.google.api.services.bigquery.model.TableRow} value: the non-null values of a
+ * {@link ValueConversion} pair, or the values of a field of any mode in a {@link TableRowConverter}.
+ *
+ * @author giuseppe.adaldo
+ *
+ */
+interface ValueConverter {
+
+	Object convert(Object v);
+
+}
@@ -4,7 +4,9 @@ import org.apache.avro.Schema
 
 import spock.lang.Specification
 
+import com.google.api.services.bigquery.model.TableFieldSchema
 import com.java.avro.util.AvroSchemaConverter
+import com.java.avro.util.FieldProjection
 
 class AvroSchemaConverterTest extends Specification {
 
@@ -490,4 +492,75 @@ class AvroSchemaConverterTest extends Specification {
 		assert internalNullableField.type == 'BYTES'
 		assert internalNullableField.mode == 'NULLABLE'
 	}
+
+	def "should cache table schemas by fingerprint and skipped fields"() {
+		given:
+		def schemaString = '''
+			{ 	"name": "cachedSchema",
+				"type": "record",
+				"fields": [
+					{ "name": "id", "type": "long" },
+					{ "name": "label", "type": ["string", "null"], "doc": "ignored by the fingerprint" }
+				]
+			}
+		'''
+		def hits = AvroSchemaConverter.getCacheStats().hitCount()
+
+		when:
+		def first = AvroSchemaConverter.toTableSchema(new Schema.Parser().parse(schemaString))
+		first.fields.get(0).name = 'mutated'
+		def second = AvroSchemaConverter.toTableSchema(new Schema.Parser().parse(schemaString))
+		def skipped = AvroSchemaConverter.toTableSchema(new Schema.Parser().parse(schemaString), 'label')
+
+		then:
+		AvroSchemaConverter.getCacheStats().hitCount() > hits
+		!second.is(first)
+		second.fields*.name == ['id', 'label']
+		skipped.fields*.name == ['id']
+	}
+
+	def "should skip and keep fields by dotted path"() {
+		given:
+		def avroSchema = new Schema.Parser().parse('''
+			{ 	"name": "projectedSchema",
+				"type": "record",
+				"fields": [
+					{ "name": "id", "type": "long" },
+					{ "name": "user", "type": { "name": "user", "type": "record", "fields": [
+						{ "name": "name", "type": "string" },
+						{ "name": "id", "type": "long" }
+					] } },
+					{ "name": "events", "type": { "type": "array", "items": { "name": "event", "type": "record", "fields": [
+						{ "name": "type", "type": "string" },
+						{ "name": "user", "type": ["null", "user"] }
+					] } } }
+				]
+			}
+		''')
+
+		expect:
+		names(AvroSchemaConverter.toTableSchema(avroSchema, FieldProjection.skipping('user.id')).fields) ==
+				['id', 'user(name)', 'events(type, user(name, id))']
+		names(AvroSchemaConverter.toTableSchema(avroSchema, FieldProjection.skipping('*.user.*')).fields) ==
+				['id', 'user(name, id)', 'events(type, user)']
+		names(AvroSchemaConverter.toTableSchema(avroSchema, FieldProjection.keeping('id', 'events.user.name')).fields) ==
+				['id', 'events(user(name))']
+		names(AvroSchemaConverter.toTableSchema(avroSchema, FieldProjection.keeping('events').andSkipping('id')).fields) ==
+				['events(type, user(name))']
+		// plain names keep their meaning of a field skipped at any depth
+		names(AvroSchemaConverter.toTableSchema(avroSchema, ['id']).fields) ==
+				['user(name)', 'events(type, user(name))']
+	}
+
+	def "should reject empty path segments"() {
+		when:
+		FieldProjection.skipping('user..id')
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+	private static List<String> names(List<TableFieldSchema> fields) {
+		fields.collect { it.fields == null ? it.name : it.name + '(' + names(it.fields).join(', ') + ')' }
+	}
 }
@@ -2,14 +2,22 @@ package com.groovy.avro.util.test
 
 import org.apache.avro.Schema
 import org.apache.avro.generic.GenericDatumReader
+import org.apache.avro.generic.GenericDatumWriter
 import org.apache.avro.io.Decoder
 import org.apache.avro.io.DecoderFactory
+import org.apache.avro.io.EncoderFactory
 
 import spock.lang.Specification
 
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.api.services.bigquery.model.Table
 import com.google.api.services.bigquery.model.TableFieldSchema
 import com.google.api.services.bigquery.model.TableSchema
 import com.java.avro.util.AvroUtils
+import com.java.avro.util.BigQuerySchemaConverter
+import com.java.avro.util.FieldProjection
+import com.java.avro.util.JsonGenericRecordReader
+import com.java.avro.util.PrimitiveArray
 
 class AvroUtilsTest extends Specification {
 
@@ -199,6 +207,35 @@ class AvroUtilsTest extends Specification {
 		assert tableRow.get("repeatedRecord") == ["arrayValue"]
 	}
 
+	def "should convert primitive numeric arrays to repeated values"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"type": "record",
+			"name": "Sensor",
+			"fields": [
+				{ "name": "readings", "type": { "type": "array", "items": "double" } },
+				{ "name": "counts", "type": { "type": "array", "items": "int" } }
+			]
+		}''')
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("readings").setType("FLOAT").setMode("REPEATED"),
+			new TableFieldSchema().setName("counts").setType("INTEGER").setMode("REPEATED")
+		])
+		def message = '{ "readings": [0.5, 1.5], "counts": [1, 2, 3] }'
+		def record = new JsonGenericRecordReader().compile(schema).read(message)
+
+		when:
+		def tableRow = AvroUtils.convertGenericRecordToTableRow(record, tableSchema)
+		record.get('counts').clear()
+
+		then:
+		record.get('readings') instanceof PrimitiveArray
+		tableRow.readings.equals([0.5d, 1.5d])
+		tableRow.counts.equals([1, 2, 3])
+		tableRow == AvroUtils.convertGenericRecordToTableRow(getRecord(schema, message), tableSchema)
+		new ObjectMapper().writeValueAsString(tableRow) == '{"readings":[0.5,1.5],"counts":[1,2,3]}'
+	}
+
 	def "should convert message to tableRow when message contains boolean, float, record, bytes, date, datetime and time"() {
 		given:
 		def schemaString = '''{
@@ -323,6 +360,254 @@ class AvroUtilsTest extends Specification {
 		e.message == 'Unsupported BigQuery type: UNEXPECTED'
 	}
 
+	def "should compile one converter per schema pair and validate it up front"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [ {
+				"name": "id",
+				"type": "long"
+			}, {
+				"name": "label",
+				"type": ["null", "string"]
+			} ]
+		}''')
+
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+			new TableFieldSchema().setName("label").setType("STRING").setMode("NULLABLE")
+		])
+
+		def badTableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("label").setType("BOOLEAN").setMode("NULLABLE")
+		])
+
+		when:
+		def converter = AvroUtils.getConverter(schema, tableSchema)
+		def rows = [1, 2].collect { AvroUtils.convertGenericRecordToTableRow(getRecord(schema, "{ \"id\": $it, \"label\": null }".toString()), tableSchema) }
+
+		then:
+		AvroUtils.getConverter(schema, tableSchema).is(converter)
+		AvroUtils.getConverter(new Schema.Parser().parse(schema.toString()), tableSchema.clone()).is(converter)
+		AvroUtils.getTranscoder(schema, tableSchema.clone()).is(AvroUtils.getTranscoder(schema, tableSchema))
+		rows == [[id: 1L], [id: 2L]]
+
+		when:
+		def mutated = tableSchema.clone()
+		AvroUtils.getConverter(schema, mutated)
+		mutated.getFields().get(0).setMode("NULLABLE")
+		AvroUtils.getConverter(schema, mutated)
+
+		then:
+		// the mutated schema is matched again: a NULLABLE field needs a union
+		def mismatch = thrown RuntimeException
+		mismatch.message == 'Expected Avro schema type UNION, not LONG, for BigQuery NULLABLE field id'
+		AvroUtils.getConverter(schema, tableSchema).is(converter)
+
+		when:
+		AvroUtils.getConverter(schema, badTableSchema)
+
+		then:
+		def e = thrown RuntimeException
+		e.message == 'Expected Avro schema type [BOOLEAN], not STRING, for BigQuery BOOLEAN field label'
+	}
+
+	def "should convert the projected fields only"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [ {
+				"name": "id",
+				"type": "long"
+			}, {
+				"name": "inner",
+				"type": { "name": "inner", "type": "record", "fields": [
+					{ "name": "label", "type": "string" },
+					{ "name": "size", "type": "long" }
+				] }
+			} ]
+		}''')
+
+		// the projected out size field is not even in the avro schema
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+			new TableFieldSchema().setName("inner").setType("RECORD").setMode("REQUIRED").setFields([
+				new TableFieldSchema().setName("label").setType("STRING").setMode("REQUIRED"),
+				new TableFieldSchema().setName("missing").setType("STRING").setMode("REQUIRED")
+			])
+		])
+		def record = getRecord(schema, '{ "id": 1, "inner": { "label": "a", "size": 2 } }')
+
+		when:
+		def row = AvroUtils.convertGenericRecordToTableRow(record, tableSchema, FieldProjection.skipping('inner.missing'))
+
+		then:
+		row == [id: 1L, inner: [label: 'a']]
+		AvroUtils.getConverter(schema, tableSchema, FieldProjection.skipping('inner.missing'))
+				.is(AvroUtils.getConverter(schema, tableSchema, FieldProjection.skipping('inner.missing')))
+		AvroUtils.convertGenericRecordToTableRow(record, tableSchema, FieldProjection.keeping('inner.label')) == [inner: [label: 'a']]
+	}
+
+	def "should transcode avro binary to the json of the table row"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [
+				{ "name": "id", "type": "long" },
+				{ "name": "ignored", "type": { "type": "map", "values": ["null", "string"] } },
+				{ "name": "label", "type": ["null", "string"] },
+				{ "name": "missing", "type": ["string", "null"] },
+				{ "name": "score", "type": "float" },
+				{ "name": "createdAt", "type": "long" },
+				{ "name": "payload", "type": "bytes" },
+				{ "name": "suit", "type": { "name": "Suit", "type": "enum", "symbols": ["SPADES", "HEARTS"] } },
+				{ "name": "tags", "type": { "type": "array", "items": "string" } },
+				{ "name": "lines", "type": { "type": "array", "items": {
+					"name": "Line", "type": "record", "fields": [
+						{ "name": "sku", "type": "string" },
+						{ "name": "quantity", "type": ["null", "int"] }
+					]
+				} } }
+			]
+		}''')
+		def message = '''{
+			"id": 7,
+			"ignored": { "a": { "string": "b" } },
+			"label": { "string": "caf\u00e9 \\"quoted\\"" },
+			"missing": null,
+			"score": 2.5,
+			"createdAt": 1483228800123000,
+			"payload": "\\u0001\\u0002\\u00ff",
+			"suit": "HEARTS",
+			"tags": [],
+			"lines": [ { "sku": "A-1", "quantity": { "int": 3 } }, { "sku": "B-2", "quantity": null } ]
+		}'''
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("lines").setType("RECORD").setMode("REPEATED").setFields([
+				new TableFieldSchema().setName("sku").setType("STRING").setMode("REQUIRED"),
+				new TableFieldSchema().setName("quantity").setType("INTEGER").setMode("NULLABLE")
+			]),
+			new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+			new TableFieldSchema().setName("label").setType("STRING").setMode("NULLABLE"),
+			new TableFieldSchema().setName("missing").setType("STRING").setMode("NULLABLE"),
+			new TableFieldSchema().setName("score").setType("FLOAT").setMode("REQUIRED"),
+			new TableFieldSchema().setName("createdAt").setType("TIMESTAMP").setMode("REQUIRED"),
+			new TableFieldSchema().setName("payload").setType("BYTES").setMode("REQUIRED"),
+			new TableFieldSchema().setName("suit").setType("STRING").setMode("REQUIRED"),
+			new TableFieldSchema().setName("tags").setType("STRING").setMode("REPEATED")
+		])
+		def record = getRecord(schema, message)
+		def binary = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(binary, null)
+		new GenericDatumWriter(schema).write(record, encoder)
+		new GenericDatumWriter(schema).write(record, encoder)
+		encoder.flush()
+		def mapper = new ObjectMapper()
+
+		when:
+		def decoder = DecoderFactory.get().binaryDecoder(binary.toByteArray(), null)
+		def json = new ByteArrayOutputStream()
+		def generator = mapper.getFactory().createGenerator(json)
+		AvroUtils.transcodeToTableRowJson(decoder, schema, tableSchema, generator)
+		AvroUtils.transcodeToTableRowJson(decoder, schema, tableSchema, generator)
+		generator.close()
+		def written = new StringWriter()
+		def charGenerator = mapper.getFactory().createGenerator(written)
+		AvroUtils.getTranscoder(schema, tableSchema).transcode(DecoderFactory.get().binaryDecoder(binary.toByteArray(), null), charGenerator)
+		charGenerator.close()
+		def rows = mapper.readValues(mapper.getFactory().createParser(json.toByteArray()), Map).readAll()
+		def expected = mapper.readValue(mapper.writeValueAsString(AvroUtils.convertGenericRecordToTableRow(record, tableSchema)), Map)
+
+		then:
+		decoder.isEnd()
+		rows == [expected, expected]
+		mapper.readValue(written.toString(), Map) == expected
+		!expected.containsKey("missing")
+		expected.createdAt == '2017-01-01 00:00:00.123 UTC'
+		json.toString('UTF-8').startsWith('{"id":7,"label":"caf\u00e9 \\"quoted\\"","score":2.5,')
+	}
+
+	def "should convert every pair of Bigquery and avro types"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [
+				{ "name": "count", "type": "int" },
+				{ "name": "counts", "type": { "type": "array", "items": "int" } },
+				{ "name": "total", "type": ["null", "long"] },
+				{ "name": "hash", "type": { "name": "Hash", "type": "fixed", "size": 4 } },
+				{ "name": "suit", "type": { "name": "Suit", "type": "enum", "symbols": ["SPADES", "HEARTS"] } },
+				{ "name": "ratio", "type": "float" }
+			]
+		}''')
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("count").setType("INTEGER").setMode("REQUIRED"),
+			new TableFieldSchema().setName("counts").setType("INTEGER").setMode("REPEATED"),
+			new TableFieldSchema().setName("total").setType("INTEGER").setMode("NULLABLE"),
+			new TableFieldSchema().setName("hash").setType("BYTES").setMode("REQUIRED"),
+			new TableFieldSchema().setName("suit").setType("STRING").setMode("REQUIRED"),
+			new TableFieldSchema().setName("ratio").setType("FLOAT").setMode("REQUIRED")
+		])
+		def record = getRecord(schema, '''{ "count": 3, "counts": [1, 2], "total": { "long": 5 }, "hash": "\\u0001\\u0002\\u0003\\u00ff",
+			"suit": "HEARTS", "ratio": 0.5 }''')
+		def binary = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(binary, null)
+		new GenericDatumWriter(schema).write(record, encoder)
+		encoder.flush()
+		// as the compiled json reader decodes them
+		def counts = PrimitiveArray.of(schema.getField('counts').schema(), 2)
+		counts.addNumber(1)
+		counts.addNumber(2)
+		record.put('counts', counts)
+		def mapper = new ObjectMapper()
+
+		when:
+		def row = AvroUtils.convertGenericRecordToTableRow(record, tableSchema)
+		def written = new StringWriter()
+		def generator = mapper.getFactory().createGenerator(written)
+		AvroUtils.transcodeToTableRowJson(DecoderFactory.get().binaryDecoder(binary.toByteArray(), null), schema, tableSchema, generator)
+		generator.close()
+
+		then:
+		counts instanceof PrimitiveArray.IntArray
+		row.count.getClass() == Long
+		row.counts*.getClass() == [Long, Long]
+		row == [count: 3L, counts: [1L, 2L], total: 5L, hash: 'AQID/w==', suit: 'HEARTS', ratio: 0.5f]
+		mapper.readValue(written.toString(), Map) == mapper.readValue(mapper.writeValueAsString(row), Map)
+	}
+
+	def "should convert avro logical types back to the Bigquery formats"() {
+		given:
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("day").setType("DATE").setMode("REQUIRED"),
+			new TableFieldSchema().setName("at").setType("TIME").setMode("REQUIRED"),
+			new TableFieldSchema().setName("local").setType("DATETIME").setMode("NULLABLE"),
+			new TableFieldSchema().setName("created").setType("TIMESTAMP").setMode("REQUIRED"),
+			new TableFieldSchema().setName("amount").setType("NUMERIC").setMode("REQUIRED")
+		])
+		def schema = BigQuerySchemaConverter.getInstance().toAvroSchema(new Table().setSchema(tableSchema), true)
+		def json = '''{ "day": "1969-12-31", "at": "23:59:59.000001", "local": "0001-01-01 00:00:00.5", "created": "2016-12-20T00:00:00.123Z",
+			"amount": "-0.5" }'''
+		def binary = new JsonGenericRecordReader().toBinary(json, schema)
+		def record = new GenericDatumReader(schema).read(null, DecoderFactory.get().binaryDecoder(binary, null))
+		def mapper = new ObjectMapper()
+
+		when:
+		def row = AvroUtils.convertGenericRecordToTableRow(record, tableSchema)
+		def written = new StringWriter()
+		def generator = mapper.getFactory().createGenerator(written)
+		AvroUtils.transcodeToTableRowJson(DecoderFactory.get().binaryDecoder(binary, null), schema, tableSchema, generator)
+		generator.close()
+
+		then:
+		row == [day: '1969-12-31', at: '23:59:59.000001', local: '0001-01-01T00:00:00.5', created: '2016-12-20 00:00:00.123 UTC', amount: '-0.5']
+		mapper.readValue(written.toString(), Map) == row
+	}
+
 	private def getRecord(Schema schema, String data) {
 		final GenericDatumReader<String> reader = new GenericDatumReader<>(schema)
 
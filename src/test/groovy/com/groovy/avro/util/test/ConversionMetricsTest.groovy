@@ -0,0 +1,140 @@
+package com.groovy.avro.util.test
+
+import static com.java.avro.util.ConversionMetrics.ErrorKind.*
+import static com.java.avro.util.ConversionMetrics.Operation.*
+
+import org.apache.avro.AvroRuntimeException
+import org.apache.avro.Schema
+
+import spock.lang.Specification
+
+import com.google.api.services.bigquery.model.TableFieldSchema
+import com.google.api.services.bigquery.model.TableSchema
+import com.java.avro.util.AvroSchemaConverter
+import com.java.avro.util.AvroUtils
+import com.java.avro.util.ConversionMetrics
+import com.java.avro.util.ConversionMetricsRegistry
+import com.java.avro.util.InMemoryConversionMetrics
+import com.java.avro.util.JsonGenericRecordReader
+
+class ConversionMetricsTest extends Specification {
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Row",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "name", "type": [ "null", "string" ], "default": null },
+		        { "name": "code", "type": [ "int", "string" ] },
+		        { "name": "color", "type": { "type": "enum", "name": "Color", "symbols": [ "RED", "GREEN" ] } }
+		    ]
+		}
+		''')
+
+	def reader = new JsonGenericRecordReader()
+	def plan = reader.compile(schema)
+	def metrics = new InMemoryConversionMetrics()
+
+	def setup() {
+		ConversionMetricsRegistry.install(metrics)
+	}
+
+	def cleanup() {
+		ConversionMetricsRegistry.install(null)
+	}
+
+	def "should measure nothing with the default metrics"() {
+		given:
+		ConversionMetricsRegistry.install(null)
+
+		when:
+		plan.read('{"id": 1, "code": 2, "color": "RED"}')
+
+		then:
+		ConversionMetricsRegistry.installed() == ConversionMetrics.NOOP
+		metrics.count(JSON_READ) == 0
+	}
+
+	def "should measure the records, bytes and fields read"() {
+		given:
+		def json = '{"id": 1, "name": "one", "code": 2, "color": "RED", "unknown": [1, 2, 3]}'
+
+		when:
+		3.times { plan.read(json) }
+		def binary = plan.toBinary(json)
+
+		then:
+		metrics.count(JSON_READ) == 3
+		metrics.bytesIn(JSON_READ) == 3 * json.bytes.length
+		metrics.count(JSON_TO_BINARY) == 1
+		metrics.bytesIn(JSON_TO_BINARY) == json.bytes.length
+		metrics.bytesOut(JSON_TO_BINARY) == binary.length
+		metrics.fields(Schema.Type.LONG) == 4
+		metrics.fields(Schema.Type.STRING) == 4
+		metrics.fields(Schema.Type.UNION) == 4
+		metrics.fields(Schema.Type.ENUM) == 4
+		metrics.latencyPercentileNanos(JSON_READ, 50) > 0
+		metrics.latencyPercentileNanos(JSON_READ, 100) >= metrics.latencyPercentileNanos(JSON_READ, 50)
+		metrics.meanLatencyNanos(JSON_READ) > 0
+		metrics.recordsPerSecond(JSON_READ) > 0
+	}
+
+	def "should count the union fallbacks"() {
+		when:
+		def record = reader.read('{"id": 1, "code": "A1", "color": "RED"}', schema)
+
+		then:
+		record.get('code') == 'A1'
+		metrics.count(JSON_READ) == 1
+		metrics.unionFallbacks() == 1
+		metrics.unionFallbackAttempts() == 1
+	}
+
+	def "should count the errors by kind"() {
+		when:
+		[
+			'{"id": "x", "code": 2, "color": "RED"}',
+			'{"id": 1, "code": 2, "color": "BLUE"}',
+			'{"id": 1, "code": true, "color": "RED"}',
+			'{"id": 1, '
+		].each { json ->
+			try {
+				plan.read(json)
+			} catch (AvroRuntimeException | NumberFormatException ignored) {
+			}
+		}
+
+		then:
+		metrics.count(JSON_READ) == 0
+		metrics.errors(JSON_READ) == 4
+		metrics.errors(ENUM) == 1
+		metrics.errors(UNION) == 1
+		metrics.errors(PARSE) == 1
+		metrics.errors(OTHER) == 1
+	}
+
+	def "should measure the row and schema conversions"() {
+		given:
+		def tableSchema = new TableSchema().setFields([
+			new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+			new TableFieldSchema().setName("name").setType("STRING").setMode("NULLABLE")
+		])
+		def record = plan.read('{"id": 1, "name": "one", "code": 2, "color": "RED"}')
+		metrics.reset()
+
+		when:
+		AvroUtils.convertGenericRecordToTableRow(record, tableSchema)
+		AvroSchemaConverter.toTableSchema(schema)
+		record.put('id', null)
+		AvroUtils.convertGenericRecordToTableRow(record, tableSchema)
+
+		then:
+		thrown NullPointerException
+		metrics.count(TABLE_ROW) == 1
+		metrics.errors(TABLE_ROW) == 1
+		metrics.count(TABLE_SCHEMA) == 1
+		metrics.fields(Schema.Type.LONG) == 2
+		metrics.fields(Schema.Type.STRING) == 1
+	}
+}
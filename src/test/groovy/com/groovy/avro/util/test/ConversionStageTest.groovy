@@ -0,0 +1,152 @@
+package com.groovy.avro.util.test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import org.apache.avro.AvroRuntimeException
+import org.apache.avro.Schema
+
+import spock.lang.Specification
+
+import com.google.api.services.bigquery.model.TableFieldSchema
+import com.google.api.services.bigquery.model.TableSchema
+import com.java.avro.util.ConversionFlow
+import com.java.avro.util.ConversionStage
+import com.java.avro.util.JsonGenericRecordReader
+
+class ConversionStageTest extends Specification {
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Row",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "name", "type": [ "string", "null" ] }
+		    ]
+		}
+		''')
+
+	def tableSchema = new TableSchema().setFields([
+		new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+		new TableFieldSchema().setName("name").setType("STRING").setMode("NULLABLE")
+	])
+
+	def plan = new JsonGenericRecordReader().compile(schema)
+
+	// runs the batches on the calling thread, which makes the demand observable step by step
+	def direct = { it.run() } as Executor
+
+	def messages(int count) {
+		(1..count).collect { "{ \"id\": $it, \"name\": \"row-$it\" }".getBytes('UTF-8') }
+	}
+
+	def "should convert json to table rows in order across parallel stages"() {
+		given:
+		def executor = Executors.newFixedThreadPool(4)
+		def subscriber = new RecordingSubscriber(Long.MAX_VALUE)
+		def records = ConversionStage.jsonToRecord(plan).withExecutor(executor).withParallelism(3).withBatchSize(5)
+				.from(ConversionFlow.fromIterable(messages(1000)))
+
+		when:
+		ConversionStage.recordToTableRow(tableSchema).withExecutor(executor).withParallelism(2).withBatchSize(7).withBufferSize(32)
+				.from(records).subscribe(subscriber)
+
+		then:
+		subscriber.done.await(10, TimeUnit.SECONDS)
+		subscriber.error == null
+		subscriber.items*.get('id') == (1L..1000L).toList()
+		subscriber.items.last().get('name') == 'row-1000'
+
+		cleanup:
+		executor.shutdown()
+	}
+
+	def "should only pull from upstream what the subscriber makes room for"() {
+		given:
+		def pulled = 0
+		def lazySource = ConversionFlow.fromIterable(new Iterable() {
+			Iterator iterator() {
+				def delegate = messages(1000).iterator()
+				[hasNext: { delegate.hasNext() }, next: { pulled++; delegate.next() }] as Iterator
+			}
+		})
+		def subscriber = new RecordingSubscriber(0)
+		ConversionStage.jsonToBinary(plan).withExecutor(direct).withBufferSize(16).from(lazySource).subscribe(subscriber)
+
+		when:
+		subscriber.subscription.request(5)
+
+		then:
+		subscriber.items.size() == 5
+		pulled == 16 + 5
+
+		when:
+		subscriber.subscription.request(Long.MAX_VALUE)
+
+		then:
+		subscriber.items.size() == 1000
+		subscriber.items[999] == plan.toBinary(messages(1000)[999])
+		subscriber.done.count == 0
+	}
+
+	def "should signal a conversion failure and cancel upstream"() {
+		given:
+		def bad = messages(10)
+		bad[4] = '{ "name": "no id" }'.getBytes('UTF-8')
+		def subscriber = new RecordingSubscriber(Long.MAX_VALUE)
+
+		when:
+		ConversionStage.jsonToRecord(plan).withExecutor(direct).withBatchSize(2).from(ConversionFlow.fromIterable(bad)).subscribe(subscriber)
+
+		then:
+		subscriber.error instanceof AvroRuntimeException
+		subscriber.items*.get('id') == [1L, 2L, 3L, 4L]
+	}
+
+	def "should reject non positive requests"() {
+		given:
+		def subscriber = new RecordingSubscriber(0)
+		ConversionStage.jsonToRecord(plan).withExecutor(direct).from(ConversionFlow.fromIterable(messages(3))).subscribe(subscriber)
+
+		when:
+		subscriber.subscription.request(0)
+
+		then:
+		subscriber.error instanceof IllegalArgumentException
+		subscriber.items.empty
+	}
+
+	static class RecordingSubscriber implements ConversionFlow.Subscriber<Object> {
+		final long initialDemand
+		final List<Object> items = Collections.synchronizedList([])
+		final CountDownLatch done = new CountDownLatch(1)
+		volatile ConversionFlow.Subscription subscription
+		volatile Throwable error
+
+		RecordingSubscriber(long initialDemand) {
+			this.initialDemand = initialDemand
+		}
+
+		void onSubscribe(ConversionFlow.Subscription subscription) {
+			this.subscription = subscription
+			if (initialDemand > 0)
+				subscription.request(initialDemand)
+		}
+
+		void onNext(Object item) {
+			items << item
+		}
+
+		void onError(Throwable throwable) {
+			error = throwable
+			done.countDown()
+		}
+
+		void onComplete() {
+			done.countDown()
+		}
+	}
+}
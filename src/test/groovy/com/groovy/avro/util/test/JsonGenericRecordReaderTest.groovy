@@ -6,6 +6,11 @@ import org.apache.avro.generic.GenericRecord
 
 import spock.lang.Specification
 
+import com.google.api.services.bigquery.model.Table
+import com.google.api.services.bigquery.model.TableFieldSchema
+import com.google.api.services.bigquery.model.TableSchema
+import com.java.avro.util.BigQuerySchemaConverter
+import com.java.avro.util.FieldProjection
 import com.java.avro.util.JsonGenericRecordReader
 
 public class JsonGenericRecordReaderTest extends Specification {
@@ -429,4 +434,174 @@ public class JsonGenericRecordReaderTest extends Specification {
 		e.message == 'Failed to parse json to map format.'
 		e.cause.toString().contains('com.fasterxml.jackson.core.JsonParseException: Unexpected character (\'}\' (code 125)):')
 	}
-}
\ No newline at end of file
+
+	def "should resolve union branches by json value kind and record fields"() {
+		given:
+		def schemaString = '''
+		{
+		    "type": "record",
+		    "name": "Root",
+		    "fields": [ {
+		        "name": "value",
+		        "type": [
+		            "null",
+		            "long",
+		            { "name": "Suit", "type": "enum", "symbols": ["SPADES", "HEARTS"] },
+		            "string",
+		            { "type": "record", "name": "A", "fields": [ { "name": "shared", "type": [ "long", "null" ] } ] },
+		            {
+		                "type": "record",
+		                "name": "B",
+		                "fields": [
+		                    { "name": "shared", "type": [ "long", "null" ] },
+		                    { "name": "b", "type": "string" }
+		                ]
+		            }
+		        ]
+		    } ]
+		}
+		'''
+
+		def schema = new Schema.Parser().parse(schemaString)
+
+		when:
+		def value = reader.read(jsonString, schema).get("value")
+
+		then:
+		(value == null ? null : value.getClass().getSimpleName() + ':' + value.toString()) == expected
+
+		where:
+		jsonString                                || expected
+		'{ "value": null }'                       || null
+		'{ "value": 12 }'                         || 'Long:12'
+		'{ "value": "12" }'                       || 'Long:12'
+		'{ "value": "HEARTS" }'                   || 'EnumSymbol:HEARTS'
+		'{ "value": "CLUBS" }'                    || 'String:CLUBS'
+		'{ "value": { "shared": 1 } }'            || 'Record:{"shared": 1}'
+		'{ "value": { "shared": 1, "b": "x" } }'  || 'Record:{"shared": 1, "b": "x"}'
+	}
+
+	def "should read Bigquery logical types from a map as the compiled plan does"() {
+		given:
+		def table = new Table().setSchema(new TableSchema().setFields([
+			new TableFieldSchema().setName("day").setType("DATE").setMode("REQUIRED"),
+			new TableFieldSchema().setName("local").setType("DATETIME").setMode("NULLABLE"),
+			new TableFieldSchema().setName("created").setType("TIMESTAMP").setMode("REQUIRED"),
+			new TableFieldSchema().setName("amount").setType("NUMERIC").setMode("NULLABLE"),
+			new TableFieldSchema().setName("total").setType("NUMERIC").setMode("REQUIRED")
+		]))
+		def schema = BigQuerySchemaConverter.getInstance().toAvroSchema(table, true)
+		def json = '''{ "day": "2016-12-20", "local": "2016-12-20T01:02:03", "created": "2016-12-20 00:00:00.000001 UTC",
+			"amount": "-123.45", "total": 1.5 }'''
+
+		when:
+		def record = reader.read(json, schema)
+
+		then:
+		record.get('day') == 17155
+		record.get('local') == 1482195723000000L
+		record.get('created') == 1482192000000001L
+		new BigInteger(record.get('amount').array()) == -123450000000G
+		new BigInteger(record.get('total').array()) == 1500000000G
+		record == reader.compile(schema).read(json)
+		reader.read([day: 17155, created: 0L, total: '2'], schema).get('local') == null
+
+		when:
+		reader.read('{ "day": "2016-13-01", "created": 0, "total": 0 }', schema)
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.message == 'Failed to convert JSON to Avro'
+		e.cause.message == 'Field day is expected to be type: DATE string or number'
+	}
+
+	def "should read the projected fields only"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [
+				{ "name": "id", "type": "long" },
+				{ "name": "payload", "type": { "name": "payload", "type": "record", "fields": [
+					{ "name": "body", "type": "string" },
+					{ "name": "size", "type": "int" }
+				] } },
+				{ "name": "items", "type": { "type": "array", "items": { "name": "item", "type": "record", "fields": [
+					{ "name": "key", "type": "string" },
+					{ "name": "payload", "type": "payload" }
+				] } } }
+			]
+		}''')
+		def plan = reader.compile(schema, FieldProjection.skipping('payload.body', 'items.*.body'))
+
+		when:
+		// the skipped values are not even checked against their type
+		def record = plan.read('''{ "id": 1, "payload": { "body": [ 1, { "x": 2 } ], "size": 3 },
+			"items": [ { "key": "a", "payload": { "body": true, "size": 4 } } ] }''')
+
+		then:
+		record.getSchema() == plan.getSchema()
+		record.getSchema().getField('payload').schema().getFields()*.name() == ['size']
+		record.toString() == '{"id": 1, "payload": {"size": 3}, "items": [{"key": "a", "payload": {"size": 4}}]}'
+		reader.compile(schema, FieldProjection.all()).getSchema().is(schema)
+	}
+
+	def "should stream documents skipping unknown and unprojected subtrees"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [
+				{ "name": "id", "type": "long" },
+				{ "name": "label", "type": ["null", "string"] },
+				{ "name": "tags", "type": { "type": "array", "items": "string" } }
+			]
+		}''')
+		def blob = (1..200).collect { "{ \"k$it\": [ $it, \"v$it\", null ] }" }.join(', ')
+		def json = "{ \"blob\": [ $blob ], \"id\": 7, \"label\": \"x\", \"tags\": [ \"a\" ] }".toString()
+
+		when:
+		def whole = reader.read(json, schema, FieldProjection.all())
+		def projected = reader.read(json.getBytes('UTF-8'), schema, FieldProjection.keeping('id'))
+
+		then:
+		whole == reader.read(json, schema)
+		projected.toString() == '{"id": 7}'
+		projected.getSchema().is(reader.read(new ByteArrayInputStream(json.getBytes('UTF-8')), schema, FieldProjection.keeping('id')).getSchema())
+	}
+
+	def "should collect the bad documents of a bulk read without throwing"() {
+		given:
+		def schema = new Schema.Parser().parse('''{
+			"name": "record1",
+			"type": "record",
+			"fields": [
+				{ "name": "id", "type": "long" },
+				{ "name": "nested", "type": { "type": "record", "name": "Nested", "fields": [
+					{ "name": "color", "type": { "type": "enum", "name": "Color", "symbols": [ "RED", "GREEN" ] } }
+				] } }
+			]
+		}''')
+		def documents = [
+			'{ "id": 1, "nested": { "color": "RED" } }',
+			'{ "id": 2, "nested": { "color": "BLUE" } }',
+			'{ "id": 3, "nested": { "color": ',
+			'{ "id": 4, "nested": { "color": "GREEN" } }'
+		]
+
+		when:
+		def result = reader.readAll(documents, schema)
+		def lines = reader.readLines(new ByteArrayInputStream(documents.join('\n').getBytes('UTF-8')), schema)
+
+		then:
+		result.getRecords()*.get('id') == [1L, 4L]
+		result.hasErrors()
+		result.getErrors()*.getOffset() == [1L, 2L]
+		result.getErrors()*.getKind()*.name() == ['ENUM', 'PARSE']
+		result.getErrors()[0].getPath() == 'nested.color'
+		result.getErrors()[0].getMessage() == 'Field nested.color is expected to be of enum type and be one of RED, GREEN'
+		lines.getRecords() == result.getRecords()
+		lines.getErrors()*.getOffset() == [42L, 85L]
+		lines.getErrors()*.getPath() == result.getErrors()*.getPath()
+	}
+}
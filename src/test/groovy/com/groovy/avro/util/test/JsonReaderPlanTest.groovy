@@ -0,0 +1,410 @@
+package com.groovy.avro.util.test
+
+import java.nio.ByteBuffer
+
+import org.apache.avro.AvroRuntimeException
+import org.apache.avro.AvroTypeException
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericDatumReader
+import org.apache.avro.generic.GenericDatumWriter
+import org.apache.avro.io.DecoderFactory
+import org.apache.avro.io.EncoderFactory
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.api.services.bigquery.model.Table
+import com.google.api.services.bigquery.model.TableFieldSchema
+import com.google.api.services.bigquery.model.TableSchema
+import com.java.avro.util.BigQuerySchemaConverter
+import com.java.avro.util.JsonGenericRecordReader
+import com.java.avro.util.PrimitiveArray
+
+class JsonReaderPlanTest extends Specification {
+
+	def reader = new JsonGenericRecordReader()
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Root",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "score", "type": [ "double", "null" ] },
+		        { "name": "tags", "type": { "type": "array", "items": "string" } },
+		        { "name": "attributes", "type": { "type": "map", "values": "int" } },
+		        {
+		            "name": "suit",
+		            "type": { "name": "Suit", "type": "enum", "symbols": ["SPADES", "HEARTS"] }
+		        },
+		        { "name": "version", "type": "string", "default": "v1" },
+		        {
+		            "name": "nested",
+		            "type": [ {
+		                "type": "record",
+		                "name": "Nested",
+		                "fields": [ { "name": "value", "type": [ "long", "null" ] } ]
+		            }, "null" ]
+		        }
+		    ]
+		}
+		''')
+
+	def "should read the same record as the interpreted reader"() {
+		given:
+		def json = '''
+		{
+		    "id": "42",
+		    "score": 1.5,
+		    "tags": ["a", "b"],
+		    "attributes": { "x": 1 },
+		    "suit": "HEARTS",
+		    "nested": { "value": 7 },
+		    "unknown": { "ignored": true }
+		}
+		'''
+
+		when:
+		def plan = reader.compile(schema)
+		def record = plan.read(json)
+
+		then:
+		record.equals(reader.read(json, schema))
+		record.get("id") == 42L
+		record.get("score") == 1.5d
+		record.get("tags").equals(["a", "b"])
+		record.get("attributes") == [x: 1]
+		record.get("suit").toString() == 'HEARTS'
+		record.get("version").toString() == 'v1'
+		record.get("nested").get("value") == 7L
+	}
+
+	def "should fill missing nullable fields and empty arrays"() {
+		when:
+		def record = reader.compile(schema).read('{ "id": 1, "tags": null, "attributes": {}, "suit": "SPADES" }')
+
+		then:
+		record.get("score") == null
+		record.get("nested") == null
+		record.get("tags").isEmpty()
+	}
+
+	def "should be reusable across records"() {
+		given:
+		def plan = reader.compile(schema)
+
+		when:
+		def records = (1..3).collect { plan.read("{ \"id\": $it, \"tags\": [], \"attributes\": {}, \"suit\": \"SPADES\" }".toString()) }
+
+		then:
+		records*.get("id") == [1L, 2L, 3L]
+	}
+
+	def "should report the same errors as the interpreted reader"() {
+		when:
+		reader.compile(schema).read(json)
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.message == 'Failed to convert JSON to Avro'
+		e.cause.toString() == message
+
+		where:
+		json                                                                  || message
+		'{ "tags": [], "attributes": {}, "suit": "SPADES" }'                  || 'org.apache.avro.AvroRuntimeException: Field id type:LONG pos:0 not set and has no default value'
+		'{ "id": 1, "tags": [], "attributes": {}, "suit": "CLUBS" }'          || 'org.apache.avro.AvroTypeException: Field suit is expected to be of enum type and be one of SPADES, HEARTS'
+		'{ "id": 1, "tags": [], "attributes": {}, "suit": "SPADES", "score": true }' || 'org.apache.avro.AvroTypeException: Could not evaluate union, field score is expected to be one of these: DOUBLE, NULL. If this is a complex type, check if offending field: score adheres to schema.'
+	}
+
+	def "should stream the same record from every input kind"() {
+		given:
+		def json = '''
+		{
+		    "blob": { "deep": [ { "a": 1 }, [ 2, 3 ] ] },
+		    "id": 42,
+		    "tags": ["a"],
+		    "attributes": { "x": "1" },
+		    "suit": "SPADES",
+		    "nested": { "value": "7", "extra": [ 1 ] }
+		}
+		'''
+		def bytes = json.getBytes('UTF-8')
+		def direct = ByteBuffer.allocateDirect(bytes.length).put(bytes)
+		direct.flip()
+		def expected = reader.read(json, schema)
+
+		expect:
+		reader.compile(schema).read(json).equals(expected)
+		reader.read(new ByteArrayInputStream(bytes), schema).equals(expected)
+		reader.read(ByteBuffer.wrap(bytes), schema).equals(expected)
+		reader.read(direct, schema).equals(expected)
+		direct.position() == 0
+	}
+
+	def "should resolve ambiguous unions when streaming"() {
+		given:
+		def unionSchema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Root",
+		    "fields": [ {
+		        "name": "value",
+		        "type": [
+		            "null",
+		            { "type": "record", "name": "A", "fields": [ { "name": "a", "type": "long" } ] },
+		            { "type": "record", "name": "B", "fields": [ { "name": "b", "type": "string" } ] }
+		        ]
+		    } ]
+		}
+		''')
+
+		when:
+		def record = reader.read(new ByteArrayInputStream(json.getBytes('UTF-8')), unionSchema)
+
+		then:
+		record.get("value")?.getSchema()?.getName() == branch
+
+		where:
+		json                        || branch
+		'{ "value": null }'         || null
+		'{ "value": { "a": 1 } }'   || 'A'
+		'{ "value": { "b": "x" } }' || 'B'
+	}
+
+	def "should transcode json to the binary encoding of the record"() {
+		given:
+		def expected = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(expected, null)
+		new GenericDatumWriter(schema).write(reader.read(json, schema), encoder)
+		encoder.flush()
+
+		expect:
+		reader.toBinary(json, schema) == expected.toByteArray()
+
+		where:
+		json << [
+			'{ "id": 42, "score": 1.5, "tags": ["a", "b"], "attributes": { "x": 1, "y": "2" }, "suit": "HEARTS", "nested": { "value": 7 } }',
+			'{ "nested": { "value": null }, "suit": "SPADES", "unknown": [ 1, { "a": 2 } ], "attributes": {}, "id": "-3", "tags": [] }',
+			'{ "id": 1, "tags": null, "attributes": { "è€😀": 5 }, "suit": "SPADES", "version": "vé2", "score": 2 }',
+			'{ "tags": ["' + ('x' * 300) + '"], "id": 1, "attributes": {}, "suit": "SPADES" }'
+		]
+	}
+
+	def "should keep the last value of a repeated key when transcoding as when reading"() {
+		given:
+		def plan = reader.compile(schema)
+		def expected = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(expected, null)
+		new GenericDatumWriter(schema).write(plan.read(json), encoder)
+		encoder.flush()
+
+		expect:
+		plan.toBinary(json) == expected.toByteArray()
+		plan.read(json).get('id') == 2L
+
+		where:
+		json << [
+			// repeated while the keys are in order
+			'{ "id": 1, "score": 1.5, "id": 2, "tags": ["a"], "attributes": {}, "suit": "SPADES" }',
+			// repeated once out of order, the first value in order
+			'{ "id": 1, "tags": ["a"], "suit": "SPADES", "attributes": { "x": 1 }, "score": 2.5, "tags": ["b", "c"], "id": 2 }',
+			// repeated out of order, both values out of order
+			'{ "suit": "HEARTS", "id": 1, "tags": [], "attributes": {}, "nested": { "value": 1 }, "id": 2, "nested": null, "suit": "SPADES" }',
+			// a nested record repeating a key
+			'{ "id": 2, "tags": [], "attributes": {}, "suit": "SPADES", "nested": { "value": 1, "value": null, "value": 3 } }'
+		]
+	}
+
+	def "should read back the transcoded record"() {
+		given:
+		def json = '{ "suit": "HEARTS", "id": 7, "tags": ["a"], "attributes": { "x": 1 }, "nested": { "value": "8" } }'
+		def plan = reader.compile(schema)
+		def target = ByteBuffer.allocate(256)
+
+		when:
+		def length = plan.write(json.getBytes('UTF-8'), 0, json.length(), target)
+		def decoder = DecoderFactory.get().binaryDecoder(target.array(), 0, length, null)
+		def record = new GenericDatumReader(schema).read(null, decoder)
+
+		then:
+		length == target.position()
+		record.toString() == plan.read(json).toString()
+	}
+
+	def "should report the same errors when transcoding"() {
+		when:
+		reader.compile(schema).toBinary(json)
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.message == 'Failed to convert JSON to Avro'
+		e.cause.toString() == message
+
+		where:
+		json                                                                  || message
+		'{ "tags": [], "attributes": {}, "suit": "SPADES" }'                  || 'org.apache.avro.AvroRuntimeException: Field id type:LONG pos:0 not set and has no default value'
+		'{ "id": 1, "tags": [], "attributes": {}, "suit": "CLUBS" }'          || 'org.apache.avro.AvroTypeException: Field suit is expected to be of enum type and be one of SPADES, HEARTS'
+		'{ "id": 1, "tags": [], "attributes": {}, "suit": "SPADES", "score": true }' || 'org.apache.avro.AvroTypeException: Could not evaluate union, field score is expected to be one of these: DOUBLE, NULL. If this is a complex type, check if offending field: score adheres to schema.'
+	}
+
+	def "should overwrite the reused record graph in place"() {
+		given:
+		def plan = reader.compile(schema)
+		def first = plan.read('{ "id": 1, "tags": ["a", "b"], "attributes": { "x": 1 }, "suit": "SPADES", "version": "v2", "nested": { "value": 5 } }')
+		def tags = first.get('tags')
+		def attributes = first.get('attributes')
+		def nested = first.get('nested')
+
+		when:
+		def second = plan.read('{ "id": 2, "tags": ["c"], "attributes": { "y": 2 }, "suit": "HEARTS", "nested": {} }', first)
+
+		then:
+		second.is(first)
+		second.get('tags').is(tags)
+		second.get('attributes').is(attributes)
+		second.get('nested').is(nested)
+		second.toString() == plan.read('{ "id": 2, "tags": ["c"], "attributes": { "y": 2 }, "suit": "HEARTS", "nested": {} }').toString()
+
+		when:
+		def other = reader.compile(new Schema.Parser().parse('{ "type": "record", "name": "Other", "fields": [] }')).read('{}')
+		def third = reader.read('{ "id": 3, "tags": [], "attributes": {}, "suit": "SPADES" }', schema, other)
+
+		then:
+		!third.is(other)
+		third.get('id') == 3L
+		third.get('nested') == null
+	}
+
+	def "should decode numeric arrays into primitive arrays"() {
+		given:
+		def numbers = new Schema.Parser().parse('''{
+			"type": "record",
+			"name": "Numbers",
+			"fields": [
+				{ "name": "ints", "type": { "type": "array", "items": "int" } },
+				{ "name": "longs", "type": { "type": "array", "items": "long" } },
+				{ "name": "floats", "type": { "type": "array", "items": "float" } },
+				{ "name": "doubles", "type": [ "null", { "type": "array", "items": "double" } ] }
+			]
+		}''')
+		def json = '{ "ints": [1, "2", 3.9], "longs": [12345678901, -1], "floats": [0.5, 2], "doubles": [1.25, "1e3"] }'
+		def plan = reader.compile(numbers)
+
+		when:
+		def record = plan.read(json)
+		def binary = new GenericDatumWriter(numbers)
+		def out = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(out, null)
+		binary.write(record, encoder)
+		encoder.flush()
+
+		then:
+		record.get('ints') instanceof PrimitiveArray.IntArray
+		record.get('doubles') instanceof PrimitiveArray.DoubleArray
+		record.get('longs').getLong(0) == 12345678901L
+		record.toString() == reader.read(json, numbers).toString()
+		record.toString() == plan.read(new ObjectMapper().readValue(json, Map)).toString()
+		out.toByteArray() == plan.toBinary(json)
+		plan.read('{ "ints": [2], "longs": [], "floats": [], "doubles": null }', record).get('ints').is(record.get('ints'))
+		record.get('ints').equals([2])
+
+		when:
+		plan.read('{ "ints": [true], "longs": [], "floats": [] }')
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.cause.message == 'Field ints is expected to be type: java.lang.Number'
+	}
+
+	def "should read and transcode Bigquery logical types"() {
+		given:
+		def table = new Table().setSchema(new TableSchema().setFields([
+			new TableFieldSchema().setName("day").setType("DATE").setMode("REQUIRED"),
+			new TableFieldSchema().setName("at").setType("TIME").setMode("REQUIRED"),
+			new TableFieldSchema().setName("local").setType("DATETIME").setMode("NULLABLE"),
+			new TableFieldSchema().setName("created").setType("TIMESTAMP").setMode("REQUIRED"),
+			new TableFieldSchema().setName("amount").setType("NUMERIC").setMode("NULLABLE"),
+			new TableFieldSchema().setName("total").setType("NUMERIC").setMode("REQUIRED")
+		]))
+		def logical = BigQuerySchemaConverter.getInstance().toAvroSchema(table, true)
+		def json = '''{ "day": "2016-12-20", "at": "12:34:56.5", "local": "2016-12-20T01:02:03", "created": "2016-12-20 00:00:00.000001 UTC",
+			"amount": "-123.45", "total": 1.5 }'''
+		def plan = reader.compile(logical)
+
+		when:
+		def record = plan.read(json)
+		def out = new ByteArrayOutputStream()
+		def encoder = EncoderFactory.get().binaryEncoder(out, null)
+		new GenericDatumWriter(logical).write(record, encoder)
+		encoder.flush()
+
+		then:
+		record.get('day') == 17155
+		record.get('at') == 45296500000L
+		record.get('local') == 1482195723000000L
+		record.get('created') == 1482192000000001L
+		new BigInteger(record.get('amount').array()) == -123450000000G
+		new BigInteger(record.get('total').array()) == 1500000000G
+		plan.toBinary(json) == out.toByteArray()
+		plan.read('{ "day": 17155, "at": 0, "created": 1482192000000000, "total": 2 }').get('local') == null
+
+		when:
+		plan.read('{ "day": "2016-13-01", "at": 0, "created": 0, "total": 0 }')
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.cause.message == 'Field day is expected to be type: DATE string or number'
+
+		when:
+		plan.toBinary('{ "day": 0, "at": 0, "created": 0, "amount": "0.0000000001", "total": 0 }')
+
+		then:
+		e = thrown AvroRuntimeException
+		e.cause instanceof AvroTypeException
+	}
+
+	@Unroll
+	def "should reject the #type number #number that the Bigquery formats cannot hold"() {
+		given:
+		def table = new Table().setSchema(new TableSchema().setFields([
+			new TableFieldSchema().setName("value").setType(type).setMode("REQUIRED")
+		]))
+		def logical = BigQuerySchemaConverter.getInstance().toAvroSchema(table, true)
+		def plan = reader.compile(logical)
+		def json = '{ "value": ' + number + ' }'
+
+		when:
+		plan.read(json)
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.cause.message == 'Field value is expected to be type: ' + type + ' string or number'
+
+		when:
+		plan.toBinary(json)
+
+		then:
+		e = thrown AvroRuntimeException
+		e.cause.message == 'Field value is expected to be type: ' + type + ' string or number'
+
+		when:
+		reader.read(json, logical)
+
+		then:
+		e = thrown AvroRuntimeException
+		e.cause.message == 'Field value is expected to be type: ' + type + ' string or number'
+
+		where:
+		type        | number
+		"DATE"      | "3000000000"
+		"DATE"      | "2932897"
+		"DATE"      | "1.9"
+		"TIME"      | "86400000000"
+		"TIME"      | "-1"
+		"TIME"      | "1.5"
+		"DATETIME"  | "253402300800000000"
+		"TIMESTAMP" | "1.5"
+		"TIMESTAMP" | "9223372036854775808"
+	}
+}
@@ -0,0 +1,144 @@
+package com.groovy.avro.util.test
+
+import java.nio.ByteBuffer
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import com.java.avro.util.LogicalTypeFormats
+
+class LogicalTypeFormatsTest extends Specification {
+
+	static final long MICROS_PER_DAY = 86400000000L
+
+	@Unroll
+	def "should parse and format the date #text"() {
+		expect:
+		LogicalTypeFormats.parseDate(text) == LocalDate.parse(text).toEpochDay()
+		LogicalTypeFormats.formatDate(LogicalTypeFormats.parseDate(text)) == text
+
+		where:
+		text << ["1970-01-01", "1969-12-31", "2000-02-29", "2016-12-20", "0001-01-01", "9999-12-31"]
+	}
+
+	@Unroll
+	def "should parse the time #text"() {
+		expect:
+		LogicalTypeFormats.parseTime(text) == micros
+		LogicalTypeFormats.formatTime(micros) == formatted
+
+		where:
+		text              | micros                | formatted
+		"00:00:00"        | 0L                    | "00:00:00"
+		"12:34:56.5"      | 45296500000L          | "12:34:56.5"
+		"23:59:59.999999" | MICROS_PER_DAY - 1    | "23:59:59.999999"
+		"01:02:03.000100" | 3723000100L           | "01:02:03.0001"
+	}
+
+	@Unroll
+	def "should parse the timestamp #text"() {
+		expect:
+		LogicalTypeFormats.parseTimestamp(text) == micros
+
+		where:
+		text                               | micros
+		"2016-12-20 00:00:00 UTC"          | 1482192000000000L
+		"2016-12-20 00:00:00.123456 UTC"   | 1482192000123456L
+		"2016-12-20T00:00:00Z"             | 1482192000000000L
+		"2016-12-20T02:00:00+02:00"        | 1482192000000000L
+		"2016-12-19 22:30:00 -01:30"       | 1482192000000000L
+		"2016-12-20 00:00:00"              | 1482192000000000L
+		"1969-12-31 23:59:59.5 UTC"        | -500000L
+	}
+
+	def "should parse and format random datetimes as java time does"() {
+		given:
+		def random = new Random(42)
+		def min = LocalDate.of(1, 1, 1).toEpochDay() * MICROS_PER_DAY
+		def max = (LocalDate.of(9999, 12, 31).toEpochDay() + 1) * MICROS_PER_DAY
+
+		expect:
+		(1..20000).every {
+			long micros = min + Math.floorMod(random.nextLong(), max - min)
+			def datetime = LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1000000L), 0, ZoneOffset.UTC)
+					.plus(Math.floorMod(micros, 1000000L), ChronoUnit.MICROS)
+			def formatted = LogicalTypeFormats.formatDatetime(micros)
+			LocalDateTime.parse(formatted) == datetime &&
+					LogicalTypeFormats.parseDatetime(formatted) == micros &&
+					LogicalTypeFormats.parseTimestamp(formatted.replace('T', ' ') + " UTC") == micros &&
+					LogicalTypeFormats.parseTime(formatted.substring(11)) == LocalTime.parse(formatted.substring(11)).toNanoOfDay() / 1000
+		}
+	}
+
+	def "should format into a buffer"() {
+		given:
+		def buffer = new char[40]
+
+		when:
+		def length = LogicalTypeFormats.formatDatetime(1482192000123456L, buffer, 3)
+
+		then:
+		new String(buffer, 3, length) == "2016-12-20T00:00:00.123456"
+	}
+
+	@Unroll
+	def "should reject the #type #text"() {
+		when:
+		parse(text)
+
+		then:
+		IllegalArgumentException e = thrown()
+		e.message == "Not a valid " + type + ": '" + text + "'"
+
+		where:
+		type        | text                      | parse
+		"DATE"      | "2016-02-30"              | { LogicalTypeFormats.parseDate(it) }
+		"DATE"      | "2016-1-01"               | { LogicalTypeFormats.parseDate(it) }
+		"DATE"      | "0000-01-01"              | { LogicalTypeFormats.parseDate(it) }
+		"TIME"      | "24:00:00"                | { LogicalTypeFormats.parseTime(it) }
+		"TIME"      | "12:00:00.1234567"        | { LogicalTypeFormats.parseTime(it) }
+		"DATETIME"  | "2016-12-20X00:00:00"     | { LogicalTypeFormats.parseDatetime(it) }
+		"TIMESTAMP" | "2016-12-20 00:00:00 CET" | { LogicalTypeFormats.parseTimestamp(it) }
+		"TIMESTAMP" | "2016-12-20 00:00:00+25" | { LogicalTypeFormats.parseTimestamp(it) }
+	}
+
+	@Unroll
+	def "should convert the NUMERIC #text"() {
+		when:
+		def unscaled = LogicalTypeFormats.toDecimal(new BigDecimal(text), LogicalTypeFormats.NUMERIC_SCALE)
+
+		then:
+		new BigInteger(unscaled.array()) == new BigDecimal(text).movePointRight(LogicalTypeFormats.NUMERIC_SCALE).toBigIntegerExact()
+		LogicalTypeFormats.formatDecimal(unscaled, LogicalTypeFormats.NUMERIC_SCALE) == formatted
+		unscaled.position() == 0
+
+		where:
+		text                                        | formatted
+		"0"                                         | "0"
+		"123.450"                                   | "123.45"
+		"-0.000000001"                              | "-0.000000001"
+		"99999999999999999999999999999.999999999"   | "99999999999999999999999999999.999999999"
+		"1E+3"                                      | "1000"
+	}
+
+	def "should reject NUMERIC values that do not fit"() {
+		when:
+		LogicalTypeFormats.toDecimal(new BigDecimal(text), LogicalTypeFormats.NUMERIC_SCALE)
+
+		then:
+		thrown(IllegalArgumentException)
+
+		where:
+		text << ["0.0000000001", "100000000000000000000000000000"]
+	}
+
+	def "should format an empty decimal as zero"() {
+		expect:
+		LogicalTypeFormats.formatDecimal(ByteBuffer.allocate(0), 9) == "0"
+	}
+}
@@ -0,0 +1,62 @@
+package com.groovy.avro.util.test
+
+import java.nio.file.Files
+
+import org.apache.avro.AvroRuntimeException
+import org.apache.avro.Schema
+
+import spock.lang.Specification
+
+import com.java.avro.util.JsonGenericRecordReader
+import com.java.avro.util.MappedNdJsonReader
+
+class MappedNdJsonReaderTest extends Specification {
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Row",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "name", "type": [ "string", "null" ] }
+		    ]
+		}
+		''')
+
+	def plan = new JsonGenericRecordReader().compile(schema)
+
+	def file = Files.createTempFile("mapped", ".ndjson")
+
+	def cleanup() {
+		Files.deleteIfExists(file)
+	}
+
+	def "should read every line across mapping windows"() {
+		given:
+		def lines = (1..200).collect { "{ \"id\": $it, \"name\": \"row-$it\" }" }
+		lines.add(100, '   ')
+		lines.add(0, "{ \"id\": 0, \"name\": \"${'x' * 300}\" }")
+		file.toFile().text = lines.join('\n')
+		def records = []
+
+		when:
+		def count = MappedNdJsonReader.create(plan).withWindowSize(64).read(file, { records << it })
+
+		then:
+		count == 201
+		records*.get("id") == (0L..200L).toList()
+		records[0].get("name").length() == 300
+	}
+
+	def "should report the byte offset of a bad line"() {
+		given:
+		file.toFile().text = '{ "id": 1 }\n{ "name": "missing id" }\n'
+
+		when:
+		MappedNdJsonReader.create(plan).read(file, { })
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.message == 'Failed to read ndjson line at byte offset 12'
+	}
+}
@@ -0,0 +1,92 @@
+package com.groovy.avro.util.test
+
+import org.apache.avro.AvroRuntimeException
+import org.apache.avro.Schema
+import org.apache.avro.file.DataFileStream
+import org.apache.avro.generic.GenericDatumReader
+
+import spock.lang.Specification
+
+import com.java.avro.util.JsonGenericRecordReader
+import com.java.avro.util.NdJsonBulkReader
+
+class NdJsonBulkReaderTest extends Specification {
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Row",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "name", "type": [ "string", "null" ] }
+		    ]
+		}
+		''')
+
+	def bulkReader = NdJsonBulkReader.create(new JsonGenericRecordReader())
+		.withParallelism(3)
+		.withChunkSize(64)
+		.withMaxChunksInFlight(2)
+
+	def "should write every line in the original order"() {
+		given:
+		def lines = (1..500).collect { "{ \"id\": $it, \"name\": \"row-$it\" }" }
+		def ndjson = (lines[0..249] + ['', '   '] + lines[250..-1]).join('\n')
+		def out = new ByteArrayOutputStream()
+
+		when:
+		def count = bulkReader.write(new ByteArrayInputStream(ndjson.getBytes('UTF-8')), schema, out)
+		def records = new DataFileStream(new ByteArrayInputStream(out.toByteArray()), new GenericDatumReader(schema)).collect()
+
+		then:
+		count == 500
+		records*.get("id") == (1L..500L).toList()
+		records.last().get("name").toString() == 'row-500'
+	}
+
+	def "should handle lines longer than the chunk size"() {
+		given:
+		def longName = 'x' * 1000
+		def ndjson = "{ \"id\": 1, \"name\": \"$longName\" }\n{ \"id\": 2 }\n"
+		def out = new ByteArrayOutputStream()
+
+		when:
+		bulkReader.write(new ByteArrayInputStream(ndjson.getBytes('UTF-8')), schema, out)
+		def records = new DataFileStream(new ByteArrayInputStream(out.toByteArray()), new GenericDatumReader(schema)).collect()
+
+		then:
+		records.size() == 2
+		records[0].get("name").toString() == longName
+		records[1].get("name") == null
+	}
+
+	def "should report the byte offset of a bad line"() {
+		given:
+		def ndjson = '{ "id": 1 }\n{ "name": "missing id" }\n'
+
+		when:
+		bulkReader.write(new ByteArrayInputStream(ndjson.getBytes('UTF-8')), schema, new ByteArrayOutputStream())
+
+		then:
+		def e = thrown AvroRuntimeException
+		e.message == 'Failed to read ndjson line at byte offset 12'
+	}
+
+	def "should hand the bad lines to the error sink and write the others"() {
+		given:
+		def lines = (1..100).collect { it % 10 ? "{ \"id\": $it }" : "{ \"id\": \"bad-$it\" }" }
+		def errors = []
+		def out = new ByteArrayOutputStream()
+
+		when:
+		def count = bulkReader.withErrorSink({ errors << it }).write(new ByteArrayInputStream(lines.join('\n').getBytes('UTF-8')), schema, out)
+		def records = new DataFileStream(new ByteArrayInputStream(out.toByteArray()), new GenericDatumReader(schema)).collect()
+
+		then:
+		count == 90
+		records*.get("id") == (1L..100L).findAll { it % 10 }
+		errors.size() == 10
+		errors*.getPath().unique() == ['id']
+		errors*.getOffset() == errors*.getOffset().sort()
+	}
+}
@@ -0,0 +1,131 @@
+package com.groovy.avro.util.test
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+
+import spock.lang.Specification
+
+import com.google.api.services.bigquery.model.TableFieldSchema
+import com.google.api.services.bigquery.model.TableSchema
+import com.java.avro.util.AvroUtils
+import com.java.avro.util.FieldProjection
+import com.java.avro.util.TableRowBatchConverter
+
+class TableRowBatchConverterTest extends Specification {
+
+	def schema = new Schema.Parser().parse('''
+		{
+		    "type": "record",
+		    "name": "Row",
+		    "fields": [
+		        { "name": "id", "type": "long" },
+		        { "name": "name", "type": [ "string", "null" ] }
+		    ]
+		}
+		''')
+
+	def tableSchema = new TableSchema().setFields([
+		new TableFieldSchema().setName("id").setType("INTEGER").setMode("REQUIRED"),
+		new TableFieldSchema().setName("name").setType("STRING").setMode("NULLABLE")
+	])
+
+	def converter = TableRowBatchConverter.create()
+		.withSliceSize(7)
+		.withMaxSlicesInFlight(3)
+
+	def records = (1..500).collect { id ->
+		def record = new GenericData.Record(schema)
+		record.put('id', id as long)
+		record.put('name', id % 2 ? "row-$id".toString() : null)
+		record
+	}
+
+	def "should convert a list keeping the order"() {
+		when:
+		def rows = converter.convert(records, tableSchema)
+
+		then:
+		rows.size() == 500
+		rows*.get('id') == (1L..500L).toList()
+		rows == records.collect { AvroUtils.convertGenericRecordToTableRow(it, tableSchema) }
+	}
+
+	def "should convert an iterator on the given executor keeping the order"() {
+		given:
+		def executor = Executors.newFixedThreadPool(4)
+		def rows = []
+
+		when:
+		def count = converter.withExecutor(executor).withProjection(FieldProjection.skipping('name'))
+				.convert(records.iterator(), tableSchema, { rows << it })
+
+		then:
+		count == 500
+		rows*.get('id') == (1L..500L).toList()
+		rows.every { !it.containsKey('name') }
+
+		cleanup:
+		executor.shutdown()
+	}
+
+	def "should fail the batch with the first failing record"() {
+		given:
+		def executor = Executors.newFixedThreadPool(4)
+		// the earlier failing record is the slowest: its slice completes after the next one, in flight with it, fails
+		records[123] = new GenericData.Record(schema) {
+			Object get(int i) {
+				Thread.sleep(200)
+				null
+			}
+		}
+		records[130].put('name', 42)
+
+		when:
+		converter.withExecutor(executor).convert(records, tableSchema)
+
+		then:
+		def e = thrown NullPointerException
+		e.message == 'REQUIRED field id should not be null'
+
+		cleanup:
+		executor.shutdown()
+	}
+
+	def "should convert inputs no larger than a slice on the calling thread"() {
+		given:
+		def executor = { throw new AssertionError('no slice should be submitted') } as Executor
+
+		when:
+		def rows = converter.withExecutor(executor).convert(records.subList(0, 7), tableSchema)
+
+		then:
+		rows*.get('id') == (1L..7L).toList()
+	}
+
+	def "should not consume an iterator more than maxSlicesInFlight slices ahead of the sink"() {
+		given:
+		def executor = Executors.newFixedThreadPool(4)
+		def consumed = 0
+		def source = records.iterator()
+		def iterator = [hasNext: { source.hasNext() }, next: { consumed++; source.next() }] as Iterator
+		def sunk = 0
+		def ahead = 0
+
+		when:
+		converter.withExecutor(executor).convert(iterator, tableSchema, {
+			sunk++
+			ahead = Math.max(ahead, consumed - sunk)
+		})
+
+		then:
+		sunk == 500
+		// the slice being handed to the sink and at most maxSlicesInFlight = 3 slices of 7 records read after it
+		ahead < 4 * 7
+
+		cleanup:
+		executor.shutdown()
+	}
+}
@@ -0,0 +1,59 @@
+package com.groovy.avro.util.test
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import com.java.avro.util.TimestampFormatter
+
+class TimestampFormatterTest extends Specification {
+
+	static final def DATAFLOW_FORMAT = com.google.cloud.dataflow.sdk.util.AvroUtils.getDeclaredMethod("formatTimestamp", String.class)
+
+	static {
+		DATAFLOW_FORMAT.setAccessible(true)
+	}
+
+	static String dataflowFormat(long micros) {
+		Double seconds = micros / 1000000.0d
+		DATAFLOW_FORMAT.invoke(null, seconds.toString())
+	}
+
+	@Unroll
+	def "should format #micros as the dataflow formatter does"() {
+		expect:
+		TimestampFormatter.format(micros) == dataflowFormat(micros)
+
+		and:
+		def buffer = new char[40]
+		def length = TimestampFormatter.format(micros, buffer, 3)
+		new String(buffer, 3, length) == dataflowFormat(micros)
+
+		where:
+		micros << [
+			0L,
+			1L,
+			10L,
+			1482192000000L,
+			1482192000123456L,
+			1482192000100000L,
+			951782400000001L,
+			4107542399999999L,
+			253402300799999999L,
+			253402300800000000L,
+			-1L,
+			-1500000L,
+			-86400000000L
+		]
+	}
+
+	def "should format random timestamps as the dataflow formatter does"() {
+		given:
+		def random = new Random(42)
+
+		expect:
+		(1..20000).every {
+			long micros = Math.floorMod(random.nextLong(), 253402300800000000L)
+			TimestampFormatter.format(micros) == dataflowFormat(micros)
+		}
+	}
+}
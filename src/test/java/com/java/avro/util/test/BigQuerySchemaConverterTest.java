@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Type;
 import org.junit.Assert;
@@ -19,6 +20,8 @@ import com.google.api.services.bigquery.model.Table;
 import com.google.api.services.bigquery.model.TableFieldSchema;
 import com.google.api.services.bigquery.model.TableSchema;
 import com.java.avro.util.BigQuerySchemaConverter;
+import com.java.avro.util.LazyAvroSchema;
+import com.java.avro.util.SchemaEvolution;
 
 public class BigQuerySchemaConverterTest {
 
@@ -134,6 +137,33 @@ public class BigQuerySchemaConverterTest {
 		}
 	}
 
+	@Test
+	public void testLogicalFieldTypes() throws Exception {
+		final TableSchema tableSchema = new TableSchema();
+		final List<TableFieldSchema> fields = new ArrayList<>();
+		fields.add(new TableFieldSchema().setName("date").setType("DATE").setMode("REQUIRED"));
+		fields.add(new TableFieldSchema().setName("timestamp").setType("TIMESTAMP").setMode("NULLABLE"));
+		fields.add(new TableFieldSchema().setName("datetime").setType("DATETIME").setMode("REQUIRED"));
+		fields.add(new TableFieldSchema().setName("time").setType("TIME").setMode("REQUIRED"));
+		fields.add(new TableFieldSchema().setName("amount").setType("NUMERIC").setMode("REQUIRED"));
+		tableSchema.setFields(fields);
+		final Table table = new Table().setSchema(tableSchema);
+
+		final Schema schema = converter.toAvroSchema(table, true);
+		Assert.assertEquals(LogicalTypes.date(), LogicalTypes.fromSchema(schema.getField("date").schema()));
+		Assert.assertEquals(LogicalTypes.timestampMicros(), LogicalTypes.fromSchema(schema.getField("timestamp").schema().getTypes().get(0)));
+		Assert.assertEquals(Type.LONG, schema.getField("datetime").schema().getType());
+		Assert.assertEquals("local-timestamp-micros", schema.getField("datetime").schema().getProp("logicalType"));
+		Assert.assertEquals(LogicalTypes.timeMicros(), LogicalTypes.fromSchema(schema.getField("time").schema()));
+		Assert.assertEquals(LogicalTypes.decimal(38, 9), LogicalTypes.fromSchema(schema.getField("amount").schema()));
+		Assert.assertSame(schema, converter.toAvroSchema(table, true));
+		Assert.assertEquals(schema, new Schema.Parser().parse(schema.toString()));
+
+		// without logical types NUMERIC is a decimal string, as the other types without an exact avro type
+		Assert.assertEquals(Type.STRING, converter.toAvroSchema(table).getField("amount").schema().getType());
+		Assert.assertNotEquals(schema, converter.toAvroSchema(table));
+	}
+
 	@Test
 	public void testBytesFieldType() {
 		final TableSchema tableSchema = new TableSchema();
@@ -149,6 +179,158 @@ public class BigQuerySchemaConverterTest {
 		}
 	}
 
+	@Test
+	public void testCachedSchema() throws Exception {
+		final long hits = converter.getCacheStats().hitCount();
+		final Schema schema = converter.toAvroSchema(getTableWithSchema());
+		Assert.assertSame(schema, converter.toAvroSchema(getTableWithSchema()));
+		Assert.assertTrue(converter.getCacheStats().hitCount() > hits);
+
+		final Table changed = getTableWithSchema();
+		changed.getSchema().getFields().get(0).setType("BYTES");
+		final Schema changedSchema = converter.toAvroSchema(changed);
+		Assert.assertNotSame(schema, changedSchema);
+		Assert.assertNotEquals(schema.getFields().get(0).schema(), changedSchema.getFields().get(0).schema());
+	}
+
+	@Test
+	public void testDeepTable() throws Exception {
+		final int depth = 300;
+		TableFieldSchema level = new TableFieldSchema().setName("leaf").setType("STRING").setMode("NULLABLE");
+		for (int i = depth; i > 0; i--) {
+			final List<TableFieldSchema> fields = new ArrayList<>();
+			fields.add(new TableFieldSchema().setName("id" + i).setType("INTEGER").setMode("REQUIRED"));
+			fields.add(level);
+			level = new TableFieldSchema().setName("Level" + i).setType("RECORD").setMode(i % 2 == 0 ? "REPEATED" : "NULLABLE").setFields(fields);
+		}
+		final Schema schema = converter.toAvroSchema(new Table().setSchema(new TableSchema().setFields(Collections.singletonList(level))));
+
+		Schema record = schema;
+		final StringBuilder namespace = new StringBuilder("root");
+		for (int i = 1; i <= depth; i++) {
+			final Schema fieldSchema = record.getField("Level" + i).schema();
+			record = fieldSchema.getType() == Type.ARRAY ? fieldSchema.getElementType() : fieldSchema.getTypes().get(0);
+			Assert.assertEquals(record.getNamespace(), namespace.toString());
+			Assert.assertEquals(record.getField("id" + i).schema().getType(), Type.LONG);
+			namespace.append(".level").append(i);
+		}
+		Assert.assertEquals(record.getField("leaf").schema(),
+				Schema.createUnion(Arrays.asList(Schema.create(Type.STRING), Schema.create(Type.NULL))));
+	}
+
+	@Test
+	public void testLazySchema() throws Exception {
+		final Schema schema = converter.toAvroSchema(getTableWithSchema());
+		final LazyAvroSchema lazy = converter.toLazyAvroSchema(getTableWithSchema());
+
+		Assert.assertEquals(lazy.getFieldSchema("email"), schema.getField("email").schema());
+		Assert.assertEquals(lazy.getFieldSchema("internalRecord.dimension"),
+				schema.getField("internalRecord").schema().getElementType().getField("dimension").schema());
+		Assert.assertEquals(lazy.getRecordSchema("internalRecord.dimension").getNamespace(), "root.internalrecord");
+		Assert.assertEquals(lazy.getFieldSchema("metrics.metricValue"),
+				schema.getField("metrics").schema().getTypes().get(0).getField("metricValue").schema());
+		Assert.assertEquals(lazy.getRecordSchema("metrics"), schema.getField("metrics").schema().getTypes().get(0));
+		Assert.assertSame(lazy.getFieldSchema("internalRecord.dimension"), lazy.getFieldSchema("internalRecord.dimension"));
+		Assert.assertNull(lazy.getFieldSchema("missing"));
+		Assert.assertNull(lazy.getFieldSchema("email.missing"));
+		Assert.assertEquals(lazy.getSchema(), schema);
+		try {
+			lazy.getRecordSchema("email");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testLazySchemaTranslatesTheLookedUpFieldsOnly() {
+		final Table table = getTableWithSchema();
+		table.getSchema().getFields().get(0).setType("NOT_VALID_TYPE");
+		final LazyAvroSchema lazy = converter.toLazyAvroSchema(table);
+
+		Assert.assertEquals(lazy.getFieldSchema("internalRecord.dimension").getElementType().getFields().size(), 4);
+		try {
+			lazy.getSchema();
+			Assert.fail();
+		} catch (AvroRuntimeException e) {
+		}
+	}
+
+	@Test
+	public void testEvolveAddingAndRelaxingFields() throws Exception {
+		final Table previous = getTableWithSchema();
+		final Schema previousSchema = converter.toAvroSchema(previous);
+		final Table next = getTableWithSchema();
+		next.getSchema().getFields().get(0).setMode("NULLABLE");
+		next.getSchema().getFields().get(7).getFields().get(0).setDescription("metric value");
+		next.getSchema().getFields().add(new TableFieldSchema().setName("added").setType("STRING").setMode("NULLABLE"));
+		final List<TableFieldSchema> metrics = new ArrayList<>(next.getSchema().getFields().get(7).getFields());
+		metrics.add(new TableFieldSchema().setName("unit").setType("STRING").setMode("NULLABLE"));
+		next.getSchema().getFields().get(7).setFields(metrics);
+
+		final SchemaEvolution evolution = converter.evolve(previous, previousSchema, next.getSchema());
+
+		Assert.assertEquals(evolution.getChanges().toString(),
+				"[RELAXED name, DESCRIPTION_CHANGED metrics.metricValue, ADDED metrics.unit, ADDED added]");
+		Assert.assertEquals(evolution.getChanges().get(0).getNext().getMode(), "NULLABLE");
+		Assert.assertTrue(evolution.canKeepConverters());
+		Assert.assertFalse(evolution.canKeepReaders());
+		final Schema fresh = converter.toLazyAvroSchema(next).getSchema();
+		Assert.assertEquals(evolution.getSchema(), fresh);
+		Assert.assertEquals(evolution.getSchema().toString(), fresh.toString());
+		// untouched subtrees are reused
+		Assert.assertSame(evolution.getSchema().getField("internalRecord").schema(), previousSchema.getField("internalRecord").schema());
+		Assert.assertSame(converter.toAvroSchema(next), evolution.getSchema());
+	}
+
+	@Test
+	public void testEvolveRemovingAndChangingFields() throws Exception {
+		final Table previous = getTableWithSchema();
+		final Schema previousSchema = converter.toAvroSchema(previous);
+		final Table next = getTableWithSchema();
+		next.getSchema().getFields().remove(1);
+		next.getSchema().getFields().get(5).getFields().get(1).setType("BYTES");
+
+		final SchemaEvolution evolution = converter.evolve(previous, previousSchema, next.getSchema());
+
+		Assert.assertEquals(evolution.getChanges().toString(), "[TYPE_CHANGED dimension.value2, TYPE_CHANGED internalRecord.dimension.value2, REMOVED age]");
+		Assert.assertFalse(evolution.canKeepConverters());
+		Assert.assertFalse(evolution.canKeepReaders());
+		Assert.assertEquals(evolution.getSchema().toString(), converter.toLazyAvroSchema(next).getSchema().toString());
+		Assert.assertEquals(evolution.getSchema().getField("dimension").schema().getElementType().getField("value2").schema().getType(),
+				Type.BYTES);
+	}
+
+	@Test
+	public void testEvolveUnchanged() throws Exception {
+		final Table previous = getTableWithSchema();
+		final Schema previousSchema = converter.toAvroSchema(previous);
+
+		final SchemaEvolution evolution = converter.evolve(previous, previousSchema, getTableWithSchema().getSchema());
+
+		Assert.assertTrue(evolution.isUnchanged());
+		Assert.assertTrue(evolution.canKeepReaders());
+		Assert.assertTrue(evolution.canKeepConverters());
+		Assert.assertSame(evolution.getSchema(), previousSchema);
+	}
+
+	@Test
+	public void testEvolveDefaultModeToNullable() throws Exception {
+		final Table previous = getTableWithSchema();
+		previous.getSchema().getFields().get(4).setMode(null);
+		final Schema previousSchema = converter.toAvroSchema(previous);
+		final Table next = getTableWithSchema();
+
+		final SchemaEvolution evolution = converter.evolve(previous, previousSchema, next.getSchema());
+
+		// a missing mode is NULLABLE for Bigquery, but only an explicit one makes an avro union
+		Assert.assertEquals(evolution.getChanges().toString(), "[MODE_CHANGED email]");
+		Assert.assertFalse(evolution.isUnchanged());
+		Assert.assertFalse(evolution.canKeepReaders());
+		Assert.assertFalse(evolution.canKeepConverters());
+		Assert.assertEquals(evolution.getSchema().getField("email").schema().getType(), Type.UNION);
+		Assert.assertEquals(evolution.getSchema().toString(), converter.toLazyAvroSchema(next).getSchema().toString());
+	}
+
 	private static Table getTableWithSchema() {
 		final TableSchema tableSchema = new TableSchema();
 		final List<TableFieldSchema> fields = new ArrayList<>();